@@ -0,0 +1,83 @@
+package com.example.lock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TimeWheel 与 ScheduledThreadPoolExecutor 对比。
+ * insert：插入一个 30 秒后到期的任务再取消，衡量插入/取消路径，任务数不会累积。
+ * expire：每次调用插入 1000 个 1~10ms 后到期的任务并等待全部执行，衡量到期处理。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeWheelBenchmark {
+    private static final int BATCH = 1000;
+
+    private TimeWheel timeWheel;
+    private ScheduledThreadPoolExecutor executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        timeWheel = new TimeWheel(512, 1);
+        executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true); // 取消的任务立即移出队列，与时间轮的取消语义一致
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        timeWheel.stop();
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean timeWheelInsert() {
+        return timeWheel.addTask(() -> { }, 30_000).cancel();
+    }
+
+    @Benchmark
+    public boolean scheduledExecutorInsert() {
+        return executor.schedule(() -> { }, 30_000, TimeUnit.MILLISECONDS).cancel(false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void timeWheelExpire() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(BATCH);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < BATCH; i++) {
+            timeWheel.addTask(latch::countDown, 1 + random.nextInt(10));
+        }
+        latch.await();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void scheduledExecutorExpire() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(BATCH);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < BATCH; i++) {
+            executor.schedule(latch::countDown, 1 + random.nextInt(10), TimeUnit.MILLISECONDS);
+        }
+        latch.await();
+    }
+}
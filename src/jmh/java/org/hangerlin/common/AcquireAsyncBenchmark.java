@@ -0,0 +1,118 @@
+package org.hangerlin.common;
+
+import org.hangerlin.common.watcher.HangerWatcher;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 10k 个等待者争抢 100 个 key，每个等待者抢到锁后持有 2 毫秒，结果为平均每个等待者的耗时。
+ * 对比 acquireAsync（退避轮询 / HangerWatcher 解锁通知）和阻塞式 acquireLock(timeout)；
+ * 阻塞路径在 JDK 21+ 上使用虚拟线程，否则每个等待者一个平台线程。
+ * 辅助计数 acquireCalls 为抢锁调用次数（相当于 Redis 往返次数），轮询越少越低。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AcquireAsyncBenchmark {
+    private static final int WAITERS = 10_000;
+    private static final int KEYS = 100;
+    private static final long HOLD_MILLIS = 2; // 每个等待者抢到锁后持有的时间
+
+    private RenewalEngine engine;
+
+    // 每个基准线程自己的抢锁调用次数
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Calls {
+        public long acquireCalls;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = new RenewalEngine(10, 512, 4);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WAITERS)
+    public void acquireAsyncPolling(Calls calls) {
+        runAsync(null, calls);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WAITERS)
+    public void acquireAsyncWithWatcher(Calls calls) {
+        runAsync(new HangerWatcher(), calls);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WAITERS)
+    public void acquireLockBlocking(Calls calls) throws Exception {
+        InMemoryLockClient client = new InMemoryLockClient();
+        ExecutorService executor = waiterExecutor();
+        for (int i = 0; i < WAITERS; i++) {
+            DistributedLock lock = new DistributedLock("key-" + (i % KEYS), "waiter-" + i, 30, client, engine);
+            executor.execute(() -> {
+                try {
+                    if (lock.acquireLock(60, TimeUnit.SECONDS)) {
+                        Thread.sleep(HOLD_MILLIS);
+                        lock.close();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(2, TimeUnit.MINUTES);
+        calls.acquireCalls += client.acquireCalls();
+    }
+
+    private void runAsync(HangerWatcher watcher, Calls calls) {
+        InMemoryLockClient client = new InMemoryLockClient();
+        Executor release = CompletableFuture.delayedExecutor(HOLD_MILLIS, TimeUnit.MILLISECONDS);
+        List<CompletableFuture<Void>> futures = new ArrayList<>(WAITERS);
+        for (int i = 0; i < WAITERS; i++) {
+            DistributedLock lock = new DistributedLock("key-" + (i % KEYS), "waiter-" + i, 30, client, engine, watcher);
+            futures.add(lock.acquireAsync(60, TimeUnit.SECONDS).thenRunAsync(lock::close, release));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        calls.acquireCalls += client.acquireCalls();
+    }
+
+    // JDK 21+ 使用虚拟线程，否则每个等待者一个平台线程
+    private static ExecutorService waiterExecutor() throws Exception {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.hangerlin.common.bucket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// HangerBucket 与 Semaphore 的取令牌/还令牌对比，capacity 小于线程数时会出现等待
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HangerBucketBenchmark {
+    @Param({"1", "16"})
+    private int capacity;
+
+    private HangerBucket bucket;
+    private Semaphore semaphore;
+
+    @Setup
+    public void setUp() {
+        bucket = new HangerBucket(capacity);
+        semaphore = new Semaphore(capacity);
+    }
+
+    @Benchmark
+    public HangerToken hangerBucket() throws InterruptedException {
+        HangerToken token = bucket.acquireToken();
+        bucket.releaseToken(token);
+        return token;
+    }
+
+    @Benchmark
+    public void semaphore() throws InterruptedException {
+        semaphore.acquire();
+        semaphore.release();
+    }
+}
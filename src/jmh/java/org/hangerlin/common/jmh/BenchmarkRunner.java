@@ -0,0 +1,30 @@
+package org.hangerlin.common.jmh;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 按线程数依次运行 JMH 基准测试，每个线程数的结果写到 target/jmh-result-t{线程数}.json。
+ * 参数：基准测试名的正则（默认全部）、逗号分隔的线程数（默认 1,2,4,8,16,32,64）。
+ * 通过 mvn -P jmh test-compile exec:exec -Djmh.include=... -Djmh.threads=... 启动。
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : ".*";
+        String threads = args.length > 1 ? args[1] : "1,2,4,8,16,32,64";
+        for (String t : threads.split(",")) {
+            int threadCount = Integer.parseInt(t.trim());
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threadCount)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("target/jmh-result-t" + threadCount + ".json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.hangerlin.common.lock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// FairLock 与 JDK 公平锁 ReentrantLock(true) 的加锁/解锁吞吐对比
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FairLockBenchmark {
+    private final FairLock fairLock = new FairLock();
+    private final ReentrantLock reentrantLock = new ReentrantLock(true);
+    private long counter;
+
+    @Benchmark
+    public long fairLock() {
+        fairLock.lock();
+        try {
+            return ++counter;
+        } finally {
+            fairLock.unlock();
+        }
+    }
+
+    @Benchmark
+    public long reentrantLockFair() {
+        reentrantLock.lock();
+        try {
+            return ++counter;
+        } finally {
+            reentrantLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.hangerlin.common.lock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// HangerOptimizeAcquireLock 的限时抢锁（自旋后挂起 / 自旋后退避）与 ReentrantLock.tryLock(timeout) 对比
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HangerOptimizeAcquireLockBenchmark {
+    private final HangerOptimizeAcquireLock optimizeLock = new HangerOptimizeAcquireLock(1000, 30_000, TimeUnit.MILLISECONDS);
+    private final HangerOptimizeAcquireLock backoffLock = new HangerOptimizeAcquireLock(1000, 30_000, TimeUnit.MILLISECONDS,
+            HangerOptimizeAcquireLock.AcquireStrategy.BACKOFF, 64);
+    private final ReentrantLock reentrantLock = new ReentrantLock();
+
+    @Benchmark
+    public boolean optimizeAcquireLock() {
+        boolean acquired = optimizeLock.tryLock();
+        optimizeLock.unlock();
+        return acquired;
+    }
+
+    @Benchmark
+    public boolean optimizeAcquireLockBackoff() {
+        boolean acquired = backoffLock.tryLock();
+        backoffLock.unlock();
+        return acquired;
+    }
+
+    @Benchmark
+    public boolean reentrantLockTimed() throws InterruptedException {
+        boolean acquired = reentrantLock.tryLock(1000, TimeUnit.MILLISECONDS);
+        if (acquired) {
+            reentrantLock.unlock();
+        }
+        return acquired;
+    }
+}
@@ -0,0 +1,43 @@
+package org.hangerlin.common.lock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// SynchronizedCounter 与 LongAdder、AtomicLong 的自增吞吐对比
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SynchronizedCounterBenchmark {
+    private final SynchronizedCounter synchronizedCounter = new SynchronizedCounter();
+    private final LongAdder longAdder = new LongAdder();
+    private final AtomicLong atomicLong = new AtomicLong();
+
+    @Benchmark
+    public void synchronizedCounter() {
+        synchronizedCounter.increment();
+    }
+
+    @Benchmark
+    public void longAdder() {
+        longAdder.increment();
+    }
+
+    @Benchmark
+    public long atomicLong() {
+        return atomicLong.incrementAndGet();
+    }
+}
@@ -0,0 +1,60 @@
+package org.hangerlin.common.metrics;
+
+import org.hangerlin.common.lock.FairLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 指标的开销：同一把 FairLock 不记录指标（NOOP）与记录到 InMemoryLockMetrics 的加锁/解锁吞吐对比，
+// 以及单独一次直方图记录和一次读时钟的吞吐。无竞争时 FairLock 不读时钟、持有时间按 HOLD_TIME_SAMPLE 采样，
+// 剩下的开销主要是每次加锁一次计数累加
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LockMetricsBenchmark {
+    private final FairLock plainLock = new FairLock();
+    private final FairLock meteredLock = new FairLock(new InMemoryLockMetrics());
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private long counter;
+
+    @Benchmark
+    public long fairLockNoMetrics() {
+        plainLock.lock();
+        try {
+            return ++counter;
+        } finally {
+            plainLock.unlock();
+        }
+    }
+
+    @Benchmark
+    public long fairLockInMemoryMetrics() {
+        meteredLock.lock();
+        try {
+            return ++counter;
+        } finally {
+            meteredLock.unlock();
+        }
+    }
+
+    @Benchmark
+    public void histogramRecord() {
+        histogram.record(System.nanoTime() & 0xFFFFF);
+    }
+
+    @Benchmark
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+}
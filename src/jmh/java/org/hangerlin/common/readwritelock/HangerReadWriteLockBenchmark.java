@@ -0,0 +1,89 @@
+package org.hangerlin.common.readwritelock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// HangerReadWriteLock 与 ReentrantReadWriteLock 对比；readPercent=90 为读多写少，10 为写多读少
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HangerReadWriteLockBenchmark {
+    private static final String KEY = "benchmark";
+    private static final String[] REENTRANT_KEYS = {"r0", "r1", "r2", "r3"};
+
+    @Param({"90", "10"})
+    private int readPercent;
+
+    private final HangerReadWriteLock hangerLock = new HangerReadWriteLock();
+    private final ReentrantReadWriteLock jdkLock = new ReentrantReadWriteLock();
+    private long value;
+
+    @Benchmark
+    public long hangerReadWriteLock() {
+        if (ThreadLocalRandom.current().nextInt(100) < readPercent) {
+            hangerLock.acquireReadLock(KEY);
+            try {
+                return value;
+            } finally {
+                hangerLock.releaseReadLock(KEY);
+            }
+        }
+        hangerLock.acquireWriteLock(KEY);
+        try {
+            return ++value;
+        } finally {
+            hangerLock.releaseWriteLock(KEY);
+        }
+    }
+
+    // 同时持有 4 个 key 的读锁并在每个 key 上重入一次，衡量多 key 重入的开销
+    @Benchmark
+    public long hangerReentrantRead() {
+        for (String key : REENTRANT_KEYS) {
+            hangerLock.acquireReadLock(key);
+        }
+        long sum = 0;
+        for (String key : REENTRANT_KEYS) {
+            hangerLock.acquireReadLock(key);
+            sum += value;
+            hangerLock.releaseReadLock(key);
+        }
+        for (String key : REENTRANT_KEYS) {
+            hangerLock.releaseReadLock(key);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long reentrantReadWriteLock() {
+        if (ThreadLocalRandom.current().nextInt(100) < readPercent) {
+            jdkLock.readLock().lock();
+            try {
+                return value;
+            } finally {
+                jdkLock.readLock().unlock();
+            }
+        }
+        jdkLock.writeLock().lock();
+        try {
+            return ++value;
+        } finally {
+            jdkLock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.hangerlin.common.watchdog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// WatchDogLock 与单许可 Semaphore 的抢锁/释放对比；lockWithWatchDog 包含看门狗的启动和取消，
+// 多线程时抢不到锁的线程挂起等待，与阻塞的 semaphoreAcquire 对比
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WatchDogLockBenchmark {
+    private final WatchDogLock tryLockTarget = new WatchDogLock();
+    private final WatchDogLock watchDogTarget = new WatchDogLock();
+    private final Semaphore semaphore = new Semaphore(1);
+
+    @Benchmark
+    public boolean watchDogTryLock() {
+        boolean acquired = tryLockTarget.tryLock();
+        if (acquired) {
+            tryLockTarget.unlock();
+        }
+        return acquired;
+    }
+
+    @Benchmark
+    public void lockWithWatchDog() {
+        watchDogTarget.lock();
+        watchDogTarget.unlock();
+    }
+
+    @Benchmark
+    public void semaphoreAcquire() throws InterruptedException {
+        semaphore.acquire();
+        semaphore.release();
+    }
+
+    @Benchmark
+    public boolean semaphoreTryAcquire() {
+        boolean acquired = semaphore.tryAcquire();
+        if (acquired) {
+            semaphore.release();
+        }
+        return acquired;
+    }
+}
@@ -9,9 +9,9 @@ public class DistributedLock {
         this.timeWheel = new TimeWheel(60, 1000); // 初始化时间轮
     }
 
-    // 注册看门狗任务到时间轮
-    public void registerWatchdog(WatchdogTask task, long timeout) {
-        timeWheel.addTask(task, timeout); // 将任务添加到时间轮
+    // 注册看门狗任务到时间轮，返回的句柄用于续期（reschedule）或在任务完成后取消
+    public TimerTaskEntry registerWatchdog(WatchdogTask task, long timeout) {
+        return timeWheel.addTask(task, timeout); // 将任务添加到时间轮
     }
 
     // 示例方法：模拟任务完成
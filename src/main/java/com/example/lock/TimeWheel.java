@@ -1,72 +1,331 @@
 // 定义时间轮类
 package com.example.lock;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+/**
+ * 分层时间轮（参考 Kafka 的 TimingWheel / SystemTimer）。
+ * 所有层共用一个推进线程和一个按到期时间排序的 DelayQueue，队列里只放非空的槽位，
+ * 推进线程睡眠到最近一个非空槽位到期为止，空槽位不会被逐个扫过。
+ * 上层槽位到期时把其中的任务重新插入，时间临近的任务逐层降到下层，最终在最底层到期执行。
+ * 任务不会早于过期时间执行，最多晚一个槽位间隔。
+ * addTask 返回的 TimerTaskEntry 可以 O(1) 取消或重新调度，取消的任务立即从槽位中摘除。
+ * 到期任务默认在推进线程上直接执行；指定执行器后交给执行器（线程池，或 JDK 21+ 的
+ * Executors.newVirtualThreadPerTaskExecutor()），慢任务不会拖慢后续的推进。
+ * 延迟不足一个槽位间隔的任务在添加时立即到期：没有执行器时在调用方线程上执行，有执行器时同样交给执行器。
+ * 执行器中未完成的任务数达到上限时推进线程等待，积压被限制在 maxPendingTasks 以内，推进延迟体现在 getMetrics() 中。
+ */
 public class TimeWheel {
-    private final int wheelSize; // 时间轮大小（槽位数量）
-    private final long tickDuration; // 每个槽位的时间间隔（毫秒）
-    private final TimerTaskList[] wheel; // 时间轮槽位数组，每个槽位是一个TimerTaskList
-    private int currentIndex; // 当前指针位置
-    private final ScheduledExecutorService scheduler; // 定时任务调度器
-    private volatile TimeWheel overflowWheel; // 上层时间轮，用于处理溢出任务
-
-    // 构造函数，初始化时间轮
+    private static final Logger LOGGER = Logger.getLogger(TimeWheel.class.getName());
+
+    private final long tickDuration; // 最底层每个槽位的时间间隔（毫秒）
+    private final DelayQueue<TimerTaskList> delayQueue = new DelayQueue<>(); // 所有层非空槽位的到期队列
+    // 添加、取消、重新调度任务持有读锁，推进时钟持有写锁；StampedLock 的读锁不需要记录重入次数，比 ReentrantReadWriteLock 便宜
+    private final StampedLock clockLock = new StampedLock();
+    private final AtomicInteger taskCount = new AtomicInteger(); // 尚未到期也未取消的任务数
+    private final Wheel wheel; // 最底层时间轮
+    private final Consumer<TimerTaskEntry> addOrExpire = this::addOrExpire; // 避免每次推进都创建方法引用
+    private TimerTaskEntry expiredHead; // 本次推进到期的任务节点，通过 nextPending 串成链，只由推进线程使用
+    private TimerTaskEntry expiredTail;
+    private int firedThisTick; // 本次推进到期的任务数，只由推进线程使用
+    private final Executor executor; // 执行到期任务的执行器，null 表示在推进线程上直接执行
+    private final Semaphore pendingPermits; // 执行器中未完成任务数的上限
+    private final TimeWheelMetrics metrics = new TimeWheelMetrics();
+    private final Thread ticker; // 推进线程
+    private volatile boolean running = true;
+
+    // 构造函数，初始化时间轮，到期任务在推进线程上执行
     public TimeWheel(int wheelSize, long tickDuration) {
-        this.wheelSize = wheelSize; // 设置时间轮大小
+        this(wheelSize, tickDuration, null, 0);
+    }
+
+    /**
+     * @param executor 执行到期任务的执行器，null 表示在推进线程上直接执行
+     * @param maxPendingTasks 交给执行器但尚未执行完的任务数上限，达到上限时推进线程等待
+     */
+    public TimeWheel(int wheelSize, long tickDuration, Executor executor, int maxPendingTasks) {
+        if (executor != null && maxPendingTasks <= 0) {
+            throw new IllegalArgumentException("maxPendingTasks 必须大于 0");
+        }
+        this.executor = executor;
+        this.pendingPermits = executor == null ? null : new Semaphore(maxPendingTasks);
         this.tickDuration = tickDuration; // 设置每个槽位的时间间隔
-        this.wheel = new TimerTaskList[wheelSize]; // 初始化槽位数组
-        for (int i = 0; i < wheelSize; i++) {
-            wheel[i] = new TimerTaskList(); // 每个槽位初始化为一个空的TimerTaskList
+        this.wheel = new Wheel(tickDuration, wheelSize, now()); // 初始化最底层时间轮
+        this.ticker = new Thread(this::tickLoop, "time-wheel-ticker");
+        this.ticker.setDaemon(true);
+        this.ticker.start(); // 启动时间轮
+    }
+
+    // 单调时钟（毫秒），不受系统时间调整影响
+    static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    // 推进线程：阻塞到最近的非空槽位到期，再推进时钟并处理该槽位
+    private void tickLoop() {
+        while (running) {
+            try {
+                advance(delayQueue.take());
+            } catch (InterruptedException e) {
+                return; // stop() 中断
+            }
         }
-        this.currentIndex = 0; // 初始化当前指针位置为0
-        this.scheduler = Executors.newSingleThreadScheduledExecutor(); // 创建单线程调度器
-        start(); // 启动时间轮
     }
 
-    // 启动时间轮
-    private void start() {
-        scheduler.scheduleAtFixedRate(this::advance, tickDuration, tickDuration, TimeUnit.MILLISECONDS); // 定时推进指针
+    // 推进时钟到槽位的到期时间，重新插入槽位中的任务，已到期的任务被执行
+    private void advance(TimerTaskList bucket) {
+        long lagMs = Math.max(0, now() - bucket.getExpiration());
+        int buckets = 0;
+        long stamp = clockLock.writeLock();
+        try {
+            // 推进线程落后时，所有已到期的槽位在这一次推进中处理完，时钟直接拨到最新的槽位
+            while (bucket != null) {
+                wheel.advanceClock(bucket.getExpiration());
+                bucket.flush(addOrExpire);
+                buckets++;
+                bucket = delayQueue.poll();
+            }
+        } finally {
+            clockLock.unlockWrite(stamp);
+        }
+        metrics.recordTick(lagMs, buckets, firedThisTick);
+        firedThisTick = 0;
+        // 在锁外执行任务，避免慢任务阻塞添加任务的线程
+        TimerTaskEntry entry = expiredHead;
+        expiredHead = null;
+        expiredTail = null;
+        while (entry != null) {
+            TimerTaskEntry next = entry.getNextPending();
+            entry.setNextPending(null);
+            if (!dispatch(entry.getTask())) {
+                return; // 时间轮已停止
+            }
+            entry = next;
+        }
     }
 
-    // 推进指针，执行当前槽位的任务
-    private void advance() {
-        TimerTaskList tasks = wheel[currentIndex]; // 获取当前槽位的任务列表
-        for (TimerTask task : tasks.getAllTasks()) {
+    // 执行或提交一个到期任务；推进线程在等待积压时被中断（stop）返回 false
+    private boolean dispatch(TimerTask task) {
+        if (executor == null) {
+            runTask(task);
+            return true;
+        }
+        if (!pendingPermits.tryAcquire()) {
+            metrics.recordBackpressureWait();
+            try {
+                pendingPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        submit(task);
+        return true;
+    }
+
+    // 交给执行器，调用方已经取得一个积压许可
+    private void submit(TimerTask task) {
+        try {
+            executor.execute(() -> {
+                try {
+                    runTask(task);
+                } finally {
+                    pendingPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingPermits.release();
+            metrics.recordRejected();
+            runTask(task); // 执行器已关闭或饱和，退回到当前线程上执行
+        }
+    }
+
+    // addTask、reschedule 中延迟不足一个槽位间隔的任务：没有执行器时直接在调用方线程上执行，有执行器时同样交给执行器。
+    // 积压已满时调用方不等待而是自己执行，否则执行器中的任务添加短延迟任务时会等待自己占用的许可
+    private void expireNow(TimerTask task) {
+        if (executor == null) {
+            task.run();
+        } else if (pendingPermits.tryAcquire()) {
+            submit(task);
+        } else {
+            runTask(task);
+        }
+    }
+
+    private static void runTask(TimerTask task) {
+        try {
             task.run(); // 执行任务
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "时间轮任务执行失败", e);
         }
-        tasks = new TimerTaskList(); // 清空当前槽位
-        currentIndex = (currentIndex + 1) % wheelSize; // 移动指针到下一个槽位
-    }
-
-    // 添加任务到时间轮
-    public void addTask(TimerTask task, long delay) {
-        long expirationMs = System.currentTimeMillis() + delay; // 计算任务过期时间
-        if (delay < tickDuration * wheelSize) { // 如果延迟在当前时间轮范围内
-            int index = (int) ((currentIndex + delay / tickDuration) % wheelSize); // 计算目标槽位索引
-            TimerTaskEntry entry = new TimerTaskEntry(task, expirationMs); // 创建任务节点
-            wheel[index].add(entry); // 将任务节点添加到目标槽位
-        } else { // 如果延迟超出当前时间轮范围
-            if (overflowWheel == null) { // 如果上层时间轮不存在
-                synchronized (this) { // 加锁确保线程安全
-                    if (overflowWheel == null) { // 双重检查锁定
-                        overflowWheel = new TimeWheel(wheelSize, tickDuration * wheelSize); // 创建上层时间轮
-                    }
+    }
+
+    private void addOrExpire(TimerTaskEntry entry) {
+        if (!wheel.add(entry)) {
+            entry.setState(TimerTaskEntry.EXPIRED); // 已经到期，按到期顺序挂到到期链尾部
+            taskCount.decrementAndGet();
+            firedThisTick++;
+            if (expiredTail == null) {
+                expiredHead = entry;
+            } else {
+                expiredTail.setNextPending(entry);
+            }
+            expiredTail = entry;
+        }
+    }
+
+    // 添加普通的Runnable任务到时间轮
+    public TimerTaskEntry addTask(Runnable runnable, long delay) {
+        return addTask(new TimerTask() {
+            @Override
+            public void onTimeout() {
+                runnable.run(); // 超时时执行传入的任务
+            }
+        }, delay);
+    }
+
+    /**
+     * 添加任务到时间轮。
+     * @return 任务句柄，可用于取消或重新调度
+     */
+    public TimerTaskEntry addTask(TimerTask task, long delay) {
+        TimerTaskEntry entry = new TimerTaskEntry(task, now() + delay, this); // 创建任务节点
+        long stamp = clockLock.readLock();
+        try {
+            if (wheel.add(entry)) {
+                taskCount.incrementAndGet();
+                return entry;
+            }
+            entry.setState(TimerTaskEntry.EXPIRED);
+        } finally {
+            clockLock.unlockRead(stamp);
+        }
+        expireNow(task); // 延迟不足一个槽位间隔，立即执行
+        return entry;
+    }
+
+    // 取消任务；持有读锁，推进线程不会在此期间把节点移到其他槽位
+    boolean cancel(TimerTaskEntry entry) {
+        long stamp = clockLock.readLock();
+        try {
+            synchronized (entry) {
+                if (entry.getState() != TimerTaskEntry.PENDING) {
+                    return false;
                 }
+                entry.setState(TimerTaskEntry.CANCELLED);
+                entry.remove();
+                taskCount.decrementAndGet();
+                return true;
             }
-            overflowWheel.addTask(task, delay - tickDuration * wheelSize); // 将任务交给上层时间轮处理
+        } finally {
+            clockLock.unlockRead(stamp);
         }
     }
 
-    // 停止时间轮
+    // 重新调度任务：从原槽位摘下，按新的过期时间放入对应槽位
+    boolean reschedule(TimerTaskEntry entry, long newDelay) {
+        long stamp = clockLock.readLock();
+        try {
+            synchronized (entry) {
+                if (entry.getState() != TimerTaskEntry.PENDING) {
+                    return false;
+                }
+                entry.remove();
+                entry.setExpirationMs(now() + newDelay);
+                if (wheel.add(entry)) {
+                    return true;
+                }
+                entry.setState(TimerTaskEntry.EXPIRED);
+                taskCount.decrementAndGet();
+            }
+        } finally {
+            clockLock.unlockRead(stamp);
+        }
+        expireNow(entry.getTask()); // 新的延迟不足一个槽位间隔，立即执行
+        return true;
+    }
+
+    // 尚未到期也未取消的任务数
+    public int size() {
+        return taskCount.get();
+    }
+
+    // 推进延迟、每次推进到期任务数等运行指标
+    public TimeWheelMetrics getMetrics() {
+        return metrics;
+    }
+
+    // 停止时间轮，尚未到期的任务不再执行；执行器由调用方负责关闭
     public void stop() {
-        scheduler.shutdown(); // 关闭调度器
-        if (overflowWheel != null) { // 如果存在上层时间轮
-            overflowWheel.stop(); // 递归停止上层时间轮
+        running = false;
+        ticker.interrupt(); // 唤醒并结束推进线程
+    }
+
+    // 时间轮中的一层：tickMs 为该层槽位间隔，interval 为该层覆盖的总时长；上层按需创建，与下层共用到期队列
+    private class Wheel {
+        private final long tickMs;
+        private final int wheelSize;
+        private final long interval;
+        private final TimerTaskList[] buckets;
+        private long currentTime; // 该层当前时间，按 tickMs 向下取整
+        private volatile Wheel overflowWheel; // 上层时间轮
+
+        Wheel(long tickMs, int wheelSize, long startMs) {
+            this.tickMs = tickMs;
+            this.wheelSize = wheelSize;
+            this.interval = tickMs * wheelSize;
+            this.buckets = new TimerTaskList[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new TimerTaskList(); // 每个槽位初始化为一个空的TimerTaskList
+            }
+            this.currentTime = startMs - (startMs % tickMs);
+        }
+
+        // 把任务放进对应层的槽位；任务已经到期时返回 false
+        boolean add(TimerTaskEntry entry) {
+            // 按最底层间隔向上取整，保证任务不会在过期时间之前被执行
+            long expiration = entry.getExpirationMs() + tickDuration - 1;
+            if (expiration < currentTime + tickMs) {
+                return false;
+            }
+            if (expiration < currentTime + interval) {
+                long virtualId = expiration / tickMs;
+                TimerTaskList bucket = buckets[(int) (virtualId % wheelSize)]; // 计算目标槽位
+                bucket.add(entry);
+                // 槽位第一次放入任务（或被复用到新的一轮）时才需要进入到期队列
+                if (bucket.setExpiration(virtualId * tickMs)) {
+                    delayQueue.offer(bucket);
+                }
+                return true;
+            }
+            // 超出本层范围，交给上层时间轮
+            if (overflowWheel == null) {
+                synchronized (this) { // 加锁确保只创建一次
+                    if (overflowWheel == null) {
+                        overflowWheel = new Wheel(interval, wheelSize, currentTime);
+                    }
+                }
+            }
+            return overflowWheel.add(entry);
+        }
+
+        // 推进该层及上层的当前时间
+        void advanceClock(long timeMs) {
+            if (timeMs >= currentTime + tickMs) {
+                currentTime = timeMs - (timeMs % tickMs);
+                if (overflowWheel != null) {
+                    overflowWheel.advanceClock(currentTime);
+                }
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,107 @@
+// 定义时间轮的运行指标
+package com.example.lock;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 时间轮推进线程的运行指标。
+ * 一次推进（tick）处理所有已经到期的非空槽位：推进线程落后时不会逐个补跑错过的 tick，
+ * 而是在一次推进中处理多个槽位并把时钟直接拨到最新的槽位，这种情况记为一次追赶（catch-up）。
+ * 计数只由推进线程写入，读取方看到的是近似的实时值。
+ */
+public class TimeWheelMetrics {
+    private final LongAdder ticks = new LongAdder(); // 推进次数
+    private final LongAdder bucketsProcessed = new LongAdder(); // 处理的槽位数（包含上层降级的槽位）
+    private final LongAdder catchUpTicks = new LongAdder(); // 一次推进处理了多个槽位的次数
+    private final LongAdder tasksFired = new LongAdder(); // 到期的任务数
+    private final AtomicLong maxTasksPerTick = new AtomicLong(); // 单次推进到期任务数的最大值
+    private final LongAdder totalTickLagMs = new LongAdder(); // 推进时刻相对槽位到期时间的累计延迟
+    private final AtomicLong maxTickLagMs = new AtomicLong(); // 最大推进延迟
+    private volatile long lastTickLagMs; // 最近一次推进延迟
+    private final LongAdder backpressureWaits = new LongAdder(); // 执行器积压任务达到上限、推进线程等待的次数
+    private final LongAdder rejectedTasks = new LongAdder(); // 执行器拒绝、改由推进线程执行的任务数
+
+    // 记录一次推进：lagMs 为第一个槽位到期到开始处理的延迟
+    void recordTick(long lagMs, int buckets, int fired) {
+        ticks.increment();
+        bucketsProcessed.add(buckets);
+        if (buckets > 1) {
+            catchUpTicks.increment();
+        }
+        tasksFired.add(fired);
+        maxTasksPerTick.accumulateAndGet(fired, Math::max);
+        lastTickLagMs = lagMs;
+        totalTickLagMs.add(lagMs);
+        maxTickLagMs.accumulateAndGet(lagMs, Math::max);
+    }
+
+    void recordBackpressureWait() {
+        backpressureWaits.increment();
+    }
+
+    void recordRejected() {
+        rejectedTasks.increment();
+    }
+
+    public long getTicks() {
+        return ticks.sum();
+    }
+
+    public long getBucketsProcessed() {
+        return bucketsProcessed.sum();
+    }
+
+    public long getCatchUpTicks() {
+        return catchUpTicks.sum();
+    }
+
+    public long getTasksFired() {
+        return tasksFired.sum();
+    }
+
+    public long getMaxTasksPerTick() {
+        return maxTasksPerTick.get();
+    }
+
+    // 平均每次推进到期的任务数
+    public double getAverageTasksPerTick() {
+        long count = getTicks();
+        return count == 0 ? 0 : getTasksFired() / (double) count;
+    }
+
+    public long getLastTickLagMs() {
+        return lastTickLagMs;
+    }
+
+    public long getMaxTickLagMs() {
+        return maxTickLagMs.get();
+    }
+
+    // 平均推进延迟（毫秒）
+    public double getAverageTickLagMs() {
+        long count = getTicks();
+        return count == 0 ? 0 : totalTickLagMs.sum() / (double) count;
+    }
+
+    public long getBackpressureWaits() {
+        return backpressureWaits.sum();
+    }
+
+    public long getRejectedTasks() {
+        return rejectedTasks.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "TimeWheelMetrics{ticks=" + getTicks()
+                + ", buckets=" + getBucketsProcessed()
+                + ", catchUpTicks=" + getCatchUpTicks()
+                + ", tasksFired=" + getTasksFired()
+                + ", maxTasksPerTick=" + getMaxTasksPerTick()
+                + ", lastLagMs=" + getLastTickLagMs()
+                + ", maxLagMs=" + getMaxTickLagMs()
+                + ", backpressureWaits=" + getBackpressureWaits()
+                + ", rejected=" + getRejectedTasks() + "}";
+    }
+}
@@ -1,17 +1,69 @@
 // 定义时间轮槽位中的任务节点
 package com.example.lock;
 
+// 同时也是 TimeWheel.addTask 返回的句柄，可以 O(1) 取消或重新调度
 public class TimerTaskEntry {
+    static final int PENDING = 0; // 等待到期
+    static final int EXPIRED = 1; // 已到期执行
+    static final int CANCELLED = 2; // 已取消
+
     private final TimerTask task; // 任务对象
-    private final long expirationMs; // 任务过期时间戳
-    private TimerTaskList list; // 所属的任务链表
+    private final TimeWheel timeWheel; // 所属的时间轮，独立创建的节点为 null
+    private long expirationMs; // 任务过期时间戳，重新调度时更新
+    private volatile int state = PENDING; // 任务状态
+    private volatile TimerTaskList list; // 所属的任务链表
     private TimerTaskEntry prev; // 前驱节点
     private TimerTaskEntry next; // 后继节点
+    private TimerTaskEntry nextPending; // 在槽位待处理栈或到期链中的下一个节点
 
     // 构造函数，初始化任务节点
     public TimerTaskEntry(TimerTask task, long expirationMs) {
+        this(task, expirationMs, null);
+    }
+
+    TimerTaskEntry(TimerTask task, long expirationMs, TimeWheel timeWheel) {
         this.task = task; // 设置任务对象
         this.expirationMs = expirationMs; // 设置过期时间
+        this.timeWheel = timeWheel; // 设置所属时间轮
+    }
+
+    // 取消任务并立即从槽位中摘除，返回 false 表示任务已经到期执行或已被取消
+    public boolean cancel() {
+        return wheel().cancel(this);
+    }
+
+    // 把任务改为从现在起 newDelay 毫秒后到期，返回 false 表示任务已经到期执行或已被取消
+    public boolean reschedule(long newDelay) {
+        return wheel().reschedule(this, newDelay);
+    }
+
+    // 任务是否已被取消
+    public boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    // 任务是否已经到期执行
+    public boolean isExpired() {
+        return state == EXPIRED;
+    }
+
+    int getState() {
+        return state;
+    }
+
+    void setState(int state) {
+        this.state = state;
+    }
+
+    void setExpirationMs(long expirationMs) {
+        this.expirationMs = expirationMs;
+    }
+
+    private TimeWheel wheel() {
+        if (timeWheel == null) {
+            throw new IllegalStateException("任务节点不属于任何时间轮");
+        }
+        return timeWheel;
     }
 
     // 获取任务对象
@@ -54,10 +106,21 @@ public class TimerTaskEntry {
         this.next = next; // 设置后继节点
     }
 
+    TimerTaskEntry getNextPending() {
+        return nextPending;
+    }
+
+    void setNextPending(TimerTaskEntry nextPending) {
+        this.nextPending = nextPending;
+    }
+
     // 从链表中移除任务节点
     public void remove() {
-        if (list != null) { // 如果任务节点属于某个链表
-            list.remove(this); // 调用链表的remove方法移除节点
+        TimerTaskList current = list;
+        // 移除期间节点可能被推进线程移到其他槽位，直到不属于任何链表为止
+        while (current != null) { // 如果任务节点属于某个链表
+            current.remove(this); // 调用链表的remove方法移除节点
+            current = list;
         }
     }
 }
\ No newline at end of file
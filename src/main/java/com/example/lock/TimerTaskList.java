@@ -1,11 +1,20 @@
 // 定义时间轮槽位中的任务链表
 package com.example.lock;
 
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
-public class TimerTaskList {
-    private final ReentrantLock lock = new ReentrantLock(); // 锁，用于保证线程安全
-    private TimerTaskEntry root; // 哨兵节点，用于简化链表操作
+// 槽位按到期时间放入时间轮的 DelayQueue，只有非空槽位才会在队列中
+// 插入不加锁：生产者用 CAS 压入待处理栈（多生产者单消费者），由推进线程或取消任务的线程批量挂到双向链表上
+public class TimerTaskList implements Delayed {
+    private final ReentrantLock lock = new ReentrantLock(); // 只用于摘除节点，插入和到期处理不加锁
+    private final AtomicReference<TimerTaskEntry> pending = new AtomicReference<>(); // 尚未挂到链表上的节点（栈顶）
+    private final AtomicLong expiration = new AtomicLong(-1); // 槽位的到期时间，-1 表示不在到期队列中
+    private final TimerTaskEntry root; // 哨兵节点，用于简化链表操作
 
     // 构造函数，初始化哨兵节点
     public TimerTaskList() {
@@ -14,19 +23,14 @@ public class TimerTaskList {
         root.setNext(root); // 哨兵节点的后继指向自身
     }
 
-    // 添加任务到链表
+    // 添加任务到链表：只压入待处理栈，不加锁
     public void add(TimerTaskEntry entry) {
-        lock.lock(); // 加锁
-        try {
-            entry.setList(this); // 设置任务节点所属的链表
-            TimerTaskEntry tail = root.getPrev(); // 获取链表尾节点
-            entry.setPrev(tail); // 设置任务节点的前驱
-            entry.setNext(root); // 设置任务节点的后继
-            tail.setNext(entry); // 更新尾节点的后继
-            root.setPrev(entry); // 更新哨兵节点的前驱
-        } finally {
-            lock.unlock(); // 解锁
-        }
+        entry.setList(this); // 设置任务节点所属的链表
+        TimerTaskEntry head;
+        do {
+            head = pending.get();
+            entry.setNextPending(head);
+        } while (!pending.compareAndSet(head, entry));
     }
 
     // 移除任务节点
@@ -34,30 +38,78 @@ public class TimerTaskList {
         lock.lock(); // 加锁
         try {
             if (entry.getList() == this) { // 如果任务节点属于当前链表
-                TimerTaskEntry prev = entry.getPrev(); // 获取前驱节点
-                TimerTaskEntry next = entry.getNext(); // 获取后继节点
-                prev.setNext(next); // 更新前驱节点的后继
-                next.setPrev(prev); // 更新后继节点的前驱
-                entry.setList(null); // 清空任务节点的链表引用
+                if (entry.getPrev() == null) {
+                    drainPending(); // 节点还在待处理栈里，先挂到链表上再 O(1) 摘除
+                }
+                unlink(entry);
             }
         } finally {
             lock.unlock(); // 解锁
         }
     }
 
-    // 获取链表中的所有任务
-    public List<TimerTask> getAllTasks() {
-        lock.lock(); // 加锁
-        try {
-            List<TimerTask> tasks = new ArrayList<>(); // 创建任务列表
-            TimerTaskEntry current = root.getNext(); // 从哨兵节点的后继开始遍历
-            while (current != root) { // 遍历链表
-                tasks.add(current.getTask()); // 将任务添加到列表
-                current = current.getNext(); // 移动到下一个节点
-            }
-            return tasks; // 返回任务列表
-        } finally {
-            lock.unlock(); // 解锁
+    // 把待处理栈中的节点挂到链表尾部，调用方需保证只有一个消费者
+    private void drainPending() {
+        TimerTaskEntry entry = pending.getAndSet(null);
+        while (entry != null) {
+            TimerTaskEntry next = entry.getNextPending();
+            entry.setNextPending(null);
+            TimerTaskEntry tail = root.getPrev(); // 获取链表尾节点
+            entry.setPrev(tail); // 设置任务节点的前驱
+            entry.setNext(root); // 设置任务节点的后继
+            tail.setNext(entry); // 更新尾节点的后继
+            root.setPrev(entry); // 更新哨兵节点的前驱
+            entry = next;
+        }
+    }
+
+    private void unlink(TimerTaskEntry entry) {
+        TimerTaskEntry prev = entry.getPrev(); // 获取前驱节点
+        TimerTaskEntry next = entry.getNext(); // 获取后继节点
+        prev.setNext(next); // 更新前驱节点的后继
+        next.setPrev(prev); // 更新后继节点的前驱
+        entry.setPrev(null);
+        entry.setNext(null);
+        entry.setList(null); // 清空任务节点的链表引用
+    }
+
+    // 设置槽位的到期时间，返回是否发生了变化（变化说明需要重新放入到期队列）
+    public boolean setExpiration(long expirationMs) {
+        return expiration.getAndSet(expirationMs) != expirationMs;
+    }
+
+    // 获取槽位的到期时间
+    public long getExpiration() {
+        return expiration.get();
+    }
+
+    /**
+     * 取出所有任务节点交给 consumer（重新插入时间轮或执行），并重置到期时间。
+     * 只由推进线程在时钟写锁下调用，此时没有并发的插入和摘除，直接原地遍历，不加锁也不分配内存。
+     */
+    public void flush(Consumer<TimerTaskEntry> consumer) {
+        drainPending();
+        TimerTaskEntry entry = root.getNext();
+        root.setNext(root); // 整条链一次性摘下
+        root.setPrev(root);
+        while (entry != root) {
+            TimerTaskEntry next = entry.getNext(); // consumer 会改写节点指针，先记下后继
+            entry.setPrev(null);
+            entry.setNext(null);
+            entry.setList(null);
+            consumer.accept(entry);
+            entry = next;
         }
+        expiration.set(-1);
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(Math.max(getExpiration() - TimeWheel.now(), 0), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        return Long.compare(getExpiration(), ((TimerTaskList) other).getExpiration());
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,20 @@
 package org.hangerlin.common;
 
+import com.example.lock.TimerTaskEntry;
+import org.hangerlin.common.metrics.LockMetrics;
+import org.hangerlin.common.watcher.HangerWatcher;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 public class DistributedLock implements Runnable {
@@ -10,59 +24,303 @@ public class DistributedLock implements Runnable {
     private final String value;
     private final long ttl; // 时间以秒为单位
     private final LockClient client; // 假设 LockClient 是用于锁操作的客户端
+    private final RenewalEngine renewalEngine; // 共享的续期引擎
+    private final HangerWatcher watcher; // 解锁通知，可以为 null
+    private final LockMetrics metrics;
     private RenewTask renewalTask;
+    private volatile RenewalEngine.Lease lease; // 在续期引擎中的租约
+    private volatile long acquiredAt; // 抢到锁的时间（System.nanoTime），只在记录指标时使用
+    private volatile long lastRenewalAt; // 上一次续期（或抢到锁）的时间，用于计算续期延迟
 
     public DistributedLock(String key, String value, long ttl, LockClient client) {
+        this(key, value, ttl, client, RenewalEngine.shared());
+    }
+
+    public DistributedLock(String key, String value, long ttl, LockClient client, RenewalEngine renewalEngine) {
+        this(key, value, ttl, client, renewalEngine, null);
+    }
+
+    /**
+     * @param watcher 解锁通知。设置后 acquireAsync 在 key 释放时立即重试，退避轮询只作为兜底
+     *                （例如锁因过期而不是 close 释放时不会有通知）
+     */
+    public DistributedLock(String key, String value, long ttl, LockClient client, RenewalEngine renewalEngine,
+                           HangerWatcher watcher) {
+        this(key, value, ttl, client, renewalEngine, watcher, LockMetrics.NOOP);
+    }
+
+    /**
+     * @param metrics 抢锁、持有和续期的指标
+     */
+    public DistributedLock(String key, String value, long ttl, LockClient client, RenewalEngine renewalEngine,
+                           HangerWatcher watcher, LockMetrics metrics) {
         this.key = key;
         this.value = value;
         this.ttl = ttl;
         this.client = client;
+        this.renewalEngine = renewalEngine;
+        this.watcher = watcher;
+        this.metrics = metrics;
     }
 
     public boolean acquireLock() {
+        return acquireOnce(metrics != LockMetrics.NOOP ? System.nanoTime() : 0L);
+    }
+
+    // 抢一次锁，startNanos 为开始抢锁的时间（不记录指标时为 0）
+    private boolean acquireOnce(long startNanos) {
         // 抢锁逻辑
-        if ("RESULT_OK".equals(client.setNxPx(key, value, ttl))) {
-            // 续期
-            startRenewalTask();
+        if (LockClient.RESULT_OK.equals(client.setNxPx(key, value, ttl))) {
+            granted(startNanos);
             return true;
         }
+        metrics.onContended();
         return false;
     }
 
+    // 拿到锁后开始续期；已经持有时（重复调用 acquireLock）setNxPx 只刷新了过期时间，沿用原来的租约，不再注册第二个
+    private synchronized void granted(long startNanos) {
+        if (isRunning) {
+            return;
+        }
+        if (metrics != LockMetrics.NOOP) {
+            long now = System.nanoTime();
+            metrics.onAcquire(now - startNanos);
+            acquiredAt = now;
+            lastRenewalAt = now;
+        }
+        // 续期
+        startRenewalTask();
+    }
+
+    /**
+     * 异步抢锁：立即尝试一次，失败后在共享调度器上按指数退避重试，等待期间不占用任何线程。
+     * 抢到锁时 future 正常完成；超时后 future 被取消，此后即使抢到锁也会立即释放。
+     * 同一个实例同一时间只应有一个未完成的抢锁请求。
+     * @param timeout 最长等待时间
+     * @param unit 时间单位
+     * @return 抢到锁时完成的 future
+     */
+    public CompletableFuture<Void> acquireAsync(long timeout, TimeUnit unit) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        long start = System.nanoTime();
+        AsyncAcquire acquire = new AsyncAcquire(future, start, start + unit.toNanos(timeout));
+        if (metrics != LockMetrics.NOOP) {
+            future.whenComplete((ignored, error) -> {
+                if (future.isCancelled()) {
+                    metrics.onAcquireFailed(System.nanoTime() - start);
+                }
+            });
+        }
+        acquire.run();
+        if (!future.isDone()) {
+            TimerTaskEntry timeoutTask = renewalEngine.schedule(() -> future.cancel(false), unit.toMillis(timeout));
+            future.whenComplete((ignored, error) -> timeoutTask.cancel());
+        }
+        return future;
+    }
+
+    /**
+     * 在 acquireAsync 之上的阻塞式抢锁。等待通过 CompletableFuture 挂起（LockSupport.park），
+     * 不持有任何监视器，在虚拟线程上调用时只会挂起虚拟线程而不会钉住载体线程。
+     * @return 在超时前抢到锁返回 true
+     */
+    public boolean acquireLock(long timeout, TimeUnit unit) throws InterruptedException {
+        CompletableFuture<Void> future = acquireAsync(timeout, unit);
+        try {
+            future.get();
+            return true;
+        } catch (CancellationException e) {
+            return false;
+        } catch (InterruptedException e) {
+            if (!future.cancel(false) && future.isDone() && !future.isCompletedExceptionally()) {
+                // 取消时锁已经抢到，抛出中断前先释放，否则锁会一直被续期
+                close();
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
     private void startRenewalTask() {
         renewalTask = new RenewTask(() -> {
-            // 刷新值
-            client.expire(key, ttl <= 0 ? 10 : ttl);
+            // 刷新值，只有锁仍然由自己的 value 持有时才续期
+            if (!client.renew(key, value, renewalTtl())) {
+                throw new LockException("锁已不再由当前客户端持有");
+            }
         }, ttl);
 
         isRunning = true;
-        new Thread(this).start();
+        // 注册到共享续期引擎，不再为每把锁单独启动线程；三分之一过期时间续租
+        lease = renewalEngine.register(this, renewalTtl() * 1000 / 3);
+    }
+
+    String key() {
+        return key;
+    }
+
+    String value() {
+        return value;
+    }
+
+    LockClient client() {
+        return client;
     }
 
+    // 续期时使用的过期时间，未设置时默认 10 秒
+    long renewalTtl() {
+        return ttl <= 0 ? 10 : ttl;
+    }
+
+    // 由续期引擎在到期的 tick 上调用，执行一次续租
     @Override
     public void run() {
-        while (isRunning) {
-            try {
-                // 1、续租，刷新值
-                renewalTask.callBack();
-                LOGGER.info("续租成功!");
-                // 2、三分之一过期时间续租
-                TimeUnit.SECONDS.sleep(ttl * 1000 / 3);
-            } catch (InterruptedException e) {
-                LOGGER.warning("续期线程被中断");
-                close();
-            } catch (LockException e) {
-                LOGGER.warning("续期失败");
-                close();
-            }
+        if (!isRunning) {
+            return;
+        }
+        try {
+            // 续租，刷新值
+            renewalTask.callBack();
+            LOGGER.fine("续租成功!");
+            recordRenewal(true);
+        } catch (LockException | RuntimeException e) {
+            LOGGER.warning("续期失败");
+            recordRenewal(false);
+            close();
+        }
+    }
+
+    // 记录一次续期的结果，续期延迟为距上一次续期的时间超出续期周期的部分；批量续期时由续期引擎调用
+    void recordRenewal(boolean renewed) {
+        if (!renewed) {
+            metrics.onRenewalFailure();
+            return;
+        }
+        if (metrics != LockMetrics.NOOP) {
+            long now = System.nanoTime();
+            long periodNanos = TimeUnit.MILLISECONDS.toNanos(renewalTtl() * 1000 / 3);
+            metrics.onRenewal(now - lastRenewalAt - periodNanos);
+            lastRenewalAt = now;
         }
     }
 
     public synchronized void close() {
         if (isRunning) {
             isRunning = false;
-            // 清理资源，如有必要
-            // ...
+            if (metrics != LockMetrics.NOOP) {
+                metrics.onRelease(System.nanoTime() - acquiredAt);
+            }
+            // 从续期引擎中注销租约
+            if (lease != null) {
+                lease.cancel();
+                lease = null;
+            }
+            // 释放锁，只删除自己持有的 value
+            try {
+                client.release(key, value);
+            } catch (RuntimeException e) {
+                LOGGER.warning("释放锁失败");
+            }
+            // 通知等待这个 key 的队首
+            if (watcher != null) {
+                watcher.unlock(key);
+            }
+        }
+    }
+
+    // 一次异步抢锁的状态，每次重试都在共享调度器上重新调度自己
+    private class AsyncAcquire implements Runnable {
+        private static final long MIN_BACKOFF_MILLIS = 5;
+        private static final long MAX_BACKOFF_MILLIS = 200;
+        // 有解锁通知时轮询只是兜底（例如锁过期而不是被释放），使用固定的较长间隔
+        private static final long WATCHED_BACKOFF_MILLIS = 1000;
+
+        private final CompletableFuture<Void> future;
+        private final long startNanos;
+        private final long deadlineNanos;
+        private final AtomicInteger wip = new AtomicInteger(); // 正在执行和排队的尝试次数
+        private final AtomicBoolean timerPending = new AtomicBoolean(); // 是否已有退避重试在排队
+        private final AtomicBoolean watching = new AtomicBoolean(); // 是否已在 watcher 上登记
+        private final Runnable onTimer = () -> {
+            timerPending.set(false);
+            run();
+        };
+        private int attempts;
+
+        AsyncAcquire(CompletableFuture<Void> future, long startNanos, long deadlineNanos) {
+            this.future = future;
+            this.startNanos = startNanos;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        // 退避定时器和解锁通知可能同时触发，保证同一时间只有一个线程在抢锁，期间到达的触发合并为再试一次
+        @Override
+        public void run() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                attempt();
+            } while (wip.decrementAndGet() != 0);
+        }
+
+        private void attempt() {
+            if (future.isDone()) {
+                return;
+            }
+            if (watcher != null && watching.compareAndSet(false, true)) {
+                // 先登记再抢锁，抢锁失败之后发生的解锁不会漏掉；抢到锁后这个登记在下一次解锁时失效
+                watcher.awaitUnlock(key, this::onUnlock);
+            }
+            try {
+                if (acquireOnce(startNanos)) {
+                    // 已经超时或被取消，立即释放刚抢到的锁
+                    if (!future.complete(null)) {
+                        close();
+                    }
+                    return;
+                }
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                return;
+            }
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+            if (remainingMillis <= 0) {
+                future.cancel(false);
+                return;
+            }
+            if (!timerPending.compareAndSet(false, true)) {
+                return;
+            }
+            // 带随机抖动的指数退避，避免大量等待者同时重试
+            long backoff = watcher != null ? WATCHED_BACKOFF_MILLIS
+                    : Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(attempts++, 6));
+            long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            try {
+                renewalEngine.execute(onTimer, Math.min(delay, remainingMillis));
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        // 在发布解锁事件的线程上回调，只把重试交给续期引擎的工作线程；返回 false 让唤醒传给下一个等待者
+        private boolean onUnlock() {
+            watching.set(false);
+            if (future.isDone()) {
+                return false;
+            }
+            try {
+                renewalEngine.execute(this, 0);
+                return true;
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+                return false;
+            }
         }
     }
 
@@ -86,16 +344,96 @@ public class DistributedLock implements Runnable {
         void callBack() throws LockException;
     }
 
-    // 假设的 LockClient 类
+    // 假设的 LockClient 类，ttl 以秒为单位
     public static class LockClient {
+        public static final String RESULT_OK = "RESULT_OK";
+        public static final String RESULT_FAIL = "RESULT_FAIL";
+
         public String setNxPx(String key, String value, long ttl) {
             // 实现抢锁逻辑
-            return "RESULT_OK"; // 示例返回值
+            return RESULT_OK; // 示例返回值
         }
 
         public void expire(String key, long ttl) {
             // 实现续期逻辑
         }
+
+        // 校验持有者的续期，只有 value 匹配时才刷新过期时间
+        public boolean renew(String key, String value, long ttl) {
+            expire(key, ttl);
+            return true;
+        }
+
+        public boolean release(String key, String value) {
+            // 实现释放逻辑，只有 value 匹配时才删除
+            return true;
+        }
+
+        // 批量抢锁，返回每个 key 的抢锁结果；默认逐个调用，支持管道的实现应覆盖为一次往返
+        public Map<String, String> setNxPxAll(Map<String, String> entries, long ttl) {
+            Map<String, String> results = new LinkedHashMap<>();
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                results.put(entry.getKey(), setNxPx(entry.getKey(), entry.getValue(), ttl));
+            }
+            return results;
+        }
+
+        // 批量校验持有者的续期，返回每个 key 是否续期成功
+        public Map<String, Boolean> renewAll(Map<String, String> entries, long ttl) {
+            Map<String, Boolean> results = new LinkedHashMap<>();
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                results.put(entry.getKey(), renew(entry.getKey(), entry.getValue(), ttl));
+            }
+            return results;
+        }
+
+        // 批量释放，返回每个 key 是否被删除
+        public Map<String, Boolean> releaseAll(Map<String, String> entries) {
+            Map<String, Boolean> results = new LinkedHashMap<>();
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                results.put(entry.getKey(), release(entry.getKey(), entry.getValue()));
+            }
+            return results;
+        }
+
+        // key 所在的分片，同一个分片内的 key 可以在一次脚本调用中原子操作；默认只有一个分片
+        public int shardOf(String key) {
+            return 0;
+        }
+
+        /**
+         * 用同一个 value 一次锁住同一个分片内的多个 key，要么全部成功，要么一个都不锁。
+         * 默认逐个抢锁，失败时释放已经抢到的；支持脚本的实现应覆盖为一次原子调用
+         */
+        public boolean setNxPxMulti(List<String> keys, String value, long ttl) {
+            for (int i = 0; i < keys.size(); i++) {
+                if (!RESULT_OK.equals(setNxPx(keys.get(i), value, ttl))) {
+                    for (int j = i - 1; j >= 0; j--) {
+                        release(keys.get(j), value);
+                    }
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // 作为一个整体续期多个 key，任何一个已经不由 value 持有时返回 false
+        public boolean renewMulti(List<String> keys, String value, long ttl) {
+            boolean renewed = true;
+            for (String key : keys) {
+                renewed &= renew(key, value, ttl);
+            }
+            return renewed;
+        }
+
+        // 释放多个 key 中由 value 持有的部分，全部释放返回 true
+        public boolean releaseMulti(List<String> keys, String value) {
+            boolean released = true;
+            for (String key : keys) {
+                released &= release(key, value);
+            }
+            return released;
+        }
     }
 
     // 假设的 LockException 类
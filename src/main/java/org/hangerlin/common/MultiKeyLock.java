@@ -0,0 +1,164 @@
+package org.hangerlin.common;
+
+import org.hangerlin.common.metrics.LockMetrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * 同时锁住多个不同资源 key 的锁（例如一次转账涉及的所有账户），要么全部锁住，要么一个都不锁。
+ * key 按 LockClient.shardOf 分组，每个分片的所有 key 在一次脚本调用中原子加锁、续期和释放；
+ * 分片按编号、分片内的 key 按字典序排列，所有客户端按同样的顺序加锁，不会互相持有对方需要的 key。
+ * 某个分片加锁失败时按相反顺序释放已经锁住的分片。
+ * 续期时所有 key 作为一个整体：每个周期每个分片一次调用，任何一个 key 已经丢失就释放整把锁。
+ */
+public class MultiKeyLock {
+    private static final Logger LOGGER = Logger.getLogger(MultiKeyLock.class.getName());
+
+    private final List<List<String>> shards; // 按分片编号排序，分片内的 key 按字典序排序
+    private final String value;
+    private final long ttl; // 时间以秒为单位
+    private final DistributedLock.LockClient client;
+    private final RenewalEngine renewalEngine;
+    private final LockMetrics metrics;
+    private volatile boolean isRunning;
+    private volatile int generation; // 每次加锁成功加一，旧的续期任务据此停止
+    private volatile long acquiredAt; // 加锁成功的时间（System.nanoTime），只在记录指标时使用
+    private volatile long lastRenewalAt; // 上一次续期（或加锁成功）的时间，用于计算续期延迟
+
+    public MultiKeyLock(Collection<String> keys, String value, long ttl, DistributedLock.LockClient client) {
+        this(keys, value, ttl, client, RenewalEngine.shared(), LockMetrics.NOOP);
+    }
+
+    /**
+     * @param keys 需要同时锁住的 key，重复的 key 只锁一次
+     * @param renewalEngine 续期任务在它的工作线程上执行
+     * @param metrics 整体加锁、持有和续期的指标
+     */
+    public MultiKeyLock(Collection<String> keys, String value, long ttl, DistributedLock.LockClient client,
+                        RenewalEngine renewalEngine, LockMetrics metrics) {
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("keys must not be empty");
+        }
+        Map<Integer, List<String>> byShard = new TreeMap<>();
+        for (String key : new TreeSet<>(keys)) {
+            byShard.computeIfAbsent(client.shardOf(key), shard -> new ArrayList<>()).add(key);
+        }
+        this.shards = new ArrayList<>(byShard.values());
+        this.value = value;
+        this.ttl = ttl;
+        this.client = client;
+        this.renewalEngine = renewalEngine;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 按顺序锁住每个分片，每个分片一次调用。
+     * @return 全部 key 都锁住返回 true；任何一个 key 被其他持有者占用时返回 false，此时不持有任何 key
+     */
+    public synchronized boolean acquireLock() {
+        long start = metrics != LockMetrics.NOOP ? System.nanoTime() : 0L;
+        for (int i = 0; i < shards.size(); i++) {
+            boolean acquired;
+            try {
+                acquired = client.setNxPxMulti(shards.get(i), value, ttl);
+            } catch (RuntimeException e) {
+                releaseShards(i - 1);
+                throw e;
+            }
+            if (!acquired) {
+                releaseShards(i - 1);
+                metrics.onContended();
+                if (metrics != LockMetrics.NOOP) {
+                    metrics.onAcquireFailed(System.nanoTime() - start);
+                }
+                return false;
+            }
+        }
+        if (metrics != LockMetrics.NOOP) {
+            long now = System.nanoTime();
+            metrics.onAcquire(now - start);
+            acquiredAt = now;
+            lastRenewalAt = now;
+        }
+        isRunning = true;
+        scheduleRenewal(++generation);
+        return true;
+    }
+
+    // 释放所有 key，只删除自己持有的 value
+    public synchronized void close() {
+        if (isRunning) {
+            isRunning = false;
+            if (metrics != LockMetrics.NOOP) {
+                metrics.onRelease(System.nanoTime() - acquiredAt);
+            }
+            releaseShards(shards.size() - 1);
+        }
+    }
+
+    public boolean isLocked() {
+        return isRunning;
+    }
+
+    // 续期周期为过期时间的三分之一，未设置过期时间时默认 10 秒
+    private long renewalPeriodMillis() {
+        return (ttl <= 0 ? 10 : ttl) * 1000 / 3;
+    }
+
+    private void scheduleRenewal(int expected) {
+        try {
+            renewalEngine.execute(() -> renew(expected), renewalPeriodMillis());
+        } catch (RejectedExecutionException e) {
+            LOGGER.warning("续期任务提交失败");
+        }
+    }
+
+    // 作为一个整体续期所有分片，任何一个分片失败都释放整把锁
+    private void renew(int expected) {
+        synchronized (this) {
+            if (!isRunning || generation != expected) {
+                return;
+            }
+            long renewalTtl = ttl <= 0 ? 10 : ttl;
+            for (List<String> shard : shards) {
+                boolean renewed;
+                try {
+                    renewed = client.renewMulti(shard, value, renewalTtl);
+                } catch (RuntimeException e) {
+                    renewed = false;
+                }
+                if (!renewed) {
+                    LOGGER.warning("续期失败");
+                    metrics.onRenewalFailure();
+                    close();
+                    return;
+                }
+            }
+            if (metrics != LockMetrics.NOOP) {
+                long now = System.nanoTime();
+                metrics.onRenewal(now - lastRenewalAt - TimeUnit.MILLISECONDS.toNanos(renewalPeriodMillis()));
+                lastRenewalAt = now;
+            }
+        }
+        scheduleRenewal(expected);
+    }
+
+    // 按相反顺序释放第 0 到 last 个分片
+    private void releaseShards(int last) {
+        for (int i = last; i >= 0; i--) {
+            try {
+                client.releaseMulti(shards.get(i), value);
+            } catch (RuntimeException e) {
+                LOGGER.warning("释放锁失败");
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package org.hangerlin.common;
+
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于 spring-data-redis 的 LockClient 实现。
+ * 抢锁、续期、释放都由一个 Lua 脚本原子完成，持有者通过 value 校验，每个操作只需一次往返。
+ * 脚本在第一次使用时 SCRIPT LOAD 一次，之后通过 EVALSHA 调用；服务端脚本缓存被清空（NOSCRIPT）时重新加载并重试。
+ * 批量操作通过管道在同一个连接上一次性发出；多 key 的原子操作（setNxPxMulti 等）是一次多 key 的脚本调用。
+ * ttl 与 DistributedLock 一致以秒为单位，写入 Redis 时换算成毫秒。
+ * 使用 Lettuce 时建议把连接工厂的管道刷新策略设置为 flushOnClose，让整批命令合并成一次写出。
+ */
+public class RedisLockClient extends DistributedLock.LockClient {
+    // 可重入抢锁：key 不存在时写入，已由同一个 value 持有时刷新过期时间
+    static final String ACQUIRE_SCRIPT =
+            "local owner = redis.call('GET', KEYS[1]) " +
+            "if owner == false then " +
+            "  redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2]) " +
+            "  return 1 " +
+            "end " +
+            "if owner == ARGV[1] then " +
+            "  redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+            "  return 1 " +
+            "end " +
+            "return 0";
+
+    // 校验持有者的续期
+    static final String RENEW_SCRIPT =
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+            "  return redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+            "end " +
+            "return 0";
+
+    // 比较并删除
+    static final String RELEASE_SCRIPT =
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+            "  return redis.call('DEL', KEYS[1]) " +
+            "end " +
+            "return 0";
+
+    // 多 key 抢锁：所有 key 都空闲或已由同一个 value 持有时全部写入，否则一个都不写
+    static final String ACQUIRE_MULTI_SCRIPT =
+            "for i = 1, #KEYS do " +
+            "  local owner = redis.call('GET', KEYS[i]) " +
+            "  if owner ~= false and owner ~= ARGV[1] then return 0 end " +
+            "end " +
+            "for i = 1, #KEYS do redis.call('SET', KEYS[i], ARGV[1], 'PX', ARGV[2]) end " +
+            "return 1";
+
+    // 多 key 整体续期：全部由 value 持有时才刷新过期时间
+    static final String RENEW_MULTI_SCRIPT =
+            "for i = 1, #KEYS do " +
+            "  if redis.call('GET', KEYS[i]) ~= ARGV[1] then return 0 end " +
+            "end " +
+            "for i = 1, #KEYS do redis.call('PEXPIRE', KEYS[i], ARGV[2]) end " +
+            "return 1";
+
+    // 多 key 比较并删除，返回删除的 key 数
+    static final String RELEASE_MULTI_SCRIPT =
+            "local released = 0 " +
+            "for i = 1, #KEYS do " +
+            "  if redis.call('GET', KEYS[i]) == ARGV[1] then released = released + redis.call('DEL', KEYS[i]) end " +
+            "end " +
+            "return released";
+
+    private final StringRedisTemplate template;
+    private final boolean cluster; // 集群模式下按哈希槽分片，一次脚本调用的所有 key 必须在同一个槽
+    private final LuaScript acquireScript = new LuaScript(ACQUIRE_SCRIPT);
+    private final LuaScript renewScript = new LuaScript(RENEW_SCRIPT);
+    private final LuaScript releaseScript = new LuaScript(RELEASE_SCRIPT);
+    private final LuaScript acquireMultiScript = new LuaScript(ACQUIRE_MULTI_SCRIPT);
+    private final LuaScript renewMultiScript = new LuaScript(RENEW_MULTI_SCRIPT);
+    private final LuaScript releaseMultiScript = new LuaScript(RELEASE_MULTI_SCRIPT);
+
+    public RedisLockClient(RedisConnectionFactory connectionFactory) {
+        this(new StringRedisTemplate(connectionFactory));
+    }
+
+    public RedisLockClient(StringRedisTemplate template) {
+        this.template = template;
+        RedisConnectionFactory connectionFactory = template.getConnectionFactory();
+        this.cluster = connectionFactory instanceof LettuceConnectionFactory
+                && ((LettuceConnectionFactory) connectionFactory).isClusterAware();
+    }
+
+    @Override
+    public String setNxPx(String key, String value, long ttl) {
+        return evalSha(acquireScript, key, value, String.valueOf(ttl * 1000)) ? RESULT_OK : RESULT_FAIL;
+    }
+
+    @Override
+    public void expire(String key, long ttl) {
+        template.execute((RedisCallback<Boolean>) connection ->
+                ((StringRedisConnection) connection).pExpire(key, ttl * 1000));
+    }
+
+    @Override
+    public boolean renew(String key, String value, long ttl) {
+        return evalSha(renewScript, key, value, String.valueOf(ttl * 1000));
+    }
+
+    @Override
+    public boolean release(String key, String value) {
+        return evalSha(releaseScript, key, value);
+    }
+
+    @Override
+    public Map<String, String> setNxPxAll(Map<String, String> entries, long ttl) {
+        Map<String, Boolean> acquired = evalShaPipelined(acquireScript, entries, String.valueOf(ttl * 1000));
+        Map<String, String> results = new LinkedHashMap<>();
+        for (Map.Entry<String, Boolean> entry : acquired.entrySet()) {
+            results.put(entry.getKey(), entry.getValue() ? RESULT_OK : RESULT_FAIL);
+        }
+        return results;
+    }
+
+    @Override
+    public Map<String, Boolean> renewAll(Map<String, String> entries, long ttl) {
+        return evalShaPipelined(renewScript, entries, String.valueOf(ttl * 1000));
+    }
+
+    @Override
+    public Map<String, Boolean> releaseAll(Map<String, String> entries) {
+        return evalShaPipelined(releaseScript, entries);
+    }
+
+    @Override
+    public int shardOf(String key) {
+        return cluster ? ClusterSlotHashUtil.calculateSlot(key) : 0;
+    }
+
+    @Override
+    public boolean setNxPxMulti(List<String> keys, String value, long ttl) {
+        return evalSha(acquireMultiScript, keys, value, String.valueOf(ttl * 1000));
+    }
+
+    @Override
+    public boolean renewMulti(List<String> keys, String value, long ttl) {
+        return evalSha(renewMultiScript, keys, value, String.valueOf(ttl * 1000));
+    }
+
+    @Override
+    public boolean releaseMulti(List<String> keys, String value) {
+        Long released = eval(releaseMultiScript, keys, value);
+        return released != null && released == keys.size();
+    }
+
+    // 单 key 调用脚本，返回值非 0 视为成功
+    private boolean evalSha(LuaScript script, String key, String... args) {
+        return evalSha(script, List.of(key), args);
+    }
+
+    // 多 key 调用脚本，返回值非 0 视为成功
+    private boolean evalSha(LuaScript script, List<String> keys, String... args) {
+        Long result = eval(script, keys, args);
+        return result != null && result != 0;
+    }
+
+    private Long eval(LuaScript script, List<String> keys, String... args) {
+        int numKeys = keys.size();
+        String[] keysAndArgs = new String[numKeys + args.length];
+        for (int i = 0; i < numKeys; i++) {
+            keysAndArgs[i] = keys.get(i);
+        }
+        System.arraycopy(args, 0, keysAndArgs, numKeys, args.length);
+        return template.execute((RedisCallback<Long>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            try {
+                return redis.evalSha(script.sha(redis), ReturnType.INTEGER, numKeys, keysAndArgs);
+            } catch (RuntimeException e) {
+                if (!isNoScript(e)) {
+                    throw e;
+                }
+                return redis.evalSha(script.reload(redis), ReturnType.INTEGER, numKeys, keysAndArgs);
+            }
+        });
+    }
+
+    // 管道批量调用脚本，每个 key 使用自己的 value 作为第一个参数
+    private Map<String, Boolean> evalShaPipelined(LuaScript script, Map<String, String> entries, String... extraArgs) {
+        List<String> keys = new ArrayList<>(entries.keySet());
+        Map<String, Boolean> results = new LinkedHashMap<>();
+        if (keys.isEmpty()) {
+            return results;
+        }
+        // 管道中拿不到 SCRIPT LOAD 的返回值，先在管道外确保脚本已加载
+        String sha = template.execute((RedisCallback<String>) connection -> script.sha((StringRedisConnection) connection));
+        List<Object> replies;
+        try {
+            replies = pipeline(sha, keys, entries, extraArgs);
+        } catch (RuntimeException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            String reloaded = template.execute((RedisCallback<String>) connection -> script.reload((StringRedisConnection) connection));
+            replies = pipeline(reloaded, keys, entries, extraArgs);
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            Object reply = replies.get(i);
+            results.put(keys.get(i), reply instanceof Long && (Long) reply != 0);
+        }
+        return results;
+    }
+
+    private List<Object> pipeline(String sha, List<String> keys, Map<String, String> entries, String[] extraArgs) {
+        return template.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            String[] keysAndArgs = new String[extraArgs.length + 2];
+            System.arraycopy(extraArgs, 0, keysAndArgs, 2, extraArgs.length);
+            for (String key : keys) {
+                keysAndArgs[0] = key;
+                keysAndArgs[1] = entries.get(key);
+                redis.evalSha(sha, ReturnType.INTEGER, 1, keysAndArgs.clone());
+            }
+            return null;
+        });
+    }
+
+    // 服务端没有缓存该脚本（重启或 SCRIPT FLUSH 之后）
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable current = e; current != null; current = current.getCause()) {
+            String message = current.getMessage();
+            if (message != null && message.contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 缓存了 SHA 的 Lua 脚本，第一次使用时加载
+    private static class LuaScript {
+        private final String source;
+        private volatile String sha;
+
+        LuaScript(String source) {
+            this.source = source;
+        }
+
+        String sha(StringRedisConnection redis) {
+            String current = sha;
+            return current != null ? current : reload(redis);
+        }
+
+        String reload(StringRedisConnection redis) {
+            sha = redis.scriptLoad(source);
+            return sha;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package org.hangerlin.common;
+
+import com.example.lock.TimeWheel;
+import com.example.lock.TimerTask;
+import com.example.lock.TimerTaskEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 共享续期引擎：所有 DistributedLock 都注册到同一个 TimeWheel 上，
+ * 到期的租约由时间轮的推进线程放进待续期队列，一个工作线程一次取走队列中的所有租约合并成一个批次，
+ * 再按客户端和 ttl 分组批量续期。持有的锁再多，线程数也是固定的。
+ * 异步抢锁的重试和超时也复用时间轮和工作线程池。
+ */
+public class RenewalEngine {
+    private static final Logger LOGGER = Logger.getLogger(RenewalEngine.class.getName());
+
+    // 每个批次最多包含的租约数，超过后拆分给多个工作线程并行处理
+    private static final int BATCH_CHUNK = 1024;
+
+    private final long tickMillis; // 时间轮最底层的槽位间隔（毫秒）
+    private final TimeWheel wheel; // 租约和延迟任务的到期时间，在它的推进线程上只做入队和提交
+    private final ExecutorService workers; // 执行续期的小线程池
+    private final ConcurrentLinkedQueue<Lease> due = new ConcurrentLinkedQueue<>(); // 已到期、等待续期的租约
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(); // 是否已经有工作线程准备取走待续期队列
+    private final AtomicInteger activeLeases = new AtomicInteger(0); // 当前注册中的租约数
+
+    public RenewalEngine(long tickMillis, int wheelSize, int workerThreads) {
+        if (tickMillis <= 0 || wheelSize <= 0 || workerThreads <= 0) {
+            throw new IllegalArgumentException("tickMillis, wheelSize and workerThreads must be positive");
+        }
+        this.tickMillis = tickMillis;
+        this.wheel = new TimeWheel(wheelSize, tickMillis);
+        this.workers = Executors.newFixedThreadPool(workerThreads, daemonFactory("renewal-worker"));
+    }
+
+    // 进程内共享的默认引擎
+    public static RenewalEngine shared() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * 注册一个需要定期续期的锁，第一次续期发生在下一个 tick。
+     * @param lock 需要续期的锁
+     * @param periodMillis 续期周期（毫秒），不足一个槽位间隔时按一个槽位间隔
+     * @return 租约句柄，close 时通过它 O(1) 注销
+     */
+    Lease register(DistributedLock lock, long periodMillis) {
+        Lease lease = new Lease(this, lock, Math.max(periodMillis, tickMillis));
+        activeLeases.incrementAndGet();
+        lease.schedule(tickMillis);
+        return lease;
+    }
+
+    /**
+     * 延迟之后在工作线程池上执行一个轻量任务（例如取消超时的 future）。
+     * @return 时间轮中的任务句柄，取消时立即从槽位中摘除，不会在时间轮中堆积
+     */
+    TimerTaskEntry schedule(Runnable task, long delayMillis) {
+        return wheel.addTask(() -> submit(task), delayMillis);
+    }
+
+    // 延迟之后在工作线程池上执行一个任务（例如异步抢锁的重试）
+    void execute(Runnable task, long delayMillis) {
+        if (delayMillis <= 0) {
+            workers.execute(task);
+            return;
+        }
+        wheel.addTask(() -> submit(task), delayMillis);
+    }
+
+    // 当前注册中的租约数
+    public int activeLeases() {
+        return activeLeases.get();
+    }
+
+    // 时间轮中尚未到期的任务数：租约、重试和超时
+    int pendingTasks() {
+        return wheel.size();
+    }
+
+    // 停止引擎，已注册的租约不再续期
+    public void shutdown() {
+        wheel.stop();
+        workers.shutdownNow();
+    }
+
+    // 在时间轮的推进线程上调用，提交失败（引擎已停止）时只记录日志
+    private void submit(Runnable task) {
+        try {
+            workers.execute(task);
+        } catch (RejectedExecutionException e) {
+            LOGGER.log(Level.WARNING, "续期任务提交失败", e);
+        }
+    }
+
+    // 租约到期：放进待续期队列，队列由空变为非空时交给一个工作线程，同一次推进中到期的租约合并成一个批次
+    private void enqueue(Lease lease) {
+        due.add(lease);
+        if (flushScheduled.compareAndSet(false, true)) {
+            submit(this::flush);
+        }
+    }
+
+    // 取走待续期队列中的所有租约，超过 BATCH_CHUNK 时拆分给其他工作线程
+    private void flush() {
+        flushScheduled.set(false);
+        List<Lease> batch = new ArrayList<>();
+        for (Lease lease = due.poll(); lease != null; lease = due.poll()) {
+            batch.add(lease);
+        }
+        for (int from = BATCH_CHUNK; from < batch.size(); from += BATCH_CHUNK) {
+            List<Lease> chunk = batch.subList(from, Math.min(batch.size(), from + BATCH_CHUNK));
+            submit(() -> renew(chunk));
+        }
+        if (!batch.isEmpty()) {
+            renew(batch.subList(0, Math.min(batch.size(), BATCH_CHUNK)));
+        }
+    }
+
+    // 在一次批处理中续期同一批到期的所有租约：
+    // 同一个客户端、同一个 ttl 的租约合并成一次 renewAll 调用，只有一个租约时直接走单 key 续期
+    private void renew(List<Lease> batch) {
+        Map<DistributedLock.LockClient, Map<Long, List<Lease>>> groups = new IdentityHashMap<>();
+        for (Lease lease : batch) {
+            if (!lease.cancelled) {
+                groups.computeIfAbsent(lease.lock.client(), k -> new HashMap<>())
+                        .computeIfAbsent(lease.lock.renewalTtl(), k -> new ArrayList<>())
+                        .add(lease);
+            }
+        }
+        for (Map.Entry<DistributedLock.LockClient, Map<Long, List<Lease>>> byClient : groups.entrySet()) {
+            for (Map.Entry<Long, List<Lease>> byTtl : byClient.getValue().entrySet()) {
+                List<Lease> group = byTtl.getValue();
+                if (group.size() == 1) {
+                    group.get(0).lock.run();
+                } else {
+                    renewGroup(byClient.getKey(), byTtl.getKey(), group);
+                }
+                for (Lease lease : group) {
+                    // 续期失败时锁会自行 close，此时不再放回时间轮
+                    if (lease.lock.isRunning) {
+                        lease.schedule(lease.periodMillis);
+                    } else {
+                        lease.cancel();
+                    }
+                }
+            }
+        }
+    }
+
+    private void renewGroup(DistributedLock.LockClient client, long ttl, List<Lease> group) {
+        Map<String, String> owners = new LinkedHashMap<>();
+        for (Lease lease : group) {
+            if (lease.lock.isRunning) {
+                owners.put(lease.lock.key(), lease.lock.value());
+            }
+        }
+        Map<String, Boolean> renewed;
+        try {
+            renewed = client.renewAll(owners, ttl);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "批量续期失败", e);
+            for (Lease lease : group) {
+                lease.lock.recordRenewal(false);
+                lease.lock.close();
+            }
+            return;
+        }
+        // 已经不再由自己持有的锁直接关闭
+        for (Lease lease : group) {
+            if (!lease.lock.isRunning) {
+                continue;
+            }
+            boolean ok = Boolean.TRUE.equals(renewed.get(lease.lock.key()));
+            lease.lock.recordRenewal(ok);
+            if (!ok) {
+                lease.lock.close();
+            }
+        }
+    }
+
+    private static ThreadFactory daemonFactory(String prefix) {
+        AtomicInteger index = new AtomicInteger(0);
+        return r -> {
+            Thread thread = new Thread(r, prefix + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class Holder {
+        private static final RenewalEngine INSTANCE = new RenewalEngine(100, 512,
+                Math.max(2, Runtime.getRuntime().availableProcessors() / 4));
+    }
+
+    // 租约：每个周期在时间轮上是一个任务，entry 为当前周期的句柄
+    static class Lease extends TimerTask {
+        private final RenewalEngine engine;
+        private final DistributedLock lock;
+        private final long periodMillis;
+        private volatile boolean cancelled; // 在 synchronized(this) 下修改，续期线程无锁读取
+        private TimerTaskEntry entry; // 在 synchronized(this) 下访问
+
+        private Lease(RenewalEngine engine, DistributedLock lock, long periodMillis) {
+            this.engine = engine;
+            this.lock = lock;
+            this.periodMillis = periodMillis;
+        }
+
+        // 放回时间轮，delayMillis 之后再次续期
+        private synchronized void schedule(long delayMillis) {
+            if (!cancelled) {
+                entry = engine.wheel.addTask(this, delayMillis);
+            }
+        }
+
+        // 到期：在推进线程上只放进待续期队列，续期在工作线程上批量执行
+        @Override
+        public void onTimeout() {
+            engine.enqueue(this);
+        }
+
+        // 注销租约，当前周期的任务直接从时间轮槽位中摘除
+        void cancel() {
+            TimerTaskEntry current;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                current = entry;
+                entry = null;
+            }
+            if (current != null) {
+                current.cancel();
+            }
+            engine.activeLeases.decrementAndGet();
+        }
+    }
+}
@@ -1,33 +1,311 @@
 package org.hangerlin.common.bucket;
 
-import java.util.Queue;
-import java.util.LinkedList;
+import org.hangerlin.common.metrics.LockMetrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * 令牌池：令牌放在无锁的环形队列（TokenRing）中，可用数量由 permits 计数，取令牌先预留数量再出队，
+ * 批量取令牌时一次预留 n 个，不会出现多个线程各拿到一部分互相等待的情况。
+ * 取不到令牌的线程在等待队列中挂起，归还令牌时只唤醒能被满足的等待者，而不是全部唤醒。
+ * 归还令牌时还有一层分槽缓存：槽位数固定（不超过 CPU 数的两倍和容量），线程按 id 映射到一个槽位，
+ * 没有人等待时归还的令牌先放在自己的槽位里，下次取令牌直接拿回，不访问共享的队列。
+ * 缓存的令牌不属于某个线程，线程退出后留下的令牌仍然可以被其他线程取走，也计入 availableTokens；
+ * 共享队列取不到时先扫描所有槽位，有线程需要等待时会先把所有槽位中的令牌收回到队列，缓存不会让其他线程饿死。
+ */
 public class HangerBucket {
-    private final Queue<HangerToken> tokens;
+    private final TokenRing tokens;
     private final int capacity;
+    private final AtomicInteger permits = new AtomicInteger(); // 队列中可以预留的令牌数
+    private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger waiting = new AtomicInteger(); // 等待令牌的线程数
+    private final AtomicReferenceArray<HangerToken> caches; // 分槽的令牌缓存，槽位数为 2 的幂
+    private final int cacheMask;
+    private final LockMetrics metrics;
 
     public HangerBucket(int capacity) {
+        this(capacity, LockMetrics.NOOP);
+    }
+
+    /**
+     * @param metrics 取令牌的等待时间、等待线程数等指标
+     */
+    public HangerBucket(int capacity, LockMetrics metrics) {
         this.capacity = capacity;
-        this.tokens = new LinkedList<>();
+        this.metrics = metrics;
+        this.tokens = new TokenRing(Math.max(1, capacity));
+        int stripes = Math.min(ceilingPowerOfTwo(2 * Runtime.getRuntime().availableProcessors()),
+                ceilingPowerOfTwo(capacity));
+        this.caches = new AtomicReferenceArray<>(stripes);
+        this.cacheMask = stripes - 1;
         // 初始化令牌
         for (int i = 0; i < capacity; i++) {
-            tokens.add(new HangerToken("Node-" + UUID.randomUUID().toString(), new byte[0]));
+            tokens.offer(new HangerToken("Node-" + UUID.randomUUID().toString(), new byte[0]));
+        }
+        permits.set(capacity);
+    }
+
+    // 取一个令牌，没有可用令牌时挂起等待
+    public HangerToken acquireToken() throws InterruptedException {
+        HangerToken token = takeCached();
+        if (token != null) {
+            metrics.onAcquire(0);
+            return token;
+        }
+        if (!await(1, false, 0L)) {
+            Thread.interrupted();
+            throw new InterruptedException();
+        }
+        return pollReserved();
+    }
+
+    /**
+     * 取一个令牌，最多等待 timeout。
+     * @return 令牌，超时返回 null
+     */
+    public HangerToken tryAcquireToken(long timeout, TimeUnit unit) throws InterruptedException {
+        HangerToken token = takeCached();
+        if (token != null) {
+            metrics.onAcquire(0);
+            return token;
+        }
+        if (!await(1, true, unit.toNanos(timeout))) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            return null;
+        }
+        return pollReserved();
+    }
+
+    // 一次取 n 个令牌，不足 n 个时挂起等待，等待期间不占用任何令牌
+    public List<HangerToken> acquireTokens(int n) throws InterruptedException {
+        if (n <= 0 || n > capacity) {
+            throw new IllegalArgumentException("n must be between 1 and capacity");
+        }
+        if (!await(n, false, 0L)) {
+            Thread.interrupted();
+            throw new InterruptedException();
+        }
+        List<HangerToken> acquired = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            acquired.add(pollReserved());
+        }
+        return acquired;
+    }
+
+    // 归还一个令牌，桶已满时丢弃
+    public void releaseToken(HangerToken token) {
+        if (!hasRoom()) {
+            return;
+        }
+        if (waiters.isEmpty()) {
+            int slot = slot();
+            if (caches.get(slot) == null && caches.compareAndSet(slot, null, token)) {
+                // 放入缓存之后再确认没有等待者；等待者先登记再收回缓存，两边至少有一边能看到对方
+                if (waiters.isEmpty() || !caches.compareAndSet(slot, token, null)) {
+                    return; // 没有等待者，或者已经被其他线程取走
+                }
+            }
+        }
+        if (tokens.offer(token)) {
+            permits.incrementAndGet();
+            signal();
+        }
+    }
+
+    // 一次归还多个令牌
+    public void releaseTokens(Collection<HangerToken> released) {
+        int room = capacity - permits.get() - cachedTokens();
+        int added = 0;
+        for (HangerToken token : released) {
+            if (added >= room) {
+                break; // 桶已满，其余的丢弃
+            }
+            if (tokens.offer(token)) {
+                added++;
+            }
+        }
+        if (added > 0) {
+            permits.addAndGet(added);
+            signal();
+        }
+    }
+
+    // 当前可用的令牌数（近似值），包含缓存槽位中的令牌
+    public int availableTokens() {
+        return permits.get() + cachedTokens();
+    }
+
+    // 缓存的槽位数
+    int cacheStripes() {
+        return caches.length();
+    }
+
+    /**
+     * 预留 n 个令牌，不足时登记为等待者并挂起。
+     * @return 预留成功返回 true；超时或被中断返回 false，被中断时中断标记保持设置
+     */
+    private boolean await(int n, boolean timed, long nanos) {
+        if (reserve(n)) {
+            metrics.onAcquire(0);
+            return true;
+        }
+        long start = System.nanoTime();
+        long deadline = start + nanos;
+        metrics.onContended();
+        metrics.onQueueDepth(waiting.incrementAndGet());
+        Waiter waiter = new Waiter(Thread.currentThread(), n);
+        waiters.add(waiter);
+        try {
+            for (;;) {
+                // 先登记再收回缓存和重试，登记之后的归还一定会看到这个等待者
+                reclaimCaches();
+                if (reserve(n)) {
+                    if (metrics != LockMetrics.NOOP) {
+                        metrics.onAcquire(System.nanoTime() - start);
+                    }
+                    return true;
+                }
+                if (timed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0L) {
+                        metrics.onAcquireFailed(System.nanoTime() - start);
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                } else {
+                    LockSupport.park(this);
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    metrics.onAcquireFailed(System.nanoTime() - start);
+                    return false;
+                }
+            }
+        } finally {
+            waiters.remove(waiter);
+            waiting.decrementAndGet();
+            // 离开时可能带走了一次唤醒，转给其他能被满足的等待者
+            signal();
+        }
+    }
+
+    private boolean reserve(int n) {
+        for (;;) {
+            int available = permits.get();
+            if (available < n) {
+                return false;
+            }
+            if (permits.compareAndSet(available, available - n)) {
+                return true;
+            }
+        }
+    }
+
+    // 出队一个已经预留的令牌。预留数不超过已发布的令牌数，队首的写入还没完成时短暂自旋
+    private HangerToken pollReserved() {
+        HangerToken token;
+        while ((token = tokens.poll()) == null) {
+            Thread.onSpinWait();
+        }
+        return token;
+    }
+
+    /**
+     * 不等待地取一个缓存的令牌：先取自己的槽位，再从队列预留，最后扫描其他槽位。
+     * @return 取不到时返回 null，由调用方登记为等待者
+     */
+    private HangerToken takeCached() {
+        int slot = slot();
+        HangerToken token = caches.getAndSet(slot, null);
+        if (token != null) {
+            return token;
+        }
+        if (reserve(1)) {
+            return pollReserved();
+        }
+        for (int i = 1; i < caches.length(); i++) {
+            int other = (slot + i) & cacheMask;
+            if (caches.get(other) != null && (token = caches.getAndSet(other, null)) != null) {
+                return token;
+            }
         }
+        return null;
     }
 
-    public synchronized HangerToken acquireToken() throws InterruptedException {
-        while (tokens.isEmpty()) {
-            wait(); // 如果没有可用的令牌，则等待
+    // 缓存槽位中的令牌数
+    private int cachedTokens() {
+        int cached = 0;
+        for (int i = 0; i < caches.length(); i++) {
+            if (caches.get(i) != null) {
+                cached++;
+            }
         }
-        return tokens.poll(); // 获取令牌
+        return cached;
     }
 
-    public synchronized void releaseToken(HangerToken token) {
-        if (tokens.size() < capacity) {
-            tokens.offer(token);
-            notifyAll(); // 释放令牌并通知等待的线程
+    // 桶是否还能放下一个令牌：队列和缓存中的令牌加起来不能超过容量。
+    // 令牌先入队再计数、先出队计数再取出，并发时只会少算，正常归还的令牌不会被丢弃；
+    // 队列远未满时所有槽位都放满也不会超过容量，不需要扫描槽位
+    private boolean hasRoom() {
+        int queued = permits.get();
+        return queued + caches.length() < capacity || queued + cachedTokens() < capacity;
+    }
+
+    // 把所有槽位中的令牌收回到队列
+    private void reclaimCaches() {
+        for (int i = 0; i < caches.length(); i++) {
+            if (caches.get(i) != null) {
+                HangerToken token = caches.getAndSet(i, null);
+                if (token != null && tokens.offer(token)) {
+                    permits.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    // 当前线程的缓存槽位；线程 id 依次分配，取低位即可把同时运行的线程分散到不同槽位
+    private int slot() {
+        return (int) Thread.currentThread().getId() & cacheMask;
+    }
+
+    private static int ceilingPowerOfTwo(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    // 按顺序唤醒当前可用令牌能满足的等待者，被唤醒的等待者自己去预留
+    private void signal() {
+        if (waiters.isEmpty()) {
+            return;
+        }
+        int available = permits.get();
+        for (Waiter waiter : waiters) {
+            if (available <= 0) {
+                return;
+            }
+            if (waiter.need <= available) {
+                available -= waiter.need;
+                LockSupport.unpark(waiter.thread);
+            }
+        }
+    }
+
+    // 等待令牌的线程和需要的令牌数
+    private static final class Waiter {
+        final Thread thread;
+        final int need;
+
+        Waiter(Thread thread, int need) {
+            this.thread = thread;
+            this.need = need;
         }
     }
 }
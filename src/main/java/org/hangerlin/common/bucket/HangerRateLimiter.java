@@ -0,0 +1,70 @@
+package org.hangerlin.common.bucket;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 按速率补充的令牌桶：容量为 burst，每秒补充 permitsPerSecond 个令牌。与固定数量的 HangerBucket 不同，令牌用掉后不需要归还。
+ * 补充按时间戳惰性计算，没有补充线程。内部只记录“桶重新装满的时间”一个值（即 GCRA 中的理论到达时间），
+ * 它等价于令牌数和上次补充时间两个字段：当前令牌数 = burst - (装满时间 - 当前时间) / 每个令牌的间隔。
+ * 取令牌是一次 CAS，不加锁，不分配对象。
+ */
+public class HangerRateLimiter {
+    private final long intervalNanos; // 补充一个令牌的时间
+    private final long capacityNanos; // 装满整个桶需要的时间：burst * intervalNanos
+    private final int burst;
+    private final LongSupplier clock;
+    private final AtomicLong fullAt; // 桶重新装满的时间（clock 的纳秒时间），不晚于当前时间表示桶是满的
+
+    /**
+     * @param permitsPerSecond 每秒补充的令牌数
+     * @param burst 桶的容量，即允许的最大突发请求数
+     */
+    public HangerRateLimiter(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    HangerRateLimiter(double permitsPerSecond, int burst, LongSupplier clock) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+        }
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burst = burst;
+        this.capacityNanos = intervalNanos * burst;
+        this.clock = clock;
+        this.fullAt = new AtomicLong(clock.getAsLong()); // 初始时桶是满的
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * 尝试取 permits 个令牌，不足时立即返回 false，不会部分扣减。
+     */
+    public boolean tryAcquire(int permits) {
+        if (permits <= 0 || permits > burst) {
+            throw new IllegalArgumentException("permits must be between 1 and burst");
+        }
+        long cost = permits * intervalNanos;
+        for (;;) {
+            long now = clock.getAsLong();
+            long current = fullAt.get();
+            // 桶已经满了时从当前时间算起，多出来的时间不会累积成超过 burst 的令牌
+            long next = Math.max(current, now) + cost;
+            if (next - now > capacityNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    // 当前可用的令牌数
+    public int availablePermits() {
+        long deficit = Math.max(0, fullAt.get() - clock.getAsLong());
+        return (int) ((capacityNanos - deficit) / intervalNanos);
+    }
+}
@@ -0,0 +1,237 @@
+package org.hangerlin.common.bucket;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 跨节点的许可池在本节点上的入口：从 PermitStore 一次租用 batchSize 个许可放在本地，
+ * 取令牌和归还令牌都只在本地计数上 CAS，本地许可用完时才再租一批，本地许可超过两批时把多出来的还回去，
+ * 一次远程调用对应一批许可而不是一个许可。
+ * 节点持有许可期间由后台线程每 leaseMillis / 3 续租一次；一个周期内没有使用过的本地许可会全部还回去。
+ * 节点宕机后停止续租，它持有的许可在租约过期后被 PermitStore 收回；
+ * 如果续租时发现租约已经过期，本地许可作废，之前发出去的令牌归还时直接丢弃，不会超发；
+ * 续租之前先补充许可时，PermitStore 报告这次租用新建了持有，同样作废旧的令牌。
+ */
+public class LeasedPermitPool implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(LeasedPermitPool.class.getName());
+
+    // 所有池共用的续租线程
+    private static final ScheduledExecutorService RENEWER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "permit-lease-renewer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final long LOCAL_MASK = 0xFFFFFFFFL;
+    private static final long MAX_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final byte[] EMPTY = new byte[0];
+
+    private final PermitStore store;
+    private final String nodeName;
+    private final int batchSize;
+    private final long leaseMillis;
+    // 高 32 位是租约的代数，低 32 位是本地可用的许可数；租约丢失时代数加一，旧令牌的归还因为代数不同被丢弃
+    private final AtomicLong state = new AtomicLong();
+    private final AtomicInteger outstanding = new AtomicInteger(); // 已经发出、还没归还的令牌数
+    private final ScheduledFuture<?> renewal;
+    private volatile boolean used; // 上次续租之后是否取过令牌
+    private boolean closed; // 由 this 保护
+
+    /**
+     * @param nodeName 本节点的名称，PermitStore 按节点记账，发出的令牌也带有这个名称
+     * @param batchSize 每次向 PermitStore 租用的许可数
+     * @param leaseMillis 租期（毫秒），节点宕机后最多经过这么久，它持有的许可被收回
+     */
+    public LeasedPermitPool(PermitStore store, String nodeName, int batchSize, long leaseMillis) {
+        if (batchSize <= 0 || leaseMillis <= 0) {
+            throw new IllegalArgumentException("batchSize and leaseMillis must be positive");
+        }
+        this.store = store;
+        this.nodeName = nodeName;
+        this.batchSize = batchSize;
+        this.leaseMillis = leaseMillis;
+        long period = Math.max(1, leaseMillis / 3);
+        this.renewal = RENEWER.scheduleWithFixedDelay(this::renew, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 取一个令牌，本地没有许可时向 PermitStore 租一批。
+     * @return 令牌，整个集群都没有空闲许可时返回 null
+     */
+    public HangerToken tryAcquireToken() {
+        if (!used) {
+            used = true;
+        }
+        // 先计入 outstanding 再扣本地许可，续租线程不会在令牌发出途中把节点当成空闲
+        outstanding.incrementAndGet();
+        for (;;) {
+            long current = state.get();
+            if ((current & LOCAL_MASK) > 0) {
+                if (state.compareAndSet(current, current - 1)) {
+                    return new LeasedToken(this, (int) (current >>> 32));
+                }
+            } else if (!refill()) {
+                outstanding.decrementAndGet();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 取一个令牌，最多等待 timeout。PermitStore 没有归还通知，等待期间按退避间隔重新租用。
+     * @return 令牌，超时返回 null
+     */
+    public HangerToken tryAcquireToken(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long backoff = TimeUnit.MILLISECONDS.toNanos(1);
+        for (;;) {
+            HangerToken token = tryAcquireToken();
+            if (token != null) {
+                return token;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0L) {
+                return null;
+            }
+            LockSupport.parkNanos(this, Math.min(remaining, backoff));
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            backoff = Math.min(backoff * 2, MAX_RETRY_NANOS);
+        }
+    }
+
+    // 归还令牌，放回本地；本地许可超过两批时把多出来的还给 PermitStore
+    public void releaseToken(HangerToken token) {
+        if (!(token instanceof LeasedToken) || ((LeasedToken) token).pool != this) {
+            throw new IllegalArgumentException("token was not acquired from this pool");
+        }
+        int generation = ((LeasedToken) token).generation;
+        long current;
+        do {
+            current = state.get();
+            if ((int) (current >>> 32) != generation) {
+                break; // 令牌所属的租约已经丢失，许可已被收回
+            }
+        } while (!state.compareAndSet(current, current + 1));
+        // 先放回本地再减少 outstanding，和 tryAcquireToken 的顺序相反
+        outstanding.decrementAndGet();
+        if ((current & LOCAL_MASK) + 1 > 2L * batchSize) {
+            trim();
+        }
+    }
+
+    // 本地可用的许可数，不包含已经发出的令牌
+    public int localPermits() {
+        return (int) (state.get() & LOCAL_MASK);
+    }
+
+    // 关闭后把本地许可全部还给 PermitStore，不再续租；已经发出的令牌随租约过期收回
+    @Override
+    public void close() {
+        renewal.cancel(false);
+        synchronized (this) {
+            closed = true;
+            returnLocal();
+        }
+    }
+
+    // 本地许可用完时租一批，同一时间只有一个线程访问 PermitStore，其他线程等它租完直接使用
+    private synchronized boolean refill() {
+        if ((state.get() & LOCAL_MASK) > 0) {
+            return true;
+        }
+        if (closed) {
+            return false;
+        }
+        PermitStore.Grant grant = store.lease(nodeName, batchSize, leaseMillis);
+        if (grant.permits <= 0) {
+            return false;
+        }
+        if (grant.newHolding) {
+            // 之前的持有已经不存在：如果是过期被收回（续租线程还没发现），之前发出的令牌必须作废。
+            // 正常全部归还后再租用时没有未归还的令牌，代数加一没有影响
+            invalidate(grant.permits);
+        } else {
+            state.addAndGet(grant.permits);
+        }
+        return true;
+    }
+
+    // 只保留一批本地许可，多出来的还给 PermitStore
+    private synchronized void trim() {
+        int excess;
+        for (;;) {
+            long current = state.get();
+            excess = (int) (current & LOCAL_MASK) - batchSize;
+            if (excess <= 0) {
+                return;
+            }
+            if (state.compareAndSet(current, current - excess)) {
+                break;
+            }
+        }
+        store.release(nodeName, excess, leaseMillis);
+    }
+
+    // 续租线程每个周期执行一次
+    private synchronized void renew() {
+        try {
+            if (!used && outstanding.get() == 0) {
+                returnLocal(); // 一个周期内没有使用，预取的许可没有必要继续占着
+                return;
+            }
+            used = false;
+            if (!store.renew(nodeName, leaseMillis)) {
+                // 租约已经过期被收回：本地许可作废，已经发出的令牌归还时丢弃
+                invalidate(0);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "续租失败", e);
+        }
+    }
+
+    // 租约代数加一，本地许可换成新租到的 permits 个；旧代数的令牌归还时丢弃。调用方持有 this
+    private void invalidate(int permits) {
+        long current;
+        long next;
+        do {
+            current = state.get();
+            next = (((current >>> 32) + 1) << 32) + permits;
+        } while (!state.compareAndSet(current, next));
+        if ((current & LOCAL_MASK) > 0 || outstanding.get() > 0) {
+            LOGGER.warning("节点 " + nodeName + " 的许可租约已过期，本地许可作废");
+        }
+    }
+
+    // 把本地许可全部还给 PermitStore，调用方持有 this
+    private void returnLocal() {
+        long current;
+        do {
+            current = state.get();
+        } while ((current & LOCAL_MASK) > 0 && !state.compareAndSet(current, current & ~LOCAL_MASK));
+        int local = (int) (current & LOCAL_MASK);
+        if (local > 0) {
+            store.release(nodeName, local, leaseMillis);
+        }
+    }
+
+    // 带有租约代数的令牌，用来识别租约丢失之前发出的令牌
+    private static final class LeasedToken extends HangerToken {
+        final LeasedPermitPool pool;
+        final int generation;
+
+        LeasedToken(LeasedPermitPool pool, int generation) {
+            super(pool.nodeName, EMPTY);
+            this.pool = pool;
+            this.generation = generation;
+        }
+    }
+}
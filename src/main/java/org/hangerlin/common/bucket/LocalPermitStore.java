@@ -0,0 +1,102 @@
+package org.hangerlin.common.bucket;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * 进程内的 PermitStore，所有操作在同一把锁下执行。
+ * 单机部署或测试时代替 Redis 使用。
+ */
+public class LocalPermitStore implements PermitStore {
+    private final int capacity;
+    private final LongSupplier clock; // 当前时间（毫秒）
+    private final Map<String, Holding> holdings = new HashMap<>();
+    private int used; // 所有节点持有的许可数之和
+
+    public LocalPermitStore(int capacity) {
+        this(capacity, System::currentTimeMillis);
+    }
+
+    LocalPermitStore(int capacity, LongSupplier clock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.clock = clock;
+    }
+
+    @Override
+    public synchronized Grant lease(String node, int permits, long leaseMillis) {
+        long now = reclaimExpired();
+        int granted = Math.min(permits, capacity - used);
+        if (granted <= 0) {
+            return Grant.NONE;
+        }
+        Holding holding = holdings.get(node);
+        boolean newHolding = holding == null;
+        if (newHolding) {
+            holding = new Holding();
+            holdings.put(node, holding);
+        }
+        holding.count += granted;
+        holding.expiresAt = now + leaseMillis;
+        used += granted;
+        return new Grant(granted, newHolding);
+    }
+
+    @Override
+    public synchronized int release(String node, int permits, long leaseMillis) {
+        long now = reclaimExpired();
+        Holding holding = holdings.get(node);
+        if (holding == null) {
+            return 0;
+        }
+        int returned = Math.min(permits, holding.count);
+        holding.count -= returned;
+        used -= returned;
+        if (holding.count == 0) {
+            holdings.remove(node);
+        } else {
+            holding.expiresAt = now + leaseMillis;
+        }
+        return returned;
+    }
+
+    @Override
+    public synchronized boolean renew(String node, long leaseMillis) {
+        long now = reclaimExpired();
+        Holding holding = holdings.get(node);
+        if (holding == null) {
+            return false;
+        }
+        holding.expiresAt = now + leaseMillis;
+        return true;
+    }
+
+    @Override
+    public synchronized int available() {
+        reclaimExpired();
+        return capacity - used;
+    }
+
+    // 收回所有过期节点持有的许可，返回当前时间
+    private long reclaimExpired() {
+        long now = clock.getAsLong();
+        Iterator<Holding> it = holdings.values().iterator();
+        while (it.hasNext()) {
+            Holding holding = it.next();
+            if (holding.expiresAt <= now) {
+                used -= holding.count;
+                it.remove();
+            }
+        }
+        return now;
+    }
+
+    private static final class Holding {
+        int count;
+        long expiresAt;
+    }
+}
@@ -0,0 +1,43 @@
+package org.hangerlin.common.bucket;
+
+/**
+ * 集群共享的许可池，LeasedPermitPool 从中按批租用许可。
+ * 许可以节点为单位记账：每个节点持有若干许可和一个过期时间，节点在过期前续租；
+ * 节点宕机不再续租时，它持有的许可在过期后被收回，其他节点可以重新租用。
+ */
+public interface PermitStore {
+    /**
+     * 为节点租用最多 permits 个许可，并把节点的租期延长到 leaseMillis 之后。
+     * @return 实际租到的许可数，以及租用之前节点是否已经没有有效的持有；池中没有空闲许可时为 Grant.NONE
+     */
+    Grant lease(String node, int permits, long leaseMillis);
+
+    /**
+     * 归还节点持有的 permits 个许可，节点仍持有许可时延长租期，全部归还后删除节点的记录。
+     * @return 实际归还的许可数，租约已经过期被收回时返回 0
+     */
+    int release(String node, int permits, long leaseMillis);
+
+    /**
+     * 延长节点的租期。
+     * @return 节点的租约仍然有效返回 true；已经过期被收回（或节点没有持有许可）返回 false
+     */
+    boolean renew(String node, long leaseMillis);
+
+    // 池中未被任何节点租用的许可数
+    int available();
+
+    // 一次租用的结果
+    final class Grant {
+        public static final Grant NONE = new Grant(0, false);
+
+        public final int permits; // 实际租到的许可数
+        // 租用之前节点没有有效的持有（第一次租用、已经全部归还，或者租约已过期被收回），这次租用新建了持有
+        public final boolean newHolding;
+
+        public Grant(int permits, boolean newHolding) {
+            this.permits = permits;
+            this.newHolding = newHolding;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.hangerlin.common.bucket;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+
+/**
+ * 基于 Redis 的 PermitStore。每个池使用两个哈希：{name}:held 记录每个节点持有的许可数，{name}:expiry 记录每个节点租约的过期时间（毫秒）。
+ * 两个 key 用 {name} 作为哈希标签，集群模式下落在同一个槽，脚本可以同时访问。
+ * 每个操作是一次 Lua 脚本调用，脚本开头先收回过期节点的许可，时间取服务端的 TIME。
+ * 节点数通常很少，收回时直接遍历 {name}:expiry。
+ */
+public class RedisPermitStore implements PermitStore {
+    // 所有脚本共用的开头：取服务端时间，收回过期节点持有的许可
+    private static final String RECLAIM =
+            "redis.replicate_commands() " +
+            "local time = redis.call('TIME') " +
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) " +
+            "local expiry = redis.call('HGETALL', KEYS[2]) " +
+            "for i = 1, #expiry, 2 do " +
+            "  if tonumber(expiry[i + 1]) <= now then " +
+            "    redis.call('HDEL', KEYS[1], expiry[i]) " +
+            "    redis.call('HDEL', KEYS[2], expiry[i]) " +
+            "  end " +
+            "end ";
+
+    private static final String USED =
+            "local used = 0 " +
+            "for _, v in ipairs(redis.call('HVALS', KEYS[1])) do used = used + tonumber(v) end ";
+
+    // ARGV：节点、需要的许可数、租期（毫秒）、池的容量。
+    // 返回 {租到的许可数, 租用之前节点没有持有时为 1}，持有在收回过期节点之后判断
+    static final String LEASE_SCRIPT = RECLAIM + USED +
+            "local granted = math.min(tonumber(ARGV[2]), tonumber(ARGV[4]) - used) " +
+            "if granted <= 0 then return {0, 0} end " +
+            "local fresh = 1 - redis.call('HEXISTS', KEYS[1], ARGV[1]) " +
+            "redis.call('HINCRBY', KEYS[1], ARGV[1], granted) " +
+            "redis.call('HSET', KEYS[2], ARGV[1], string.format('%d', now + tonumber(ARGV[3]))) " +
+            "return {granted, fresh}";
+
+    // ARGV：节点、归还的许可数、租期（毫秒）。返回实际归还的许可数
+    static final String RELEASE_SCRIPT = RECLAIM +
+            "local held = tonumber(redis.call('HGET', KEYS[1], ARGV[1]) or '0') " +
+            "local returned = math.min(held, tonumber(ARGV[2])) " +
+            "if held - returned <= 0 then " +
+            "  redis.call('HDEL', KEYS[1], ARGV[1]) " +
+            "  redis.call('HDEL', KEYS[2], ARGV[1]) " +
+            "else " +
+            "  redis.call('HINCRBY', KEYS[1], ARGV[1], -returned) " +
+            "  redis.call('HSET', KEYS[2], ARGV[1], string.format('%d', now + tonumber(ARGV[3]))) " +
+            "end " +
+            "return returned";
+
+    // ARGV：节点、租期（毫秒）。租约仍然有效返回 1，否则返回 0
+    static final String RENEW_SCRIPT = RECLAIM +
+            "if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 0 then return 0 end " +
+            "redis.call('HSET', KEYS[2], ARGV[1], string.format('%d', now + tonumber(ARGV[2]))) " +
+            "return 1";
+
+    // ARGV：池的容量。返回未被租用的许可数
+    static final String AVAILABLE_SCRIPT = RECLAIM + USED +
+            "return tonumber(ARGV[1]) - used";
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final RedisScript<List<Long>> LEASE = (RedisScript) new DefaultRedisScript<>(LEASE_SCRIPT, List.class);
+    private static final RedisScript<Long> RELEASE = RedisScript.of(RELEASE_SCRIPT, Long.class);
+    private static final RedisScript<Long> RENEW = RedisScript.of(RENEW_SCRIPT, Long.class);
+    private static final RedisScript<Long> AVAILABLE = RedisScript.of(AVAILABLE_SCRIPT, Long.class);
+
+    private final List<String> keys;
+    private final StringRedisTemplate template;
+    private final String capacity;
+
+    /**
+     * @param name 池的名称，所有节点使用同一个名称共享许可
+     * @param capacity 整个集群的许可总数
+     */
+    public RedisPermitStore(String name, StringRedisTemplate template, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.keys = List.of("{" + name + "}:held", "{" + name + "}:expiry");
+        this.template = template;
+        this.capacity = String.valueOf(capacity);
+    }
+
+    @Override
+    public Grant lease(String node, int permits, long leaseMillis) {
+        List<Long> result = template.execute(LEASE, keys, node, String.valueOf(permits), String.valueOf(leaseMillis), capacity);
+        if (result == null || result.get(0) <= 0) {
+            return Grant.NONE;
+        }
+        return new Grant(result.get(0).intValue(), result.get(1) == 1);
+    }
+
+    @Override
+    public int release(String node, int permits, long leaseMillis) {
+        Long returned = template.execute(RELEASE, keys, node, String.valueOf(permits), String.valueOf(leaseMillis));
+        return returned == null ? 0 : returned.intValue();
+    }
+
+    @Override
+    public boolean renew(String node, long leaseMillis) {
+        Long renewed = template.execute(RENEW, keys, node, String.valueOf(leaseMillis));
+        return renewed != null && renewed == 1;
+    }
+
+    @Override
+    public int available() {
+        Long available = template.execute(AVAILABLE, keys, capacity);
+        return available == null ? 0 : available.intValue();
+    }
+}
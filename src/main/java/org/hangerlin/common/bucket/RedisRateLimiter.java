@@ -0,0 +1,68 @@
+package org.hangerlin.common.bucket;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 所有节点共享一个限额的分布式限流器，语义与 HangerRateLimiter 相同（容量 burst，每秒补充 permitsPerSecond 个）。
+ * 使用 GCRA：Redis 中每个 key 只保存一个理论到达时间（微秒），一次请求就是一次 Lua 脚本调用，
+ * 判断和扣减在脚本中原子完成，时间取服务端的 TIME，不依赖各节点的时钟。
+ * key 在桶重新装满时自动过期，空闲的限流器不占用内存。
+ */
+public class RedisRateLimiter {
+    // ARGV：每个令牌的间隔（微秒）、装满整个桶的时间（微秒）、本次需要的令牌数。允许返回 1，否则返回 0
+    static final String ACQUIRE_SCRIPT =
+            "redis.replicate_commands() " +
+            "local time = redis.call('TIME') " +
+            "local now = tonumber(time[1]) * 1000000 + tonumber(time[2]) " +
+            "local tat = tonumber(redis.call('GET', KEYS[1]) or now) " +
+            "if tat < now then tat = now end " +
+            "local new_tat = tat + tonumber(ARGV[1]) * tonumber(ARGV[3]) " +
+            "if new_tat - now > tonumber(ARGV[2]) then return 0 end " +
+            // 用 %d 写入，避免大数被 Lua 格式化成科学计数法而丢失精度
+            "redis.call('SET', KEYS[1], string.format('%d', new_tat), 'PX', math.ceil((new_tat - now) / 1000)) " +
+            "return 1";
+
+    private static final RedisScript<Long> ACQUIRE = RedisScript.of(ACQUIRE_SCRIPT, Long.class);
+
+    private final List<String> keys;
+    private final StringRedisTemplate template;
+    private final String intervalMicros;
+    private final String capacityMicros;
+    private final int burst;
+
+    /**
+     * @param key 限流器的 key，所有节点使用同一个 key 共享限额
+     * @param permitsPerSecond 每秒补充的令牌数
+     * @param burst 桶的容量，即允许的最大突发请求数
+     */
+    public RedisRateLimiter(String key, StringRedisTemplate template, double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+        }
+        long interval = Math.max(1, (long) (TimeUnit.SECONDS.toMicros(1) / permitsPerSecond));
+        this.keys = List.of(key);
+        this.template = template;
+        this.intervalMicros = String.valueOf(interval);
+        this.capacityMicros = String.valueOf(interval * burst);
+        this.burst = burst;
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * 尝试取 permits 个令牌，一次网络往返。不足时返回 false，不会部分扣减。
+     */
+    public boolean tryAcquire(int permits) {
+        if (permits <= 0 || permits > burst) {
+            throw new IllegalArgumentException("permits must be between 1 and burst");
+        }
+        Long allowed = template.execute(ACQUIRE, keys, intervalMicros, capacityMicros, String.valueOf(permits));
+        return allowed != null && allowed == 1;
+    }
+}
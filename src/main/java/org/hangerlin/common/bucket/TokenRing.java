@@ -0,0 +1,68 @@
+package org.hangerlin.common.bucket;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 有界的多生产者多消费者环形队列（Vyukov 算法），无锁，入队出队不分配对象。
+ * 每个槽位有一个序号：等于入队位置时可以写入，等于入队位置 + 1 时可以读出，读出后推进一圈等待下一次写入。
+ * 生产者和消费者只在 tail、head 上 CAS，写入和读出槽位时不会互相覆盖。
+ */
+class TokenRing {
+    private final HangerToken[] buffer;
+    private final AtomicLongArray sequence;
+    private final int size;
+    private final AtomicLong tail = new AtomicLong(); // 下一个入队位置
+    private final AtomicLong head = new AtomicLong(); // 下一个出队位置
+
+    TokenRing(int size) {
+        this.size = size;
+        this.buffer = new HangerToken[size];
+        this.sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequence.set(i, i);
+        }
+    }
+
+    // 入队，队列已满返回 false；不会因为消费者正在出队而误判为已满
+    boolean offer(HangerToken token) {
+        for (;;) {
+            long pos = tail.get();
+            int index = (int) (pos % size);
+            long diff = sequence.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer[index] = token;
+                    sequence.set(index, pos + 1); // 发布：之后的消费者一定能看到 buffer 中的令牌
+                    return true;
+                }
+            } else if (diff < 0) {
+                // 这个槽位上一圈的令牌还没被取走：队列真的满了，或者消费者已经推进 head、还没清空槽位，后者稍等即可
+                if (pos - head.get() >= size) {
+                    return false;
+                }
+                Thread.onSpinWait();
+            }
+            // diff > 0：其他生产者已经占用了这个位置，重新读取 tail
+        }
+    }
+
+    // 出队，队列为空（或队首的写入还没完成）时返回 null
+    HangerToken poll() {
+        for (;;) {
+            long pos = head.get();
+            int index = (int) (pos % size);
+            long diff = sequence.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    HangerToken token = buffer[index];
+                    buffer[index] = null;
+                    sequence.set(index, pos + size); // 槽位可以被下一圈写入
+                    return token;
+                }
+            } else if (diff < 0) {
+                return null;
+            }
+        }
+    }
+}
@@ -1,90 +1,202 @@
 package org.hangerlin.common.lock;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * 带等待时间和租期的锁：tryLock 最多等待 waitTime，拿到锁后超过 leaseTime 没有释放会自动释放。
+ * 抢锁先短暂自旋，之后按 AcquireStrategy 退避或挂起等待释放时的唤醒；每次抢锁的状态（截止时间、退避时间）都是局部变量。
+ * 租期到期由所有实例共享的一个调度线程处理，不再为每次抢锁启动线程：抢锁时只记录到期时间，
+ * 每把锁在调度线程上最多有一个检查任务，到期时释放当时的租约，否则按当前租约的到期时间重新调度。
+ */
 public class HangerOptimizeAcquireLock {
-    private final ReentrantLock lock = new ReentrantLock();
-    private long leaseTimeMillis; // 锁的租期时间
-    private long waitTimeMillis;  // 客户端愿意等待锁的最长时间
+    /**
+     * 自旋之后的等待方式
+     */
+    public enum AcquireStrategy {
+        // 带随机抖动的指数退避，不依赖释放时的唤醒
+        BACKOFF,
+        // 挂起，释放锁时唤醒一个等待者
+        PARK
+    }
+
+    private static final int DEFAULT_SPINS = 64;
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    // 挂起的最长时间，唤醒恰好丢失时（等待者超时离开的同时锁被释放）也能自行重试
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    // 所有实例共享的租期调度线程
+    private static final ScheduledExecutorService LEASE_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "lease-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long leaseTimeMillis; // 锁的租期时间，不大于 0 表示不自动释放
+    private final long waitTimeMillis;  // 客户端愿意等待锁的最长时间
+    private final AcquireStrategy strategy;
+    private final int spins; // 进入退避或挂起之前的自旋次数
+    private final AtomicReference<Lease> state = new AtomicReference<>(); // 当前租约，null 表示锁空闲
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<>(); // PARK 策略下挂起的线程
+    private final AtomicBoolean expiryScheduled = new AtomicBoolean(); // 调度线程上是否已有到期检查任务
 
     public HangerOptimizeAcquireLock(long waitTime, long leaseTime, TimeUnit unit) {
+        this(waitTime, leaseTime, unit, AcquireStrategy.PARK, DEFAULT_SPINS);
+    }
+
+    /**
+     * @param strategy 自旋之后的等待方式
+     * @param spins 自旋次数，0 表示不自旋
+     */
+    public HangerOptimizeAcquireLock(long waitTime, long leaseTime, TimeUnit unit, AcquireStrategy strategy, int spins) {
+        if (spins < 0) {
+            throw new IllegalArgumentException("spins must not be negative");
+        }
         this.waitTimeMillis = unit.toMillis(waitTime);
         this.leaseTimeMillis = unit.toMillis(leaseTime);
+        this.strategy = strategy;
+        this.spins = spins;
     }
 
     /**
-     * 尝试获取锁
+     * 尝试获取锁，最多等待构造时指定的等待时间。可重入，租期从最外层获取开始计算。
      * @return 是否成功获取锁
      */
     public boolean tryLock() {
-        long deadline = System.currentTimeMillis() + waitTimeMillis;
-        long newLeaseTime = leaseTimeMillis;
-        long remainTime = waitTimeMillis;
-        long lockWaitTime = calculateLockWaitTime(remainTime);
-
-        boolean acquired = false;
-        try {
-            while (System.currentTimeMillis() < deadline) {
-                long time = System.currentTimeMillis();
-                acquired = lock.tryLock(Math.min(lockWaitTime, remainTime), TimeUnit.MILLISECONDS);
-
-                if (acquired) {
-                    startLeaseTimer(newLeaseTime);
-                    break;
-                }
-
-                // 更新剩余时间，不管是否获取锁成功都需要了：反映的是从当前时刻开始，还剩多少时间可以用于尝试获取锁
-                remainTime = remainTime - (System.currentTimeMillis() - time);
-
-                // 短暂休眠以避免过度占用CPU
-                Thread.sleep(100);
+        Thread current = Thread.currentThread();
+        Lease lease = state.get();
+        if (lease != null && lease.owner == current) {
+            lease.holds++;
+            return true;
+        }
+        // 短暂自旋：锁很快释放时不付出挂起和唤醒的代价
+        for (int i = 0; i <= spins; i++) {
+            if (state.get() == null && acquire(current)) {
+                return true;
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            Thread.onSpinWait();
         }
-
-        return acquired;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitTimeMillis);
+        return strategy == AcquireStrategy.PARK ? parkUntilAcquired(current, deadline) : backoffUntilAcquired(current, deadline);
     }
 
     /**
-     * 释放锁
+     * 释放锁。租期已经到期、锁已被自动释放时什么也不做。
      */
     public void unlock() {
-        if (lock.isHeldByCurrentThread()) {
-            lock.unlock();
+        Lease lease = state.get();
+        if (lease == null || lease.owner != Thread.currentThread()) {
+            return;
+        }
+        if (--lease.holds > 0) {
+            return;
         }
+        release(lease);
     }
 
-    /**
-     * 计算每次尝试获取锁的最大等待时间
-     * @param remainTime 剩余的总等待时间
-     * @return 每次尝试获取锁的等待时间
-     */
-    private long attemptCount = 0;
-
-    private long calculateLockWaitTime(long remainTime) {
-        attemptCount++;
-        // 使用指数退避策略，随着尝试次数增加，每次尝试的等待时间逐渐减少
-        long exponentialBackoff = (long) (remainTime * 0.5 / (attemptCount * attemptCount));
-        // 确保每次尝试的等待时间不会小于一个合理的最小值，比如 100 毫秒
-        long minWaitTime = 100;
-        return Math.max(exponentialBackoff, minWaitTime);
+    private boolean backoffUntilAcquired(Thread current, long deadline) {
+        long backoff = MIN_BACKOFF_NANOS;
+        for (;;) {
+            if (state.get() == null && acquire(current)) {
+                return true;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0L) {
+                return false;
+            }
+            // 带随机抖动的指数退避，避免大量等待者同时重试
+            long sleep = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            LockSupport.parkNanos(this, Math.min(sleep, remaining));
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            backoff = Math.min(MAX_BACKOFF_NANOS, backoff << 1);
+        }
     }
 
+    private boolean parkUntilAcquired(Thread current, long deadline) {
+        // 先登记再检查锁，登记之后的释放一定能看到这个等待者
+        waiters.add(current);
+        try {
+            for (;;) {
+                if (state.get() == null && acquire(current)) {
+                    return true;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, Math.min(remaining, MAX_PARK_NANOS));
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        } finally {
+            waiters.remove(current);
+        }
+    }
 
-    /**
-     * 启动一个计时器，在租期结束时自动释放锁
-     * @param leaseTime 租期时间
-     */
-    private void startLeaseTimer(long leaseTime) {
-        new Thread(() -> {
-            try {
-                Thread.sleep(leaseTime);
-                unlock();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+    private boolean acquire(Thread current) {
+        long expiresAt = leaseTimeMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leaseTimeMillis) : 0L;
+        if (!state.compareAndSet(null, new Lease(current, expiresAt))) {
+            return false;
+        }
+        // 没有检查任务时才调度一个，频繁抢锁解锁时不会产生额外的调度
+        if (leaseTimeMillis > 0 && !expiryScheduled.get() && expiryScheduled.compareAndSet(false, true)) {
+            LEASE_SCHEDULER.schedule(this::checkExpiry, leaseTimeMillis, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    // 在调度线程上运行：释放已到期的租约，锁仍被持有时按当前租约的到期时间重新调度
+    private void checkExpiry() {
+        for (;;) {
+            Lease lease = state.get();
+            if (lease != null) {
+                long delay = lease.expiresAt - System.nanoTime();
+                if (delay > 0) {
+                    LEASE_SCHEDULER.schedule(this::checkExpiry, delay, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                release(lease);
+                continue;
+            }
+            expiryScheduled.set(false);
+            // 清除标记前刚拿到锁的线程看到标记仍在、没有调度，由这里接手
+            if (state.get() == null || !expiryScheduled.compareAndSet(false, true)) {
+                return;
             }
-        }).start();
+        }
+    }
+
+    // 只有锁仍是这个租约时才释放，已被自动释放并被其他线程拿到时不受影响
+    private void release(Lease lease) {
+        if (state.compareAndSet(lease, null)) {
+            Thread next = waiters.peek();
+            if (next != null) {
+                LockSupport.unpark(next);
+            }
+        }
+    }
+
+    // 一次成功的抢锁
+    private static class Lease {
+        final Thread owner;
+        final long expiresAt; // 租期到期的时间（System.nanoTime）
+        int holds = 1; // 重入次数，只由持有者访问
+
+        Lease(Thread owner, long expiresAt) {
+            this.owner = owner;
+            this.expiresAt = expiresAt;
+        }
     }
 }
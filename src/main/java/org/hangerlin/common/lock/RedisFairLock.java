@@ -0,0 +1,347 @@
+package org.hangerlin.common.lock;
+
+import org.hangerlin.common.watcher.UnlockBroker;
+import org.hangerlin.common.watcher.UnlockListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 跨节点的公平锁，沿用 FairLock 的设计：Redis 列表作为等待队列，有序集合（ZSET）记录每个等待者的超时时间。
+ * 锁空闲时只有队首的等待者可以拿到锁；等待者每次重试都会刷新自己在 ZSET 中的超时时间，
+ * 宕机的等待者不再刷新，在下一次抢锁或释放时从队首被惰性移除。
+ * 释放锁时脚本返回下一个等待者，只通知这一个等待者（通过 UnlockBroker 发布），其他等待者不会被唤醒，也不需要轮询。
+ * 只有需要等待的线程在等待期间订阅自己的标识，没有等待者的实例在 broker 上没有订阅；
+ * 等待者标识加上 WAITER_PREFIX 前缀发布，和 HangerWatcher 等使用同一个 broker 的锁 key 不会混在一起。
+ * 重入次数在本地记录，Redis 中只保存持有者；持有期间由共享的续期线程定期续期。
+ * 续期发现锁已被别人持有，或者续期一直失败到锁必然已经过期时，这次持有标记为丢失：
+ * isHeldByCurrentThread 返回 false，unlock 抛出 IllegalMonitorStateException，再次 lock 会重新抢锁。
+ * 每个 key 创建一个实例并复用，ttl 以秒为单位。
+ */
+public class RedisFairLock implements Lock {
+    private static final Logger LOGGER = Logger.getLogger(RedisFairLock.class.getName());
+
+    // 队列中的等待者超过这个时间没有刷新就视为已失效
+    private static final long QUEUE_TIMEOUT_MILLIS = 10_000;
+    // 等待者最长挂起时间，保证在失效前刷新自己的超时时间
+    private static final long MAX_PARK_MILLIS = QUEUE_TIMEOUT_MILLIS / 3;
+    // 通知等待者时 broker 上使用的 key 前缀，后面是等待者标识
+    static final String WAITER_PREFIX = "fair-lock-waiter:";
+
+    // 公共开头：KEYS 为锁、等待队列、超时集合，ARGV[1] 为等待者标识；先从队首移除已失效的等待者
+    private static final String PRELUDE =
+            "redis.replicate_commands() " +
+            "local time = redis.call('TIME') " +
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) " +
+            "local head = redis.call('LINDEX', KEYS[2], 0) " +
+            "while head do " +
+            "  local deadline = redis.call('ZSCORE', KEYS[3], head) " +
+            "  if deadline and tonumber(deadline) >= now then break end " +
+            "  redis.call('LPOP', KEYS[2]) " +
+            "  redis.call('ZREM', KEYS[3], head) " +
+            "  head = redis.call('LINDEX', KEYS[2], 0) " +
+            "end ";
+
+    // 抢锁：ARGV[2] 为锁 ttl（毫秒），ARGV[3] 为 1 时失败后排队。
+    // 返回 0 表示拿到锁，否则返回建议的等待时间（毫秒）
+    static final String ACQUIRE_SCRIPT = PRELUDE +
+            "local owner = redis.call('GET', KEYS[1]) " +
+            "if owner == ARGV[1] or (owner == false and (head == false or head == ARGV[1])) then " +
+            "  if head == ARGV[1] then " +
+            "    redis.call('LPOP', KEYS[2]) " +
+            "    redis.call('ZREM', KEYS[3], ARGV[1]) " +
+            "  end " +
+            "  redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2]) " +
+            "  return 0 " +
+            "end " +
+            "if ARGV[3] == '1' then " +
+            "  if redis.call('ZADD', KEYS[3], now + " + QUEUE_TIMEOUT_MILLIS + ", ARGV[1]) == 1 then " +
+            "    redis.call('RPUSH', KEYS[2], ARGV[1]) " +
+            "  end " +
+            "end " +
+            // 锁被持有时等到它过期；锁空闲但轮不到自己时等到队首失效
+            "if owner then return math.max(1, redis.call('PTTL', KEYS[1])) end " +
+            "return math.max(1, tonumber(redis.call('ZSCORE', KEYS[3], head)) - now)";
+
+    // 释放锁：不是持有者返回 nil，否则返回需要通知的下一个等待者（没有时为空串）
+    static final String RELEASE_SCRIPT = PRELUDE +
+            "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return false end " +
+            "redis.call('DEL', KEYS[1]) " +
+            "return head or ''";
+
+    // 放弃等待（超时或被中断）：离开队列；如果自己是队首且锁空闲，返回新的队首让调用方通知它
+    static final String CANCEL_SCRIPT = PRELUDE +
+            "redis.call('ZREM', KEYS[3], ARGV[1]) " +
+            "redis.call('LREM', KEYS[2], 0, ARGV[1]) " +
+            "if head == ARGV[1] and redis.call('EXISTS', KEYS[1]) == 0 then " +
+            "  return redis.call('LINDEX', KEYS[2], 0) or '' " +
+            "end " +
+            "return ''";
+
+    // 校验持有者的续期
+    static final String RENEW_SCRIPT =
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+            "  return redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+            "end " +
+            "return 0";
+
+    private static final RedisScript<Long> ACQUIRE = RedisScript.of(ACQUIRE_SCRIPT, Long.class);
+    private static final RedisScript<String> RELEASE = RedisScript.of(RELEASE_SCRIPT, String.class);
+    private static final RedisScript<String> CANCEL = RedisScript.of(CANCEL_SCRIPT, String.class);
+    private static final RedisScript<Long> RENEW = RedisScript.of(RENEW_SCRIPT, Long.class);
+
+    // 所有实例共享的续期线程
+    private static final ScheduledExecutorService RENEWAL = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "fair-lock-renewal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String key;
+    private final List<String> keys; // 锁、等待队列、超时集合
+    private final StringRedisTemplate template;
+    private final UnlockBroker broker;
+    private final String nodeId = UUID.randomUUID().toString(); // 当前节点（实例）的标识
+    private final String ttlMillis;
+    private final Map<Thread, Hold> holds = new ConcurrentHashMap<>(); // 本节点上持有锁的线程
+    private final Map<String, Thread> parked = new ConcurrentHashMap<>(); // 本节点上等待通知的线程
+    private final UnlockListener notifier = this::onNotified; // 等待者在 broker 上订阅自己的标识时使用
+
+    /**
+     * @param broker 用于通知下一个等待者，所有节点需要使用同一个通道
+     * @param ttl 锁的过期时间（秒），持有期间每三分之一过期时间续期一次
+     */
+    public RedisFairLock(String key, StringRedisTemplate template, UnlockBroker broker, long ttl) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        this.key = key;
+        this.keys = List.of(key, key + ":queue", key + ":timeout");
+        this.template = template;
+        this.broker = broker;
+        this.ttlMillis = String.valueOf(ttl * 1000);
+    }
+
+    // 当前线程是否持有锁；续期失败后的持有不算
+    public boolean isHeldByCurrentThread() {
+        Hold hold = holds.get(Thread.currentThread());
+        return hold != null && !hold.lost;
+    }
+
+    @Override
+    public void lock() {
+        try {
+            acquire(false, false, 0L);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e); // 不可中断的抢锁不会抛出
+        }
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        acquire(true, false, 0L);
+    }
+
+    // 只尝试一次，锁被持有或有人排队时立即返回 false，不进入队列
+    @Override
+    public boolean tryLock() {
+        if (reenter()) {
+            return true;
+        }
+        if (attempt(waiterId(), false) != 0) {
+            return false;
+        }
+        granted();
+        return true;
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        return acquire(true, true, unit.toNanos(time));
+    }
+
+    @Override
+    public void unlock() {
+        Hold hold = holds.get(Thread.currentThread());
+        if (hold == null) {
+            throw new IllegalMonitorStateException("Calling thread has not locked this lock");
+        }
+        if (hold.lost) {
+            // 锁已经不属于当前线程，不执行释放脚本，整个持有（包括重入）一起丢弃
+            holds.remove(Thread.currentThread());
+            throw new IllegalMonitorStateException("Lock was lost while held: " + key);
+        }
+        if (--hold.count > 0) {
+            return;
+        }
+        holds.remove(Thread.currentThread());
+        hold.renewal.cancel(false);
+        String next = template.execute(RELEASE, keys, waiterId());
+        if (next == null) {
+            LOGGER.warning("释放时锁已不再由当前线程持有: " + key);
+        } else if (!next.isEmpty()) {
+            broker.publish(WAITER_PREFIX + next);
+        }
+    }
+
+    // 分布式条件变量不在这个锁的范围内
+    @Override
+    public Condition newCondition() {
+        throw new UnsupportedOperationException();
+    }
+
+    private boolean acquire(boolean interruptible, boolean timed, long nanos) throws InterruptedException {
+        if (interruptible && Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (reenter()) {
+            return true;
+        }
+        String waiterId = waiterId();
+        long deadline = timed ? System.nanoTime() + nanos : 0L;
+        boolean interrupted = false;
+        boolean subscribed = false;
+        // 先登记再订阅，订阅之后发出的通知不会丢失（unpark 的许可会保留到下一次 park）
+        parked.put(waiterId, Thread.currentThread());
+        try {
+            for (;;) {
+                long waitMillis = attempt(waiterId, true);
+                if (waitMillis == 0) {
+                    granted();
+                    return true;
+                }
+                if (!subscribed) {
+                    // 第一次失败时才订阅，不等待直接再试一次：订阅生效之前的释放由这次重试看到
+                    broker.subscribe(WAITER_PREFIX + waiterId, notifier);
+                    subscribed = true;
+                    continue;
+                }
+                long parkNanos = TimeUnit.MILLISECONDS.toNanos(Math.min(waitMillis, MAX_PARK_MILLIS));
+                if (timed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0L) {
+                        cancel(waiterId);
+                        return false;
+                    }
+                    parkNanos = Math.min(parkNanos, remaining);
+                }
+                LockSupport.parkNanos(this, parkNanos);
+                if (Thread.interrupted()) {
+                    if (interruptible) {
+                        cancel(waiterId);
+                        throw new InterruptedException();
+                    }
+                    interrupted = true;
+                }
+            }
+        } catch (RuntimeException e) {
+            // 抢锁或订阅出错时离开队列，否则排在前面的这个等待者会挡住后面的人，直到队列超时才被清理
+            try {
+                cancel(waiterId);
+            } catch (RuntimeException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        } finally {
+            if (subscribed) {
+                broker.unsubscribe(WAITER_PREFIX + waiterId, notifier);
+            }
+            parked.remove(waiterId);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // 重入：当前线程的持有已经丢失时丢弃它，由调用方重新抢锁
+    private boolean reenter() {
+        Hold hold = holds.get(Thread.currentThread());
+        if (hold == null) {
+            return false;
+        }
+        if (hold.lost) {
+            holds.remove(Thread.currentThread());
+            return false;
+        }
+        hold.count++;
+        return true;
+    }
+
+    // 通知的 key 是前缀加等待者标识，只唤醒本节点上对应的线程
+    private void onNotified(String waiterKey) {
+        Thread thread = parked.get(waiterKey.substring(WAITER_PREFIX.length()));
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private long attempt(String waiterId, boolean enqueue) {
+        Long result = template.execute(ACQUIRE, keys, waiterId, ttlMillis, enqueue ? "1" : "0");
+        return result == null ? MAX_PARK_MILLIS : result;
+    }
+
+    // 离开队列，自己离开后轮到的新队首需要通知
+    private void cancel(String waiterId) {
+        String next = template.execute(CANCEL, keys, waiterId);
+        if (next != null && !next.isEmpty()) {
+            broker.publish(WAITER_PREFIX + next);
+        }
+    }
+
+    private void granted() {
+        Hold hold = new Hold();
+        String waiterId = waiterId();
+        long period = Math.max(1, Long.parseLong(ttlMillis) / 3);
+        hold.renewedAt = System.nanoTime();
+        hold.renewal = RENEWAL.scheduleAtFixedRate(() -> renew(hold, waiterId), period, period, TimeUnit.MILLISECONDS);
+        holds.put(Thread.currentThread(), hold);
+    }
+
+    // 锁已被别人持有时立即标记为丢失；调用出错时只有距上一次成功续期超过 ttl（锁必然已过期）才标记
+    private void renew(Hold hold, String waiterId) {
+        try {
+            Long renewed = template.execute(RENEW, List.of(key), waiterId, ttlMillis);
+            if (renewed != null && renewed != 0) {
+                hold.renewedAt = System.nanoTime();
+                return;
+            }
+            LOGGER.warning("续期失败，锁已不再由当前线程持有: " + key);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "续期失败", e);
+            if (System.nanoTime() - hold.renewedAt < TimeUnit.MILLISECONDS.toNanos(Long.parseLong(ttlMillis))) {
+                return;
+            }
+        }
+        hold.lost = true;
+        ScheduledFuture<?> renewal = hold.renewal;
+        if (renewal != null) {
+            renewal.cancel(false);
+        }
+    }
+
+    // 等待者标识：节点 + 线程
+    private String waiterId() {
+        return nodeId + ":" + Thread.currentThread().getId();
+    }
+
+    // 一个线程的持有：count 只由持有线程访问，其余字段还会被续期线程访问
+    private static class Hold {
+        int count = 1;
+        volatile ScheduledFuture<?> renewal;
+        volatile long renewedAt; // 上一次成功续期（或拿到锁）的时间，System.nanoTime
+        volatile boolean lost; // 续期发现锁已不再属于这次持有
+    }
+}
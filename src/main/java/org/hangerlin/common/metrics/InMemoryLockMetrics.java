@@ -0,0 +1,110 @@
+package org.hangerlin.common.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LockMetrics 的默认内存实现：计数用 LongAdder，时间分布用 LatencyHistogram，记录时不分配对象也不加锁。
+ * 一个实例汇总所有使用它的锁，需要分别统计时为每把锁创建一个实例。
+ * 开销：每次记录是一到三次 LongAdder / LongAccumulator 累加，等待时间为 0 时只有一次。
+ * FairLock 无竞争的加锁/解锁在单线程下比不记录指标时每次多约 20ns（吞吐约为 55%–60%，见 LockMetricsBenchmark），
+ * 其中大部分是每次加锁的计数和按 FairLock.HOLD_TIME_SAMPLE 采样的持有时间（两次读时钟加一次直方图记录）。
+ */
+public class InMemoryLockMetrics implements LockMetrics {
+    private final LatencyHistogram acquireLatency = new LatencyHistogram(); // 抢锁等待时间
+    private final LatencyHistogram holdTime = new LatencyHistogram(); // 持有时间
+    private final LatencyHistogram renewalLag = new LatencyHistogram(); // 续期延迟
+    private final LongAdder acquireFailures = new LongAdder(); // 超时或被中断的抢锁次数
+    private final LongAdder contended = new LongAdder(); // 没有立即成功的抢锁次数
+    private final LongAdder renewalFailures = new LongAdder(); // 续期失败次数
+    private final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0L); // 观察到的最大排队线程数
+    private volatile int lastQueueDepth; // 最近一次观察到的排队线程数
+
+    @Override
+    public void onAcquire(long waitNanos) {
+        acquireLatency.record(waitNanos);
+    }
+
+    @Override
+    public void onAcquireFailed(long waitNanos) {
+        acquireFailures.increment();
+    }
+
+    @Override
+    public void onContended() {
+        contended.increment();
+    }
+
+    @Override
+    public void onRelease(long holdNanos) {
+        holdTime.record(holdNanos);
+    }
+
+    @Override
+    public void onQueueDepth(int depth) {
+        lastQueueDepth = depth;
+        maxQueueDepth.accumulate(depth);
+    }
+
+    @Override
+    public void onRenewal(long lagNanos) {
+        renewalLag.record(lagNanos);
+    }
+
+    @Override
+    public void onRenewalFailure() {
+        renewalFailures.increment();
+    }
+
+    public LatencyHistogram getAcquireLatency() {
+        return acquireLatency;
+    }
+
+    public LatencyHistogram getHoldTime() {
+        return holdTime;
+    }
+
+    public LatencyHistogram getRenewalLag() {
+        return renewalLag;
+    }
+
+    // 成功拿到锁的次数
+    public long getAcquires() {
+        return acquireLatency.getCount();
+    }
+
+    public long getAcquireFailures() {
+        return acquireFailures.sum();
+    }
+
+    public long getContended() {
+        return contended.sum();
+    }
+
+    public long getRenewals() {
+        return renewalLag.getCount();
+    }
+
+    public long getRenewalFailures() {
+        return renewalFailures.sum();
+    }
+
+    public int getLastQueueDepth() {
+        return lastQueueDepth;
+    }
+
+    public long getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    @Override
+    public String toString() {
+        return "InMemoryLockMetrics{acquireNanos=" + acquireLatency
+                + ", holdNanos=" + holdTime
+                + ", renewalLagNanos=" + renewalLag
+                + ", acquireFailures=" + getAcquireFailures()
+                + ", contended=" + getContended()
+                + ", renewalFailures=" + getRenewalFailures()
+                + ", maxQueueDepth=" + getMaxQueueDepth() + "}";
+    }
+}
@@ -0,0 +1,115 @@
+package org.hangerlin.common.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HDR 风格的对数-线性直方图：每个 2 的幂区间再等分成 8 个桶，任意量级的相对误差不超过 12.5%，
+ * 小于 8 的值精确记录。桶在构造时一次分配好，record 只做一次位运算和一次 LongAdder 累加，不分配对象，
+ * 多线程并发记录时也不会在同一个计数上竞争。读取是近似的实时值。
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 覆盖 0 到 Long.MAX_VALUE
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder(); // 所有记录值之和，用于计算平均值
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    // 记录一个值，负数按 0 记录
+    public void record(long value) {
+        if (value <= 0) {
+            counts[0].increment(); // 不影响总和和最大值，没有竞争的加锁只有这一次累加
+            return;
+        }
+        counts[indexOf(value)].increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : counts) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : total.sum() / (double) count;
+    }
+
+    /**
+     * 返回百分位数，例如 99 表示 p99。结果是所在桶的上界（不超过记录过的最大值），没有记录时返回 0。
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts[i].sum();
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100.0, percentile) / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public void reset() {
+        for (LongAdder bucket : counts) {
+            bucket.reset();
+        }
+        total.reset();
+        max.reset();
+    }
+
+    // 值所在的桶：小于 8 时就是值本身，否则由最高位的位置和紧随其后的 3 位决定
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // 桶中能放下的最大值
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "{count=" + getCount()
+                + ", mean=" + Math.round(getMean())
+                + ", p50=" + getPercentile(50)
+                + ", p99=" + getPercentile(99)
+                + ", max=" + getMax() + "}";
+    }
+}
@@ -0,0 +1,40 @@
+package org.hangerlin.common.metrics;
+
+/**
+ * 锁的指标监听器。各种锁在抢锁、释放、排队和续期时回调这里，实现类决定如何汇总（默认实现见 InMemoryLockMetrics）。
+ * 回调发生在抢锁和释放的路径上：实现不能阻塞，也不应分配对象。所有方法默认什么也不做，只需覆盖关心的事件。
+ * 时间参数都以纳秒为单位。锁使用 NOOP 时不会读取时钟，几乎没有额外开销。
+ */
+public interface LockMetrics {
+    // 不记录任何指标，所有锁的默认值
+    LockMetrics NOOP = new LockMetrics() {
+    };
+
+    // 拿到锁，waitNanos 为从开始抢锁到拿到锁的时间；重入不回调
+    default void onAcquire(long waitNanos) {
+    }
+
+    // 等待超时或被中断，没有拿到锁
+    default void onAcquireFailed(long waitNanos) {
+    }
+
+    // 一次抢锁没有立即成功（需要排队、等待或重试）
+    default void onContended() {
+    }
+
+    // 完全释放锁，holdNanos 为持有时间
+    default void onRelease(long holdNanos) {
+    }
+
+    // 进入等待队列时观察到的排队线程数（包含自己）
+    default void onQueueDepth(int depth) {
+    }
+
+    // 一次续期成功，lagNanos 为相对计划续期时间的延迟
+    default void onRenewal(long lagNanos) {
+    }
+
+    // 续期失败（锁已过期、已被他人持有或存储不可用）
+    default void onRenewalFailure() {
+    }
+}
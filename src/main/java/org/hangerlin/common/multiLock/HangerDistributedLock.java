@@ -1,5 +1,7 @@
 package org.hangerlin.common.multiLock;
 
+import org.hangerlin.common.metrics.LockMetrics;
+
 import java.util.List;
 import java.util.concurrent.locks.Lock;
 
@@ -8,7 +10,11 @@ public class HangerDistributedLock extends HangerMultiLock {
     private final int minSuccessLocks;
 
     public HangerDistributedLock(List<Lock> locks, int maxAllowedFailures, int minSuccessLocks) {
-        super(locks);
+        this(locks, maxAllowedFailures, minSuccessLocks, LockMetrics.NOOP);
+    }
+
+    public HangerDistributedLock(List<Lock> locks, int maxAllowedFailures, int minSuccessLocks, LockMetrics metrics) {
+        super(locks, metrics);
         this.maxAllowedFailures = maxAllowedFailures;
         this.minSuccessLocks = minSuccessLocks;
     }
@@ -1,20 +1,131 @@
 package org.hangerlin.common.multiLock;
 
+import org.hangerlin.common.metrics.LockMetrics;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+/**
+ * 多把锁组成的一把锁，至少拿到 getMinSuccessLocks() 把才算加锁成功，失败超过 getMaxAllowedFailures() 把立即放弃。
+ * tryLock() 依次尝试每把锁；tryLockQuorum() 是 Redlock 方式，同时向所有节点发起加锁，
+ * 耗时取决于达到法定数量时最慢的那个节点，而不是所有节点耗时之和。
+ */
 public abstract class HangerMultiLock {
+    private static final Logger LOGGER = Logger.getLogger(HangerMultiLock.class.getName());
+
+    // Redlock 中的时钟漂移系数：租期的 1%，再加 2 毫秒
+    private static final double CLOCK_DRIFT_FACTOR = 0.01;
+    private static final long CLOCK_DRIFT_MILLIS = 2;
+
+    // 所有实例共享的加锁线程池，每个节点的 tryLock 在其中一个线程上执行
+    private static final ExecutorService ACQUIRERS = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "multilock-acquirer-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     private final List<Lock> locks;
+    private final LockMetrics metrics;
+    private volatile List<Runnable> held = List.of(); // 释放当前持有的每把子锁，unlock 时依次执行
 
     public HangerMultiLock(List<Lock> locks) {
+        this(locks, LockMetrics.NOOP);
+    }
+
+    /**
+     * @param metrics 整体抢锁的耗时和结果，任何一把子锁失败都记为一次竞争
+     */
+    public HangerMultiLock(List<Lock> locks, LockMetrics metrics) {
         this.locks = locks;
+        this.metrics = metrics;
     }
 
     protected abstract int getMaxAllowedFailures();
     protected abstract int getMinSuccessLocks();
 
     public boolean tryLock() {
+        long start = metrics != LockMetrics.NOOP ? System.nanoTime() : 0L;
+        boolean acquired = tryLockAll();
+        record(acquired, start);
+        return acquired;
+    }
+
+    /**
+     * 同时向所有节点加锁，每个节点最多等待 nodeTimeout，达到 getMinSuccessLocks() 时立即返回，
+     * 失败数超过 getMaxAllowedFailures() 时立即放弃。返回之后才拿到的锁、以及放弃时已经拿到的锁都在后台释放。
+     * 子锁在加锁线程池中加锁，释放时回到加锁的那个线程上执行，所以 FairLock 这类绑定线程的锁也可以使用；
+     * 持有期间每把子锁占用一个加锁线程。
+     * @param leaseTime 子锁的租期
+     * @param nodeTimeout 每个节点的加锁超时，应远小于 leaseTime
+     * @return 扣除加锁耗时和时钟漂移之后锁的剩余有效时间（unit），加锁失败或剩余有效时间不大于 0 时返回 0
+     */
+    public long tryLockQuorum(long leaseTime, long nodeTimeout, TimeUnit unit) throws InterruptedException {
+        long start = System.nanoTime();
+        Quorum quorum = new Quorum(locks.size());
+        for (Lock lock : locks) {
+            ACQUIRERS.execute(() -> {
+                Grant grant = null;
+                try {
+                    if (lock.tryLock(nodeTimeout, unit)) {
+                        grant = new Grant(lock);
+                    }
+                } catch (Exception e) {
+                    LOGGER.log(Level.FINE, "子锁加锁失败", e);
+                }
+                quorum.complete(grant);
+                if (grant != null) {
+                    grant.holdUntilReleased();
+                }
+            });
+        }
+        List<Grant> granted = quorum.await(start + unit.toNanos(nodeTimeout));
+        long elapsed = System.nanoTime() - start;
+        if (granted == null) {
+            record(false, start);
+            return 0;
+        }
+        long leaseNanos = unit.toNanos(leaseTime);
+        long drift = (long) (leaseNanos * CLOCK_DRIFT_FACTOR) + TimeUnit.MILLISECONDS.toNanos(CLOCK_DRIFT_MILLIS);
+        long validity = leaseNanos - elapsed - drift;
+        if (validity <= 0) {
+            // 加锁耗时太长，拿到的锁在返回前可能已经过期
+            releaseGrants(granted);
+            record(false, start);
+            return 0;
+        }
+        List<Runnable> releasers = new ArrayList<>(granted.size());
+        for (Grant grant : granted) {
+            releasers.add(grant::releaseAndAwait);
+        }
+        held = releasers;
+        record(true, start);
+        return Math.max(1, unit.convert(validity, TimeUnit.NANOSECONDS));
+    }
+
+    // 释放当前持有的所有子锁
+    public void unlock() {
+        List<Runnable> current = held;
+        held = List.of();
+        for (Runnable release : current) {
+            release.run();
+        }
+    }
+
+    private boolean tryLockAll() {
         int successes = 0;
         int failures = 0;
         List<Lock> acquiredLocks = new ArrayList<>();
@@ -25,9 +136,11 @@ public abstract class HangerMultiLock {
                     acquiredLocks.add(lock);
                     successes++;
                     if (successes >= getMinSuccessLocks()) {
+                        held = releasers(acquiredLocks);
                         return true;
                     }
                 } else {
+                    metrics.onContended();
                     failures++;
                     if (failures > getMaxAllowedFailures()) {
                         releaseLocks(acquiredLocks);
@@ -40,15 +153,190 @@ public abstract class HangerMultiLock {
             }
         }
 
-        return successes >= getMinSuccessLocks();
+        if (successes >= getMinSuccessLocks()) {
+            held = releasers(acquiredLocks);
+            return true;
+        }
+        releaseLocks(acquiredLocks);
+        return false;
+    }
+
+    private void record(boolean acquired, long start) {
+        if (metrics != LockMetrics.NOOP) {
+            long elapsed = System.nanoTime() - start;
+            if (acquired) {
+                metrics.onAcquire(elapsed);
+            } else {
+                metrics.onAcquireFailed(elapsed);
+            }
+        }
     }
 
-    private void releaseLocks(List<Lock> locks) {
+    // tryLock() 在调用方线程上加锁，子锁由调用 unlock 的线程直接释放
+    private static List<Runnable> releasers(List<Lock> locks) {
+        List<Runnable> releasers = new ArrayList<>(locks.size());
         for (Lock lock : locks) {
+            releasers.add(() -> unlock(lock));
+        }
+        return releasers;
+    }
+
+    private static void releaseLocks(List<Lock> locks) {
+        for (Lock lock : locks) {
+            unlock(lock);
+        }
+    }
+
+    private static void releaseGrants(List<Grant> grants) {
+        for (Grant grant : grants) {
+            grant.release();
+        }
+    }
+
+    private static void unlock(Lock lock) {
+        try {
+            lock.unlock();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "释放子锁失败", e);
+        }
+    }
+
+    /**
+     * 在加锁线程上拿到的一把子锁。加锁线程一直等到 release() 之后，在自己的线程上释放子锁。
+     */
+    private static final class Grant {
+        private final Lock lock;
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final CountDownLatch unlocked = new CountDownLatch(1); // 加锁线程已经释放子锁
+
+        Grant(Lock lock) {
+            this.lock = lock;
+        }
+
+        // 通知加锁线程释放子锁，可以在任何线程上调用
+        void release() {
+            released.countDown();
+        }
+
+        // unlock 时调用：通知加锁线程并等到子锁真正释放，返回后子锁可以被其他客户端获取
+        void releaseAndAwait() {
+            release();
+            awaitUninterruptibly(unlocked);
+        }
+
+        // 在加锁线程上调用
+        void holdUntilReleased() {
+            awaitUninterruptibly(released);
             try {
-                lock.unlock();
-            } catch (Exception ignored) {
+                unlock(lock);
+            } finally {
+                unlocked.countDown();
+            }
+        }
+
+        private static void awaitUninterruptibly(CountDownLatch latch) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    latch.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 一次法定数量加锁的结果汇总，所有字段由 this 保护。
+     * 结果确定之前拿到的锁记入 granted；结果确定之后才拿到的锁立即通知加锁线程释放。
+     */
+    private final class Quorum {
+        private final int total;
+        private final List<Grant> granted = new ArrayList<>();
+        private int failures;
+        private int completed;
+        private boolean decided;
+        private boolean won;
+
+        Quorum(int total) {
+            this.total = total;
+        }
+
+        // 一个节点返回了加锁结果，加锁失败时 grant 为 null，在加锁线程上调用
+        void complete(Grant grant) {
+            List<Grant> abandoned = null;
+            synchronized (this) {
+                completed++;
+                if (decided) {
+                    if (grant != null) {
+                        abandoned = List.of(grant); // 迟到或多余的锁
+                    }
+                } else if (grant != null) {
+                    granted.add(grant);
+                    if (granted.size() >= getMinSuccessLocks()) {
+                        decide(true);
+                    }
+                } else {
+                    metrics.onContended();
+                    failures++;
+                    // 失败过多，或者剩下的节点全部成功也达不到法定数量
+                    if (failures > getMaxAllowedFailures() || granted.size() + (total - completed) < getMinSuccessLocks()) {
+                        abandoned = decide(false);
+                    }
+                }
+            }
+            if (abandoned != null) {
+                releaseGrants(abandoned);
+            }
+        }
+
+        /**
+         * 等待结果确定，最晚到 deadline（System.nanoTime）。
+         * @return 成功时返回拿到的锁，失败或超时返回 null
+         */
+        List<Grant> await(long deadline) throws InterruptedException {
+            List<Grant> abandoned;
+            synchronized (this) {
+                try {
+                    while (!decided) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0L) {
+                            break;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    }
+                } catch (InterruptedException e) {
+                    // 被中断时放弃这次加锁，已经拿到的锁（包括刚好达到法定数量的）都要释放
+                    releaseGrants(decided && won ? new ArrayList<>(granted) : decide(false));
+                    throw e;
+                }
+                if (decided && won) {
+                    return new ArrayList<>(granted);
+                }
+                abandoned = decide(false);
+            }
+            releaseGrants(abandoned);
+            return null;
+        }
+
+        // 确定结果并唤醒调用方；失败时返回需要释放的锁
+        private List<Grant> decide(boolean success) {
+            if (decided) {
+                return List.of();
+            }
+            decided = true;
+            won = success;
+            notifyAll();
+            if (success) {
+                return List.of();
             }
+            List<Grant> abandoned = new ArrayList<>(granted);
+            granted.clear();
+            return abandoned;
         }
     }
 }
@@ -1,148 +1,306 @@
 package org.hangerlin.common.readwritelock;
 
+import org.hangerlin.common.metrics.LockMetrics;
+
+import java.lang.invoke.VarHandle;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
+/**
+ * 按 key 分别加锁的读写锁。
+ * 每个 key 有自己的锁状态和等待队列（KeyLock 的监视器），一个 key 上的写锁不会阻塞其他 key，释放时也只唤醒该 key 的等待者。
+ * 对读多写少的 key 可以使用乐观读：tryOptimisticRead 取得版本号，读完数据后用 validate 校验期间没有写锁介入，
+ * 乐观读不修改任何共享状态。
+ * 每个线程的重入计数记录在自己的 HoldTable 中，可以同时重入任意多个 key，重入时不访问共享的 lockMap。
+ * 传入 LockMetrics 时记录读锁和写锁的等待时间、每个 key 上的等待线程数，持有时间只统计写锁。
+ */
 public class HangerReadWriteLock {
+    // 版本序列的分段数，必须是 2 的幂
+    private static final int VERSION_STRIPES = 64;
+    // 相邻分段之间隔开 8 个 long（64 字节），不同分段的写锁不会争用同一个缓存行
+    private static final int VERSION_PADDING = 8;
+
+    // 按 key 的哈希分段的版本序列：每次写锁获取和释放都从 key 所在的分段取一个新值；
+    // 新建的 key 状态沿用分段的当前值，分段只增不减，key 的状态被移除后再创建也不会回到旧的版本号。
+    // 从 1 开始，保证版本号不为 0
+    private final AtomicLongArray versionSequences = newVersionSequences();
+
+    // 锁信息存储结构，每个 key 一个锁状态，空闲时移除
+    private final ConcurrentHashMap<String, KeyLock> lockMap = new ConcurrentHashMap<>();
 
-    // 锁信息存储结构，使用 ConcurrentHashMap 以支持高并发
-    private final ConcurrentHashMap<String, LockInfo> lockMap = new ConcurrentHashMap<>();
+    // 每个线程持有的锁表，重入的获取和释放只修改这里的计数，不访问 lockMap
+    private final ThreadLocal<HoldTable> threadHolds = ThreadLocal.withInitial(HoldTable::new);
 
-    // 使用 ThreadLocal 来存储每个线程的锁信息
-    private final ThreadLocal<LockInfo> threadLockInfo = new ThreadLocal<>();
+    private final LockMetrics metrics;
+
+    public HangerReadWriteLock() {
+        this(LockMetrics.NOOP);
+    }
+
+    public HangerReadWriteLock(LockMetrics metrics) {
+        this.metrics = metrics;
+    }
 
     // 获取读锁
     public void acquireReadLock(String uuid) {
-        // 获取当前线程的锁信息
-        LockInfo currentThreadLockInfo = threadLockInfo.get();
+        HoldTable holds = threadHolds.get();
+        int index = holds.indexOf(uuid);
 
-        // 如果当前线程已持有读锁，则增加重入计数并返回
-        if (currentThreadLockInfo != null && currentThreadLockInfo.mode.equals("read")) {
-            currentThreadLockInfo.increment();
+        // 如果当前线程已持有该 key 的读锁，则增加重入计数并返回
+        if (index >= 0 && holds.reads(index) > 0) {
+            holds.addReads(index, 1);
             return;
         }
 
-        // 在 lockMap 中存储或更新锁信息
-        lockMap.compute(uuid, (k, v) -> {
-            if (v == null || v.mode.equals("write")) {
-                threadLockInfo.set(new LockInfo("read", 1));
-                return new LockInfo("read", 1);
-            } else if (v.mode.equals("read")) {
-                threadLockInfo.set(v);
-                v.increment();
-            }
-            return v;
-        });
+        acquireShared(uuid);
+        holds.addReads(holds.indexOrInsert(uuid), 1);
     }
 
     // 释放读锁
     public void releaseReadLock(String uuid) {
-        // 获取当前线程的锁信息
-        LockInfo currentThreadLockInfo = threadLockInfo.get();
-
-        // 减少重入计数，如果计数为0，则移除线程的锁信息
-        if (currentThreadLockInfo != null && currentThreadLockInfo.mode.equals("read")) {
-            currentThreadLockInfo.decrement();
-            if (currentThreadLockInfo.count.get() == 0) {
-                threadLockInfo.remove();
-            }
+        HoldTable holds = threadHolds.get();
+        int index = holds.indexOf(uuid);
+        if (index < 0 || holds.reads(index) == 0) {
+            return; // 当前线程没有持有该 key 的读锁
         }
 
-        // 从 lockMap 中移除或更新锁信息
-        lockMap.computeIfPresent(uuid, (k, v) -> {
-            if (v.mode.equals("read")) {
-                v.decrement();
-                if (v.count.get() == 0) {
-                    return null;
-                }
-            }
-            return v;
-        });
+        // 减少重入计数，计数为 0 时才真正释放该 key 上的读锁
+        boolean last = holds.reads(index) == 1;
+        holds.addReads(index, -1);
+        if (last) {
+            releaseShared(uuid);
+        }
     }
 
-    // 获取写锁
-    public synchronized void acquireWriteLock(String uuid) {
-        // 获取当前线程的锁信息
-        LockInfo currentThreadLockInfo = threadLockInfo.get();
+    // 获取写锁，只等待同一个 key 上的读者和写者
+    public void acquireWriteLock(String uuid) {
+        HoldTable holds = threadHolds.get();
+        int index = holds.indexOf(uuid);
 
         // 如果当前线程已持有写锁，则增加重入计数并返回
-        if (currentThreadLockInfo != null && currentThreadLockInfo.mode.equals("write")) {
-            currentThreadLockInfo.increment();
+        if (index >= 0 && holds.writes(index) > 0) {
+            holds.addWrites(index, 1);
             return;
         }
 
-        // 等待写锁变得可用
-        while (lockMap.containsKey(uuid) && !lockMap.get(uuid).mode.equals("write")) {
-            try {
-                wait();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        }
-        LockInfo lockInfo = new LockInfo("write", 1);
-        threadLockInfo.set(lockInfo);
-        lockMap.put(uuid, lockInfo);
+        acquireExclusive(uuid);
+        holds.addWrites(holds.indexOrInsert(uuid), 1);
     }
 
     // 释放写锁
-    public synchronized void releaseWriteLock(String uuid) {
-        // 获取当前线程的锁信息
-        LockInfo currentThreadLockInfo = threadLockInfo.get();
-
-        // 减少重入计数，如果计数为0，则移除线程的锁信息并唤醒等待的线程
-        if (currentThreadLockInfo != null && currentThreadLockInfo.mode.equals("write")) {
-            currentThreadLockInfo.decrement();
-            if (currentThreadLockInfo.count.get() == 0) {
-                threadLockInfo.remove();
-                lockMap.remove(uuid);
-                notifyAll();
-            }
+    public void releaseWriteLock(String uuid) {
+        HoldTable holds = threadHolds.get();
+        int index = holds.indexOf(uuid);
+        if (index < 0 || holds.writes(index) == 0) {
+            return; // 当前线程没有持有该 key 的写锁
+        }
+
+        // 减少重入计数，如果计数为0，则唤醒该 key 上等待的线程
+        boolean last = holds.writes(index) == 1;
+        holds.addWrites(index, -1);
+        if (last) {
+            releaseExclusive(uuid);
         }
     }
 
     // 从读锁升级到写锁
     public void upgradeReadToWriteLock(String uuid) throws InterruptedException {
-        // 获取当前线程的锁信息
-        LockInfo currentThreadLockInfo = threadLockInfo.get();
+        HoldTable holds = threadHolds.get();
+        int index = holds.indexOf(uuid);
 
         // 检查当前线程是否持有读锁
-        if (currentThreadLockInfo == null || !currentThreadLockInfo.mode.equals("read")) {
+        if (index < 0 || holds.reads(index) == 0) {
             throw new IllegalStateException("Attempt to upgrade lock without holding the read lock");
         }
 
-        synchronized(this) {
-            // 释放当前线程的所有读锁
-            int readLockCount = currentThreadLockInfo.count.get();
-            currentThreadLockInfo.count.set(0);
-            threadLockInfo.remove();
+        // 释放当前线程在该 key 上的所有读锁，再获取写锁
+        holds.addReads(index, -holds.reads(index));
+        releaseShared(uuid);
+        acquireWriteLock(uuid);
+    }
+
+    /**
+     * 乐观读：返回当前版本号，key 正被写锁持有时返回 0。不加锁，也不修改任何共享状态。
+     * key 没有锁状态时返回 key 所在分段的版本序列的当前值，不为只做乐观读的 key 创建状态。
+     */
+    public long tryOptimisticRead(String uuid) {
+        KeyLock state = lockMap.get(uuid);
+        long version = state != null ? state.version : currentVersion(uuid);
+        return (version & 1) == 0 ? version : 0;
+    }
+
+    /**
+     * 校验乐观读期间没有写锁介入。返回 false 时读到的数据可能不一致，应改用 acquireReadLock 重新读取。
+     * key 没有锁状态时与 key 所在分段的版本序列比较，期间同一分段的其他 key 上有写锁也会让校验失败，
+     * 只会多一次重读，不会误判。
+     */
+    public boolean validate(String uuid, long stamp) {
+        VarHandle.acquireFence(); // 保证调用方之前的数据读取不会被重排到版本号读取之后
+        KeyLock state = lockMap.get(uuid);
+        return stamp != 0 && (state != null ? state.version : currentVersion(uuid)) == stamp;
+    }
 
-            for (int i = 0; i < readLockCount
+    // 当前持有锁状态的 key 数
+    int trackedKeys() {
+        return lockMap.size();
+    }
 
-                    ; i++) {
-                releaseReadLock(uuid);
+    private void acquireExclusive(String uuid) {
+        long start = metrics != LockMetrics.NOOP ? System.nanoTime() : 0L;
+        boolean interrupted = false;
+        for (;;) {
+            KeyLock state = lockMap.computeIfAbsent(uuid, this::newKeyLock);
+            synchronized (state) {
+                if (state.retired) {
+                    continue; // 状态刚被移除，重新获取
+                }
+                // 等待写锁变得可用
+                state.waiting++;
+                if (state.writer != null || state.readers > 0) {
+                    metrics.onContended();
+                    metrics.onQueueDepth(state.waiting);
+                }
+                while (state.writer != null || state.readers > 0) {
+                    try {
+                        state.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                state.waiting--;
+                state.writer = Thread.currentThread();
+                state.version = nextVersion(uuid, true); // 版本变为奇数，进行中的乐观读校验失败
+                if (metrics != LockMetrics.NOOP) {
+                    state.writeAcquiredAt = System.nanoTime();
+                    metrics.onAcquire(state.writeAcquiredAt - start);
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
             }
+            return;
+        }
+    }
 
-            // 获取写锁
-            acquireWriteLock(uuid);
+    private void releaseExclusive(String uuid) {
+        KeyLock state = lockMap.get(uuid);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            if (state.writer != Thread.currentThread()) {
+                return;
+            }
+            if (metrics != LockMetrics.NOOP) {
+                metrics.onRelease(System.nanoTime() - state.writeAcquiredAt);
+            }
+            state.writer = null;
+            state.version = nextVersion(uuid, false);
+            state.notifyAll();
+            retireIfIdle(state);
+        }
+    }
+
+    private void acquireShared(String uuid) {
+        long start = metrics != LockMetrics.NOOP ? System.nanoTime() : 0L;
+        boolean interrupted = false;
+        for (;;) {
+            KeyLock state = lockMap.computeIfAbsent(uuid, this::newKeyLock);
+            synchronized (state) {
+                if (state.retired) {
+                    continue;
+                }
+                // 只等待其他线程持有的写锁，写锁持有者可以再获取读锁
+                state.waiting++;
+                if (state.writer != null && state.writer != Thread.currentThread()) {
+                    metrics.onContended();
+                    metrics.onQueueDepth(state.waiting);
+                }
+                while (state.writer != null && state.writer != Thread.currentThread()) {
+                    try {
+                        state.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                state.waiting--;
+                state.readers++;
+            }
+            if (metrics != LockMetrics.NOOP) {
+                metrics.onAcquire(System.nanoTime() - start);
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return;
         }
     }
 
-    // 内部类，用于存储锁的信息
-    private static class LockInfo {
-        String mode; // 锁的模式（读/写）
-        AtomicInteger count; // 重入计数
+    private void releaseShared(String uuid) {
+        KeyLock state = lockMap.get(uuid);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            if (state.readers == 0) {
+                return;
+            }
+            if (--state.readers == 0) {
+                state.notifyAll(); // 只唤醒该 key 上等待的写者
+                retireIfIdle(state);
+            }
+        }
+    }
 
-        LockInfo(String mode, int initialCount) {
-            this.mode = mode;
-            this.count = new AtomicInteger(initialCount);
+    // 没有持有者也没有等待者的 key 不再保留状态，调用方需持有 state 的锁
+    private void retireIfIdle(KeyLock state) {
+        if (state.readers == 0 && state.writer == null && state.waiting == 0) {
+            state.retired = true;
+            lockMap.remove(state.key, state);
         }
+    }
+
+    private KeyLock newKeyLock(String key) {
+        return new KeyLock(key, currentVersion(key));
+    }
 
-        void increment() {
-            count.incrementAndGet();
+    // 没有写锁时的版本号：最近一次写锁释放后分段内没有新的写锁获取，就与当时的版本号相同
+    private long currentVersion(String key) {
+        return versionSequences.get(versionSlot(key)) << 1;
+    }
+
+    // 写锁持有期间版本号为奇数，其余时间为偶数
+    private long nextVersion(String key, boolean writeLocked) {
+        long next = versionSequences.incrementAndGet(versionSlot(key)) << 1;
+        return writeLocked ? next | 1 : next;
+    }
+
+    private static int versionSlot(String key) {
+        int h = key.hashCode();
+        return ((h ^ (h >>> 16)) & (VERSION_STRIPES - 1)) * VERSION_PADDING;
+    }
+
+    private static AtomicLongArray newVersionSequences() {
+        AtomicLongArray sequences = new AtomicLongArray(VERSION_STRIPES * VERSION_PADDING);
+        for (int i = 0; i < VERSION_STRIPES; i++) {
+            sequences.set(i * VERSION_PADDING, 1);
         }
+        return sequences;
+    }
+
+    // 单个 key 的锁状态，除 version 外所有字段在 synchronized(state) 下访问
+    private static class KeyLock {
+        final String key;
+        int readers; // 持有读锁的数量
+        Thread writer; // 持有写锁的线程
+        int waiting; // 正在等待的线程数
+        long writeAcquiredAt; // 写锁被获取的时间（System.nanoTime），只在记录指标时写入
+        boolean retired; // 已从 lockMap 中移除
+        volatile long version; // 乐观读使用的版本号，只有写锁会修改
 
-        void decrement() {
-            count.decrementAndGet();
+        KeyLock(String key, long version) {
+            this.key = key;
+            this.version = version;
         }
     }
-}
\ No newline at end of file
+}
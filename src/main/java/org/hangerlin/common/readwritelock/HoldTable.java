@@ -0,0 +1,116 @@
+package org.hangerlin.common.readwritelock;
+
+/**
+ * 单个线程持有的锁表：key → 读重入次数 + 写重入次数。
+ * 开放地址 + 线性探测，计数用 int 数组保存，查找、加减计数和删除都不分配对象，
+ * 只有同时持有的 key 数量超过容量时才扩容。只由所属线程访问，不需要同步。
+ */
+final class HoldTable {
+    private static final int INITIAL_CAPACITY = 8; // 必须是 2 的幂
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private int[] reads = new int[INITIAL_CAPACITY];
+    private int[] writes = new int[INITIAL_CAPACITY];
+    private int size;
+
+    // 返回 key 所在的槽位，不存在时返回 -1
+    int indexOf(String key) {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            String k = keys[i];
+            if (k == null) {
+                return -1;
+            }
+            if (k == key || k.equals(key)) {
+                return i;
+            }
+        }
+    }
+
+    // 返回 key 所在的槽位，不存在时插入一个计数为 0 的项
+    int indexOrInsert(String key) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            return index;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length << 1); // 装载因子不超过 1/2
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        size++;
+        return i;
+    }
+
+    int reads(int index) {
+        return reads[index];
+    }
+
+    int writes(int index) {
+        return writes[index];
+    }
+
+    void addReads(int index, int delta) {
+        reads[index] += delta;
+        removeIfEmpty(index);
+    }
+
+    void addWrites(int index, int delta) {
+        writes[index] += delta;
+        removeIfEmpty(index);
+    }
+
+    // 读写计数都为 0 时删除该项，后面同一探测链上的项依次前移，不留墓碑
+    private void removeIfEmpty(int index) {
+        if (reads[index] != 0 || writes[index] != 0) {
+            return;
+        }
+        int mask = keys.length - 1;
+        int hole = index;
+        for (int i = (index + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+            int home = hash(keys[i]) & mask;
+            // home 不在 (hole, i] 区间内时，该项可以移到空洞处
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                reads[hole] = reads[i];
+                writes[hole] = writes[i];
+                hole = i;
+            }
+        }
+        keys[hole] = null;
+        reads[hole] = 0;
+        writes[hole] = 0;
+        size--;
+    }
+
+    private void resize(int capacity) {
+        String[] oldKeys = keys;
+        int[] oldReads = reads;
+        int[] oldWrites = writes;
+        keys = new String[capacity];
+        reads = new int[capacity];
+        writes = new int[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                int i = hash(oldKeys[j]) & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                reads[i] = oldReads[j];
+                writes[i] = oldWrites[j];
+            }
+        }
+    }
+
+    // String 会缓存 hashCode，这里再打散高位，减少线性探测的聚集
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,296 @@
+package org.hangerlin.common.readwritelock;
+
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 基于 Redis 哈希的分布式读写锁，接口与 HangerReadWriteLock 一致。
+ * 每把锁是一个哈希，字段含义：
+ * r:{节点}:{线程} 该线程的读重入次数；w / wn / wc 写锁持有者、其所在节点和写重入次数；
+ * n:{节点} 该节点在这把锁上的持有总数；t:{节点} 该节点持有的过期时间（毫秒时间戳）。
+ * 每个操作由一个 Lua 脚本原子完成。多个节点可以同时持有读锁，写锁等待所有读者和其他写者。
+ * 一个节点上所有持有由同一个续期任务统一续期，一次脚本调用刷新该节点持有的全部 key；
+ * 集群模式下一次脚本调用的 key 必须在同一个哈希槽，续期按槽分组，每个槽一次调用。
+ * 节点宕机后它的 t 字段不再刷新，其他节点抢锁时会清除该节点留下的持有。
+ * ttl 以秒为单位。同一个进程应只创建一个实例（即一个节点）。
+ */
+public class RedisReadWriteLock {
+    private static final Logger LOGGER = Logger.getLogger(RedisReadWriteLock.class.getName());
+
+    private static final long DEFAULT_TTL = 30; // 默认过期时间（秒）
+    private static final long MIN_BACKOFF_MILLIS = 5;
+    private static final long MAX_BACKOFF_MILLIS = 200;
+
+    // 公共开头：参数为 ttl（毫秒）、节点、持有者；now 取服务端时间，所有节点使用同一个时钟
+    private static final String PRELUDE =
+            "redis.replicate_commands() " +
+            "local ttl = tonumber(ARGV[1]) " +
+            "local node = ARGV[2] " +
+            "local holder = ARGV[3] " +
+            "local time = redis.call('TIME') " +
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) " +
+            // 刷新节点的过期时间，哈希本身的过期时间只延长不缩短
+            "local function touch(key) " +
+            "  redis.call('HSET', key, 't:' .. node, now + ttl) " +
+            "  if redis.call('PTTL', key) < ttl then redis.call('PEXPIRE', key, ttl) end " +
+            "end " +
+            // 清除一个节点留下的全部持有
+            "local function evict(dead) " +
+            "  local prefix = 'r:' .. dead .. ':' " +
+            "  for _, field in ipairs(redis.call('HKEYS', KEYS[1])) do " +
+            "    if string.sub(field, 1, #prefix) == prefix then redis.call('HDEL', KEYS[1], field) end " +
+            "  end " +
+            "  redis.call('HDEL', KEYS[1], 'n:' .. dead, 't:' .. dead) " +
+            "  if redis.call('HGET', KEYS[1], 'wn') == dead then redis.call('HDEL', KEYS[1], 'w', 'wn', 'wc') end " +
+            "end " +
+            // 节点持有数减少 count，减到 0 时删除节点字段（哈希为空时 Redis 自动删除 key）
+            "local function unhold(count) " +
+            "  if redis.call('HINCRBY', KEYS[1], 'n:' .. node, -count) <= 0 then " +
+            "    redis.call('HDEL', KEYS[1], 'n:' .. node, 't:' .. node) " +
+            "  end " +
+            "end ";
+
+    // 抢写锁：自己持有时重入；否则先清除过期节点，没有读者和写者时写入
+    private static final String WRITE_BODY =
+            "if redis.call('HGET', KEYS[1], 'w') == holder then " +
+            "  redis.call('HINCRBY', KEYS[1], 'wc', 1) " +
+            "  redis.call('HINCRBY', KEYS[1], 'n:' .. node, 1) " +
+            "  touch(KEYS[1]) " +
+            "  return 1 " +
+            "end " +
+            "local fields = redis.call('HGETALL', KEYS[1]) " +
+            "for i = 1, #fields, 2 do " +
+            "  if string.sub(fields[i], 1, 2) == 't:' and tonumber(fields[i + 1]) < now then " +
+            "    evict(string.sub(fields[i], 3)) " +
+            "  end " +
+            "end " +
+            "if redis.call('HEXISTS', KEYS[1], 'w') == 1 then return 0 end " +
+            "for _, field in ipairs(redis.call('HKEYS', KEYS[1])) do " +
+            "  if string.sub(field, 1, 2) == 'r:' then return 0 end " +
+            "end " +
+            "redis.call('HSET', KEYS[1], 'w', holder) " +
+            "redis.call('HSET', KEYS[1], 'wn', node) " +
+            "redis.call('HSET', KEYS[1], 'wc', 1) " +
+            "redis.call('HINCRBY', KEYS[1], 'n:' .. node, 1) " +
+            "touch(KEYS[1]) " +
+            "return 1";
+
+    // 抢读锁：只检查写者，写者所在节点已过期时先清除它；写锁持有者自己可以再获取读锁
+    static final String READ_ACQUIRE_SCRIPT = PRELUDE +
+            "local writerNode = redis.call('HGET', KEYS[1], 'wn') " +
+            "if writerNode and redis.call('HGET', KEYS[1], 'w') ~= holder then " +
+            "  if tonumber(redis.call('HGET', KEYS[1], 't:' .. writerNode) or '0') >= now then return 0 end " +
+            "  evict(writerNode) " +
+            "end " +
+            "redis.call('HINCRBY', KEYS[1], 'r:' .. holder, 1) " +
+            "redis.call('HINCRBY', KEYS[1], 'n:' .. node, 1) " +
+            "touch(KEYS[1]) " +
+            "return 1";
+
+    static final String READ_RELEASE_SCRIPT = PRELUDE +
+            "if redis.call('HEXISTS', KEYS[1], 'r:' .. holder) == 0 then return 0 end " +
+            "if redis.call('HINCRBY', KEYS[1], 'r:' .. holder, -1) <= 0 then " +
+            "  redis.call('HDEL', KEYS[1], 'r:' .. holder) " +
+            "end " +
+            "unhold(1) " +
+            "return 1";
+
+    static final String WRITE_ACQUIRE_SCRIPT = PRELUDE + WRITE_BODY;
+
+    static final String WRITE_RELEASE_SCRIPT = PRELUDE +
+            "if redis.call('HGET', KEYS[1], 'w') ~= holder then return 0 end " +
+            "if redis.call('HINCRBY', KEYS[1], 'wc', -1) <= 0 then " +
+            "  redis.call('HDEL', KEYS[1], 'w', 'wn', 'wc') " +
+            "end " +
+            "unhold(1) " +
+            "return 1";
+
+    // 升级的第一步：释放该线程在该 key 上的全部读重入，返回释放的次数
+    static final String UPGRADE_SCRIPT = PRELUDE +
+            "local reads = tonumber(redis.call('HGET', KEYS[1], 'r:' .. holder) or '0') " +
+            "if reads > 0 then " +
+            "  redis.call('HDEL', KEYS[1], 'r:' .. holder) " +
+            "  unhold(reads) " +
+            "end " +
+            "return reads";
+
+    // 节点续期：一次调用刷新该节点持有的所有 key，返回每个 key 是否仍由该节点持有
+    static final String RENEW_SCRIPT = PRELUDE +
+            "local renewed = {} " +
+            "for i, key in ipairs(KEYS) do " +
+            "  if redis.call('HEXISTS', key, 'n:' .. node) == 1 then " +
+            "    touch(key) " +
+            "    renewed[i] = 1 " +
+            "  else " +
+            "    renewed[i] = 0 " +
+            "  end " +
+            "end " +
+            "return renewed";
+
+    private static final RedisScript<Long> READ_ACQUIRE = RedisScript.of(READ_ACQUIRE_SCRIPT, Long.class);
+    private static final RedisScript<Long> READ_RELEASE = RedisScript.of(READ_RELEASE_SCRIPT, Long.class);
+    private static final RedisScript<Long> WRITE_ACQUIRE = RedisScript.of(WRITE_ACQUIRE_SCRIPT, Long.class);
+    private static final RedisScript<Long> WRITE_RELEASE = RedisScript.of(WRITE_RELEASE_SCRIPT, Long.class);
+    private static final RedisScript<Long> UPGRADE = RedisScript.of(UPGRADE_SCRIPT, Long.class);
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final RedisScript<List<Long>> RENEW = (RedisScript) new DefaultRedisScript<>(RENEW_SCRIPT, List.class);
+
+    private final StringRedisTemplate template;
+    private final String nodeId = UUID.randomUUID().toString(); // 当前节点的标识
+    private final String ttlMillis;
+    private final boolean cluster; // 集群模式下续期按哈希槽分组
+    private final ConcurrentHashMap<String, Integer> heldKeys = new ConcurrentHashMap<>(); // 本节点持有的 key 及持有次数
+    private final ScheduledExecutorService renewal; // 本节点共享的续期线程
+
+    public RedisReadWriteLock(RedisConnectionFactory connectionFactory) {
+        this(new StringRedisTemplate(connectionFactory), DEFAULT_TTL);
+    }
+
+    /**
+     * @param ttl 持有的过期时间（秒），每三分之一过期时间续期一次
+     */
+    public RedisReadWriteLock(StringRedisTemplate template, long ttl) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        this.template = template;
+        this.ttlMillis = String.valueOf(ttl * 1000);
+        this.cluster = template.getConnectionFactory() instanceof LettuceConnectionFactory
+                && ((LettuceConnectionFactory) template.getConnectionFactory()).isClusterAware();
+        this.renewal = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "rwlock-renewal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, ttl * 1000 / 3);
+        renewal.scheduleAtFixedRate(this::renewAll, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // 获取读锁，只等待其他线程持有的写锁
+    public void acquireReadLock(String uuid) {
+        acquire(READ_ACQUIRE, uuid);
+    }
+
+    // 释放读锁
+    public void releaseReadLock(String uuid) {
+        if (run(READ_RELEASE, uuid) == 1) {
+            released(uuid, 1);
+        }
+    }
+
+    // 获取写锁，等待所有节点上的读者和其他写者
+    public void acquireWriteLock(String uuid) {
+        acquire(WRITE_ACQUIRE, uuid);
+    }
+
+    // 释放写锁
+    public void releaseWriteLock(String uuid) {
+        if (run(WRITE_RELEASE, uuid) == 1) {
+            released(uuid, 1);
+        }
+    }
+
+    // 从读锁升级到写锁：释放当前线程在该 key 上的所有读锁，再获取写锁
+    public void upgradeReadToWriteLock(String uuid) throws InterruptedException {
+        long reads = run(UPGRADE, uuid);
+        if (reads <= 0) {
+            throw new IllegalStateException("Attempt to upgrade lock without holding the read lock");
+        }
+        released(uuid, (int) reads);
+        acquireWriteLock(uuid);
+    }
+
+    // 停止续期，已持有的锁在 ttl 之后过期
+    public void close() {
+        renewal.shutdownNow();
+    }
+
+    private void acquire(RedisScript<Long> script, String uuid) {
+        boolean interrupted = false;
+        int attempts = 0;
+        while (run(script, uuid) != 1) {
+            // 带随机抖动的指数退避，避免大量等待者同时重试
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(attempts++, 6));
+            try {
+                Thread.sleep(backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        heldKeys.merge(uuid, 1, Integer::sum);
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void released(String uuid, int count) {
+        heldKeys.computeIfPresent(uuid, (key, held) -> held <= count ? null : held - count);
+    }
+
+    private long run(RedisScript<Long> script, String uuid) {
+        Long result = template.execute(script, List.of(uuid), ttlMillis, nodeId, holder());
+        return result == null ? 0 : result;
+    }
+
+    // 续期本节点持有的所有 key，每个哈希槽一次脚本调用（单机时只有一次）
+    private void renewAll() {
+        Map<String, Integer> snapshot = new HashMap<>(heldKeys);
+        for (List<String> keys : bySlot(snapshot.keySet(), cluster)) {
+            renew(keys, snapshot);
+        }
+    }
+
+    // 按哈希槽分组，非集群模式下所有 key 一组
+    static Collection<List<String>> bySlot(Collection<String> keys, boolean cluster) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+        if (!cluster) {
+            return List.of(new ArrayList<>(keys));
+        }
+        Map<Integer, List<String>> slots = new HashMap<>();
+        for (String key : keys) {
+            slots.computeIfAbsent(ClusterSlotHashUtil.calculateSlot(key), slot -> new ArrayList<>()).add(key);
+        }
+        return slots.values();
+    }
+
+    // 一次脚本调用续期同一个槽内的 key，失败的 key 不再续期
+    private void renew(List<String> keys, Map<String, Integer> snapshot) {
+        try {
+            List<Long> renewed = template.execute(RENEW, keys, ttlMillis, nodeId, "");
+            for (int i = 0; i < keys.size(); i++) {
+                if (renewed == null || !Long.valueOf(1).equals(renewed.get(i))) {
+                    // 持有已过期或被其他节点清除，不再续期；期间又有新的持有时计数会不同，保留
+                    LOGGER.warning("读写锁续期失败: " + keys.get(i));
+                    heldKeys.remove(keys.get(i), snapshot.get(keys.get(i)));
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "读写锁续期失败", e);
+        }
+    }
+
+    // 持有者标识：节点 + 线程
+    private String holder() {
+        return nodeId + ":" + Thread.currentThread().getId();
+    }
+}
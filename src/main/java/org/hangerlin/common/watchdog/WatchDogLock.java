@@ -1,82 +1,319 @@
 package org.hangerlin.common.watchdog;
 
-import java.util.concurrent.*;
+import org.hangerlin.common.metrics.LockMetrics;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
 
+/**
+ * 模拟 Redisson 看门狗的锁：lock 拿到锁后注册到共享的 WatchDogService，每三分之一租约时间续期一次，unlock 时注销。
+ * 锁对象本身不创建线程，锁再多也只有看门狗的一个线程。
+ * 抢不到锁的线程进入等待队列挂起，不占用 CPU；unlock 时直接把锁交给队首的等待者并唤醒它，
+ * 等待者醒来时已经持有锁，不需要再和其他线程竞争。锁空闲时新来的线程可以直接拿锁（非公平）。
+ * 可重入，重入次数只由持有者访问。
+ */
 public class WatchDogLock implements Lock {
+    private static final Logger LOGGER = Logger.getLogger(WatchDogLock.class.getName());
+
+    // 等待者状态
+    private static final int WAITING = 0;
+    private static final int GRANTED = 1; // 锁已交给该等待者
+    private static final int CANCELLED = 2; // 等待超时或被中断
+
+    private static final VarHandle STATUS;
+
+    static {
+        try {
+            STATUS = MethodHandles.lookup().findVarHandle(Waiter.class, "status", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private final AtomicBoolean locked = new AtomicBoolean(false);
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-    private ScheduledFuture<?> watchDogTask;
-    private final long defaultLeaseTime = 30000; // 默认租约时间为30秒
-    private long leaseTime = -1; // 租约时间，-1代表未设置，将启动watchDog
-    private long expirationTime; // 锁的过期时间
+    private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<>(); // 挂起等待的线程
+    private final AtomicInteger queued = new AtomicInteger(); // 排队等待的线程数，只在记录指标时统计
+    private final WatchDogService watchDog; // 共享的看门狗
+    private volatile WatchDogService.Lease watchDogLease; // 在看门狗中的租约
+    private final long defaultLeaseTime; // 默认租约时间，默认为30秒
+    private volatile long expirationTime; // 锁的过期时间
+    // 持有锁的线程。与 FairLock 一样不需要 volatile：线程只会在这里看到自己写入的值，
+    // 其他线程读到旧值也不会误认为自己持有锁
+    private Thread owner;
+    private int holds; // 重入次数，只由持有者访问
+    private final LockMetrics metrics;
+    private long acquiredAt; // 拿到锁的时间（System.nanoTime），只在记录指标时写入
+    private long nextRenewalAt; // 下一次续期的计划时间（System.nanoTime），用于计算续期延迟
+
+    public WatchDogLock() {
+        this(LockMetrics.NOOP);
+    }
+
+    public WatchDogLock(LockMetrics metrics) {
+        this(30000, WatchDogService.shared(), metrics);
+    }
 
+    /**
+     * @param defaultLeaseTime 租约时间（毫秒），每三分之一租约时间续期一次
+     * @param watchDog 负责续期的看门狗
+     */
+    public WatchDogLock(long defaultLeaseTime, WatchDogService watchDog, LockMetrics metrics) {
+        if (defaultLeaseTime <= 0) {
+            throw new IllegalArgumentException("defaultLeaseTime must be positive");
+        }
+        this.defaultLeaseTime = defaultLeaseTime;
+        this.watchDog = watchDog;
+        this.metrics = metrics;
+    }
+
+    // 获取锁，拿不到时挂起等待；没有指定租约时间，拿到后启动watchDog
     @Override
     public void lock() {
-        if (tryLock()) {
-            if (leaseTime == -1) { // 没有设置过期时间，启动watchDog
-                startWatchDog();
-            }
+        if (reenter()) {
+            return;
+        }
+        acquire(false, false, 0L);
+        startWatchDog();
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (reenter()) {
+            return;
         }
+        if (!acquire(true, false, 0L)) {
+            Thread.interrupted();
+            throw new InterruptedException();
+        }
+        startWatchDog();
     }
 
-    // 尝试获取锁，如果获取成功返回true
+    // 尝试获取锁，如果获取成功返回true；只尝试一次，不启动watchDog
+    @Override
     public boolean tryLock() {
-        boolean acquired = locked.compareAndSet(false, true);
-        if (acquired) {
-            expirationTime = System.currentTimeMillis() + defaultLeaseTime; // 设置锁的过期时间
+        if (reenter()) {
+            return true;
+        }
+        if (locked.compareAndSet(false, true)) {
+            granted(0L);
+            return true;
+        }
+        metrics.onContended();
+        return false;
+    }
+
+    // 最多等待 time，拿到锁后启动watchDog
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (reenter()) {
+            return true;
+        }
+        if (acquire(true, true, unit.toNanos(time))) {
+            startWatchDog();
+            return true;
+        }
+        // 被中断时抛出异常，否则是超时
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
         }
-        return acquired;
+        return false;
     }
 
-    // watchDog机制，定期检查并续期锁
+    @Override
+    public void unlock() {
+        if (owner != Thread.currentThread()) {
+            throw new IllegalMonitorStateException("Calling thread has not locked this lock");
+        }
+        if (--holds > 0) {
+            return;
+        }
+        if (metrics != LockMetrics.NOOP) {
+            metrics.onRelease(System.nanoTime() - acquiredAt);
+        }
+        // 先注销租约再释放锁，下一个持有者注册的租约不会被这里注销
+        WatchDogService.Lease lease = watchDogLease;
+        if (lease != null) {
+            watchDogLease = null;
+            lease.cancel();
+        }
+        owner = null;
+        release();
+    }
+
+    private boolean reenter() {
+        if (owner == Thread.currentThread()) {
+            holds++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 拿锁，失败后入队挂起，直到被 unlock 直接交到锁，或者在锁空闲时自己拿到。
+     * @return 拿到锁返回 true；超时或（interruptible 时）被中断返回 false，被中断时中断标记保持设置
+     */
+    private boolean acquire(boolean interruptible, boolean timed, long nanos) {
+        if (locked.compareAndSet(false, true)) {
+            granted(0L);
+            return true;
+        }
+        Thread current = Thread.currentThread();
+        long start = System.nanoTime();
+        long deadline = start + nanos;
+        metrics.onContended();
+        if (metrics != LockMetrics.NOOP) {
+            metrics.onQueueDepth(queued.incrementAndGet());
+        }
+        Waiter node = new Waiter(current);
+        waiters.add(node);
+        boolean interrupted = false;
+        try {
+            for (;;) {
+                if (node.status == GRANTED) {
+                    granted(start);
+                    return true;
+                }
+                // 入队之后再检查一次锁：入队前刚释放、还没看到这个等待者的锁由自己拿
+                if (!locked.get() && locked.compareAndSet(false, true)) {
+                    // 锁空闲时不会有人把锁交给这个节点，取消一定成功
+                    STATUS.compareAndSet(node, WAITING, CANCELLED);
+                    waiters.remove(node);
+                    granted(start);
+                    return true;
+                }
+                if (timed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0L) {
+                        if (cancel(node)) {
+                            metrics.onAcquireFailed(System.nanoTime() - start);
+                            return false;
+                        }
+                        continue; // 取消失败说明锁刚交了过来
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                } else {
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    interrupted = true;
+                    if (interruptible && cancel(node)) {
+                        metrics.onAcquireFailed(System.nanoTime() - start);
+                        return false;
+                    }
+                }
+            }
+        } finally {
+            if (metrics != LockMetrics.NOOP) {
+                queued.decrementAndGet();
+            }
+            // 不可中断的等待期间被中断过，或者取消失败时照常持有锁，都要恢复中断标记
+            if (interrupted) {
+                current.interrupt();
+            }
+        }
+    }
+
+    // 放弃等待，离开队列；返回 false 表示锁已经交了过来
+    private boolean cancel(Waiter node) {
+        if (!STATUS.compareAndSet(node, WAITING, CANCELLED)) {
+            return false;
+        }
+        waiters.remove(node);
+        return true;
+    }
+
+    // 把锁直接交给队首的等待者，没有等待者时才真正释放
+    private void release() {
+        for (;;) {
+            Waiter next;
+            while ((next = waiters.poll()) != null) {
+                if (STATUS.compareAndSet(next, WAITING, GRANTED)) {
+                    LockSupport.unpark(next.thread);
+                    return;
+                }
+            }
+            locked.set(false);
+            // 释放之后刚入队的等待者可能已经看过锁（还没释放）并准备挂起，重新拿回锁交给它
+            if (waiters.isEmpty() || !locked.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    // 拿到锁之后由新持有者调用，start 为开始等待的时间（没有等待时为 0）
+    private void granted(long start) {
+        owner = Thread.currentThread();
+        holds = 1;
+        expirationTime = System.currentTimeMillis() + defaultLeaseTime; // 设置锁的过期时间
+        if (metrics != LockMetrics.NOOP) {
+            acquiredAt = System.nanoTime();
+            metrics.onAcquire(start == 0L ? 0L : acquiredAt - start);
+        }
+    }
+
+    // watchDog机制，注册到共享看门狗，定期续期锁
     private void startWatchDog() {
-        leaseTime = defaultLeaseTime; // 设置默认租约时间
-        watchDogTask = scheduler.scheduleAtFixedRate(this::renewLock, leaseTime / 3, leaseTime / 3, TimeUnit.MILLISECONDS);
+        long period = defaultLeaseTime / 3;
+        nextRenewalAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(period);
+        watchDogLease = watchDog.register(this, period);
     }
 
-    // 模拟Lua脚本续期锁
-    private void renewLock() {
+    /**
+     * 模拟Lua脚本续期锁，由看门狗在续期轮次中调用。
+     * @return 锁仍被持有、需要继续续期时返回 true
+     */
+    boolean renew() {
         // 在这里使用synchronized代码块模拟Lua脚本的原子操作
         synchronized (this) {
             if (locked.get() && System.currentTimeMillis() < expirationTime) {
                 expirationTime = System.currentTimeMillis() + defaultLeaseTime; // 更新锁的过期时间
-                System.out.println("Lock lease renewed for another " + (leaseTime / 1000) + " seconds");
+                // 计划时间每次比上一次晚一个周期
+                metrics.onRenewal(System.nanoTime() - nextRenewalAt);
+                nextRenewalAt += TimeUnit.MILLISECONDS.toNanos(defaultLeaseTime / 3);
+                LOGGER.fine("续期成功");
                 // 实际上，这里应该是与Redis等分布式存储交互的代码，在这里进行续期操作（本处使用直接叠加的模式来续期）
-            } else {
-                // 如果锁已经被释放或者已经过期，取消watchDog任务
-                if (watchDogTask != null) {
-                    watchDogTask.cancel(true);
-                }
+                return true;
             }
+            if (locked.get()) {
+                metrics.onRenewalFailure(); // 持有期间锁已经过期
+            }
+            // 如果锁已经被释放或者已经过期，看门狗注销租约
+            return false;
         }
     }
 
-    @Override
-    public void unlock() {
-        locked.set(false);
-        // 如果watchDogTask正在运行，需要取消它
-        if (watchDogTask != null && !watchDogTask.isCancelled()) {
-            watchDogTask.cancel(true);
-        }
+    // 锁的过期时间（毫秒时间戳）
+    long expirationTime() {
+        return expirationTime;
     }
 
-    // 实现Lock接口其他必要方法...
+    // 分布式条件变量不在这个锁的范围内
     @Override
-    public void lockInterruptibly() throws InterruptedException {
+    public Condition newCondition() {
         throw new UnsupportedOperationException();
     }
 
-    @Override
-    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
-        throw new UnsupportedOperationException();
-    }
+    // 等待队列中的节点
+    private static final class Waiter {
+        final Thread thread;
+        volatile int status; // 默认为 WAITING
 
-    @Override
-    public Condition newCondition() {
-        throw new UnsupportedOperationException();
+        Waiter(Thread thread) {
+            this.thread = thread;
+        }
     }
 }
-
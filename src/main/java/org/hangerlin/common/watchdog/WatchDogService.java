@@ -0,0 +1,117 @@
+package org.hangerlin.common.watchdog;
+
+import com.example.lock.TimeWheel;
+import com.example.lock.TimerTask;
+import com.example.lock.TimerTaskEntry;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 进程内共享的看门狗：所有 WatchDogLock 的续期都注册到同一个 TimeWheel 上，
+ * 由时间轮的推进线程在到期时依次续期，续期成功后再放回时间轮等待下一个周期。
+ * 线程数与锁的数量无关；unlock 时通过 TimerTaskEntry 句柄 O(1) 注销，注销后不再持有锁的引用。
+ */
+public class WatchDogService {
+    private static final Logger LOGGER = Logger.getLogger(WatchDogService.class.getName());
+
+    private final long tickMillis; // 时间轮最底层的槽位间隔（毫秒）
+    private final TimeWheel wheel; // 续期在它的推进线程上执行
+    private final AtomicInteger activeLeases = new AtomicInteger(0); // 当前注册中的租约数
+
+    public WatchDogService(long tickMillis, int wheelSize) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tickMillis and wheelSize must be positive");
+        }
+        this.tickMillis = tickMillis;
+        this.wheel = new TimeWheel(wheelSize, tickMillis);
+    }
+
+    // 进程内共享的默认看门狗
+    public static WatchDogService shared() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * 注册一把需要定期续期的锁，第一次续期在一个周期之后。
+     * @param periodMillis 续期周期（毫秒），不足一个槽位间隔时按一个槽位间隔
+     * @return 租约句柄，unlock 时通过它 O(1) 注销
+     */
+    Lease register(WatchDogLock lock, long periodMillis) {
+        Lease lease = new Lease(this, lock, Math.max(periodMillis, tickMillis));
+        activeLeases.incrementAndGet();
+        lease.schedule();
+        return lease;
+    }
+
+    // 当前注册中的租约数
+    public int activeLeases() {
+        return activeLeases.get();
+    }
+
+    // 停止看门狗，已注册的租约不再续期
+    public void shutdown() {
+        wheel.stop();
+    }
+
+    private static class Holder {
+        private static final WatchDogService INSTANCE = new WatchDogService(100, 512);
+    }
+
+    // 租约：每个周期在时间轮上是一个任务，entry 为当前周期的句柄
+    static class Lease extends TimerTask {
+        private final WatchDogService service;
+        private final WatchDogLock lock;
+        private final long periodMillis;
+        private boolean cancelled; // 以下两个字段在 synchronized(this) 下访问
+        private TimerTaskEntry entry;
+
+        private Lease(WatchDogService service, WatchDogLock lock, long periodMillis) {
+            this.service = service;
+            this.lock = lock;
+            this.periodMillis = periodMillis;
+        }
+
+        // 放回时间轮，一个周期后再次续期
+        private synchronized void schedule() {
+            if (!cancelled) {
+                entry = service.wheel.addTask(this, periodMillis);
+            }
+        }
+
+        // 到期：续期成功则等待下一个周期，锁已释放或过期则注销
+        @Override
+        public void onTimeout() {
+            boolean renewed;
+            try {
+                renewed = lock.renew();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "续期失败", e);
+                renewed = false;
+            }
+            if (renewed) {
+                schedule();
+            } else {
+                cancel();
+            }
+        }
+
+        // 注销租约，当前周期的任务直接从时间轮槽位中摘除
+        void cancel() {
+            TimerTaskEntry current;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                current = entry;
+                entry = null;
+            }
+            if (current != null) {
+                current.cancel();
+            }
+            service.activeLeases.decrementAndGet();
+        }
+    }
+}
@@ -1,27 +1,293 @@
 package org.hangerlin.common.watcher;
 
-public class HangerWatcher {
-    private final Object monitor = new Object();
-    private boolean isLocked = true;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 按 key 分组的解锁等待表。
+ * 每个 key 有自己的等待队列，解锁事件只唤醒该 key 的队首等待者，不会惊动其他 key 或同一 key 的其他等待者。
+ * 解锁事件来自 UnlockBroker，可以是本进程（LocalUnlockBroker）也可以是其他节点（RedisUnlockBroker）。
+ * 只有存在等待者的 key 才会占用内存，也只有这些 key 在 broker 上有订阅：第一个等待者到来时订阅，最后一个离开时取消。
+ * 没有状态的 key 视为已锁定，等待者会一直等到下一次解锁事件。
+ */
+public class HangerWatcher implements UnlockListener {
+    // 无参方法使用的默认 key，保持原来单监视器的用法
+    private static final String DEFAULT_KEY = "default";
+
+    private final ConcurrentHashMap<String, KeyState> keys = new ConcurrentHashMap<>();
+    private final UnlockBroker broker;
+
+    public HangerWatcher() {
+        this(new LocalUnlockBroker());
+    }
+
+    public HangerWatcher(UnlockBroker broker) {
+        this.broker = broker;
+    }
 
     public void process() {
-        synchronized(monitor) {
-            isLocked = false;
-            monitor.notifyAll(); // 当检测到锁释放时，通知所有等待的线程
-        }
+        process(DEFAULT_KEY);
     }
 
     public void waitForUnlock() throws InterruptedException {
-        synchronized(monitor) {
-            while (isLocked) {
-                monitor.wait(); // 等待锁释放
+        waitForUnlock(DEFAULT_KEY);
+    }
+
+    public void lock() {
+        lock(DEFAULT_KEY);
+    }
+
+    // 释放 key：通过 broker 发布解锁事件，本地和其他节点上等待该 key 的线程都会收到
+    public void unlock(String key) {
+        broker.publish(key);
+    }
+
+    @Override
+    public void onUnlock(String key) {
+        process(key);
+    }
+
+    // 处理 key 的解锁事件：只唤醒队首的等待者，被唤醒者接手后 key 重新视为锁定
+    public void process(String key) {
+        KeyState state = keys.get(key);
+        if (state == null) {
+            return; // 没有人在等待这个 key
+        }
+        synchronized (state) {
+            if (state.retired) {
+                return;
             }
+            state.locked = false;
         }
+        wakeHead(state);
     }
 
-    public void lock() {
-        synchronized(monitor) {
-            isLocked = true;
+    // 标记 key 已被锁定，丢弃尚未投递的解锁事件
+    public void lock(String key) {
+        KeyState state = keys.get(key);
+        if (state != null) {
+            synchronized (state) {
+                state.locked = true;
+            }
+        }
+    }
+
+    public void waitForUnlock(String key) throws InterruptedException {
+        await(key, -1);
+    }
+
+    /**
+     * 等待 key 被解锁，最多等待 timeout。
+     * @return 收到解锁事件返回 true，超时返回 false
+     */
+    public boolean waitForUnlock(String key, long timeout, TimeUnit unit) throws InterruptedException {
+        return await(key, Math.max(0, unit.toNanos(timeout)));
+    }
+
+    /**
+     * 注册一次性的回调，在 key 的下一次解锁事件轮到它时调用（在发布解锁事件的线程上执行，回调不能阻塞）。
+     * 回调返回 false 表示该等待者已经失效（例如已经放弃抢锁），唤醒会继续传给下一个等待者。
+     */
+    public void awaitUnlock(String key, BooleanSupplier callback) {
+        CallbackWaiter waiter = new CallbackWaiter(callback);
+        if (!enqueue(key, waiter)) {
+            waiter.signal(); // key 当前已经是未锁定状态
+        }
+    }
+
+    // 当前有等待者的 key 的数量
+    public int watchedKeys() {
+        return keys.size();
+    }
+
+    // nanosTimeout < 0 表示不限时
+    private boolean await(String key, long nanosTimeout) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        ThreadWaiter waiter = new ThreadWaiter(Thread.currentThread());
+        if (!enqueue(key, waiter)) {
+            return true;
+        }
+        long deadline = System.nanoTime() + nanosTimeout;
+        while (waiter.status.get() == Waiter.WAITING) {
+            if (nanosTimeout < 0) {
+                LockSupport.park(this);
+            } else {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            if (Thread.interrupted()) {
+                if (cancel(waiter)) {
+                    throw new InterruptedException();
+                }
+                // 中断和唤醒同时发生，以唤醒为准，保留中断状态
+                Thread.currentThread().interrupt();
+                return true;
+            }
+        }
+        return !cancel(waiter);
+    }
+
+    // 加入等待队列；key 当前未锁定时不入队并返回 false
+    private boolean enqueue(String key, Waiter waiter) {
+        for (;;) {
+            KeyState state = keys.get(key);
+            if (state == null && (state = createState(key)) == null) {
+                continue;
+            }
+            synchronized (state) {
+                if (state.retired) {
+                    continue; // 状态刚被移除，重新创建
+                }
+                if (!state.locked) {
+                    return false;
+                }
+                waiter.state = state;
+                state.waiters.add(waiter);
+                return true;
+            }
+        }
+    }
+
+    // 为 key 创建状态并在 broker 上订阅它，订阅生效后才返回；订阅期间状态已被移除时返回 null
+    private KeyState createState(String key) {
+        KeyState created = new KeyState(key);
+        KeyState existing = keys.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+        broker.subscribe(key, this);
+        synchronized (created) {
+            if (!created.retired) {
+                created.subscribed = true;
+                return created;
+            }
+        }
+        broker.unsubscribe(key, this);
+        return null;
+    }
+
+    // 超时或中断时取消等待；返回 false 说明已经被唤醒
+    private boolean cancel(Waiter waiter) {
+        if (!waiter.status.compareAndSet(Waiter.WAITING, Waiter.CANCELLED)) {
+            return false;
+        }
+        KeyState state = waiter.state;
+        boolean unsubscribe;
+        synchronized (state) {
+            state.waiters.remove(waiter);
+            unsubscribe = retireIfIdle(state);
+        }
+        if (unsubscribe) {
+            broker.unsubscribe(state.key, this);
+        }
+        return true;
+    }
+
+    // 依次取出队首，直到有一个等待者接受这次唤醒；一次解锁只交给一个等待者
+    private void wakeHead(KeyState state) {
+        boolean unsubscribe = false;
+        try {
+            for (;;) {
+                Waiter head;
+                synchronized (state) {
+                    if (state.retired || state.locked) {
+                        return; // 在此期间又被锁定，本次唤醒作废
+                    }
+                    head = state.waiters.poll();
+                    state.locked = true;
+                    unsubscribe |= retireIfIdle(state);
+                }
+                if (head == null || head.signal()) {
+                    return;
+                }
+                synchronized (state) {
+                    if (state.retired) {
+                        return;
+                    }
+                    state.locked = false; // 队首已失效，唤醒传给下一个
+                }
+            }
+        } finally {
+            if (unsubscribe) {
+                broker.unsubscribe(state.key, this);
+            }
+        }
+    }
+
+    /**
+     * 没有等待者的 key 不再保留状态，调用方需持有 state 的锁。
+     * @return 状态已经订阅过 broker，调用方需要在锁外取消订阅
+     */
+    private boolean retireIfIdle(KeyState state) {
+        if (state.waiters.isEmpty() && !state.retired) {
+            state.retired = true;
+            keys.remove(state.key, state);
+            return state.subscribed;
+        }
+        return false;
+    }
+
+    // 单个 key 的状态：是否锁定以及 FIFO 等待队列，所有字段在 synchronized(state) 下访问
+    private static class KeyState {
+        final String key;
+        final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+        boolean locked = true;
+        boolean retired;
+        boolean subscribed; // 已在 broker 上订阅，移除状态的一方负责取消订阅
+
+        KeyState(String key) {
+            this.key = key;
+        }
+    }
+
+    private abstract static class Waiter {
+        static final int WAITING = 0;
+        static final int SIGNALLED = 1;
+        static final int CANCELLED = 2;
+
+        final AtomicInteger status = new AtomicInteger(WAITING);
+        KeyState state;
+
+        // 投递唤醒，返回 false 表示该等待者已失效
+        abstract boolean signal();
+    }
+
+    private static class ThreadWaiter extends Waiter {
+        private final Thread thread;
+
+        ThreadWaiter(Thread thread) {
+            this.thread = thread;
+        }
+
+        @Override
+        boolean signal() {
+            if (!status.compareAndSet(WAITING, SIGNALLED)) {
+                return false;
+            }
+            LockSupport.unpark(thread);
+            return true;
+        }
+    }
+
+    private static class CallbackWaiter extends Waiter {
+        private final BooleanSupplier callback;
+
+        CallbackWaiter(BooleanSupplier callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        boolean signal() {
+            return status.compareAndSet(WAITING, SIGNALLED) && callback.getAsBoolean();
         }
     }
 }
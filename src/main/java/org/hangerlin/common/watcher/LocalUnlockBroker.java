@@ -0,0 +1,29 @@
+package org.hangerlin.common.watcher;
+
+/**
+ * 进程内的 UnlockBroker，在发布线程上同步通知订阅了该 key 的监听器。
+ * 单机部署或测试时代替 Redis pub/sub 使用。
+ */
+public class LocalUnlockBroker implements UnlockBroker {
+    private final UnlockListeners listeners = new UnlockListeners();
+
+    @Override
+    public void publish(String key) {
+        listeners.dispatch(key);
+    }
+
+    @Override
+    public void subscribe(String key, UnlockListener listener) {
+        listeners.add(key, listener);
+    }
+
+    @Override
+    public void unsubscribe(String key, UnlockListener listener) {
+        listeners.remove(key, listener);
+    }
+
+    // 当前有监听器的 key 的数量
+    public int subscribedKeys() {
+        return listeners.keys();
+    }
+}
@@ -0,0 +1,78 @@
+package org.hangerlin.common.watcher;
+
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 基于 Redis pub/sub 的 UnlockBroker。
+ * 每个 key 有自己的频道（前缀 + key），节点只订阅本地有等待者的 key 的频道，
+ * 不会收到其他 key 的解锁消息；所有频道共用监听容器的一个订阅连接，不需要轮询。
+ * key 第一次被订阅时有一次 SUBSCRIBE 往返，订阅完成之前发布的解锁消息收不到。
+ */
+public class RedisUnlockBroker implements UnlockBroker, AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(RedisUnlockBroker.class.getName());
+
+    public static final String DEFAULT_CHANNEL_PREFIX = "hanger:unlock:";
+
+    private final StringRedisTemplate template;
+    private final RedisMessageListenerContainer container;
+    private final String channelPrefix;
+    private final UnlockListeners listeners = new UnlockListeners();
+    private final MessageListener messageListener; // 所有频道共用，消息内容是被释放的 key
+
+    public RedisUnlockBroker(RedisConnectionFactory connectionFactory) {
+        this(connectionFactory, DEFAULT_CHANNEL_PREFIX);
+    }
+
+    /**
+     * @param channelPrefix 频道前缀，key 的解锁消息发布到 channelPrefix + key
+     */
+    public RedisUnlockBroker(RedisConnectionFactory connectionFactory, String channelPrefix) {
+        this.template = new StringRedisTemplate(connectionFactory);
+        this.channelPrefix = channelPrefix;
+        this.messageListener = (message, pattern) ->
+                listeners.dispatch(new String(message.getBody(), StandardCharsets.UTF_8));
+        this.container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.afterPropertiesSet();
+        container.start();
+    }
+
+    @Override
+    public void publish(String key) {
+        template.convertAndSend(channelPrefix + key, key);
+    }
+
+    // key 的第一个监听器订阅它的频道，返回时订阅已经生效
+    @Override
+    public synchronized void subscribe(String key, UnlockListener listener) {
+        if (listeners.add(key, listener)) {
+            container.addMessageListener(messageListener, new ChannelTopic(channelPrefix + key));
+        }
+    }
+
+    // key 的最后一个监听器取消时退订它的频道
+    @Override
+    public synchronized void unsubscribe(String key, UnlockListener listener) {
+        if (listeners.remove(key, listener)) {
+            container.removeMessageListener(messageListener, new ChannelTopic(channelPrefix + key));
+        }
+    }
+
+    @Override
+    public void close() {
+        container.stop();
+        try {
+            container.destroy();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "关闭订阅容器失败", e);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.hangerlin.common.watcher;
+
+/**
+ * 解锁事件的发布/订阅通道，按 key 订阅。
+ * 释放锁的一方发布 key，只有订阅了这个 key 的监听器（本进程或其他节点上的 HangerWatcher）才会收到解锁事件，
+ * 节点不会收到自己没有等待的 key 的事件。
+ */
+public interface UnlockBroker {
+    // 发布 key 的解锁事件
+    void publish(String key);
+
+    // 订阅 key 的解锁事件；同一个监听器订阅几次就需要取消几次
+    void subscribe(String key, UnlockListener listener);
+
+    // 取消一次订阅，key 没有监听器之后不再接收它的事件
+    void unsubscribe(String key, UnlockListener listener);
+}
@@ -0,0 +1,6 @@
+package org.hangerlin.common.watcher;
+
+// 接收解锁事件的监听器
+public interface UnlockListener {
+    void onUnlock(String key);
+}
@@ -0,0 +1,48 @@
+package org.hangerlin.common.watcher;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * UnlockBroker 实现共用的按 key 分组的监听器表。
+ * 同一个监听器可以在一个 key 上出现多次，每次 remove 只移除一个；没有监听器的 key 不占用内存。
+ */
+public class UnlockListeners {
+    private final ConcurrentHashMap<String, List<UnlockListener>> byKey = new ConcurrentHashMap<>();
+
+    // 返回 true 表示这是 key 的第一个监听器，调用方需要开始接收 key 的事件
+    public synchronized boolean add(String key, UnlockListener listener) {
+        List<UnlockListener> listeners = byKey.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>());
+        listeners.add(listener);
+        return listeners.size() == 1;
+    }
+
+    // 返回 true 表示 key 已经没有监听器，调用方可以停止接收 key 的事件
+    public synchronized boolean remove(String key, UnlockListener listener) {
+        List<UnlockListener> listeners = byKey.get(key);
+        if (listeners == null || !listeners.remove(listener)) {
+            return false;
+        }
+        if (listeners.isEmpty()) {
+            byKey.remove(key);
+            return true;
+        }
+        return false;
+    }
+
+    // 在当前线程上通知 key 的所有监听器
+    public void dispatch(String key) {
+        List<UnlockListener> listeners = byKey.get(key);
+        if (listeners != null) {
+            for (UnlockListener listener : listeners) {
+                listener.onUnlock(key);
+            }
+        }
+    }
+
+    // 当前有监听器的 key 的数量
+    public int keys() {
+        return byKey.size();
+    }
+}
@@ -0,0 +1,207 @@
+package org.hangerlin.common.zookeeper;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 基于 ZooKeeper 临时顺序节点的锁：每次加锁在 path 下创建一个 lock- 顺序节点，序号最小的持有锁。
+ * 等待者只监听自己的前一个节点，释放锁只会唤醒紧随其后的一个客户端，而不是所有等待者；
+ * 持有者的会话断开时临时节点被删除，锁自动释放。
+ * 锁属于这个实例而不是某个线程：可以在一个线程上加锁、在另一个线程上释放，因此可以作为 HangerMultiLock 的子锁。
+ * 同一个实例同一时间只有一个持有者，本地的其他线程先在实例内排队，不会都去 ZooKeeper 创建节点。不可重入。
+ */
+public class ZooKeeperLock implements Lock {
+    private static final Logger LOGGER = Logger.getLogger(ZooKeeperLock.class.getName());
+    private static final String NODE_PREFIX = "lock-";
+
+    private final CuratorFramework client;
+    private final String path;
+    private final Semaphore local = new Semaphore(1); // 实例内的排队，保证同一时间只有一个线程持有或争抢 ZooKeeper 上的锁
+    private volatile String ownedNode; // 持有锁时自己的节点路径
+
+    // 使用连接串对应的共享会话
+    public ZooKeeperLock(String connectString, String path) {
+        this(ZooKeeperSession.shared(connectString), path);
+    }
+
+    /**
+     * @param client 已经启动的 Curator 客户端
+     * @param path 锁的路径，所有客户端使用同一个路径争抢同一把锁
+     */
+    public ZooKeeperLock(CuratorFramework client, String path) {
+        this.client = client;
+        this.path = path;
+    }
+
+    @Override
+    public void lock() {
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                lockInterruptibly();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        local.acquire();
+        acquireOrReleaseLocal(-1L);
+    }
+
+    // 只尝试一次：自己的节点不是序号最小的就删掉节点立即返回
+    @Override
+    public boolean tryLock() {
+        if (!local.tryAcquire()) {
+            return false;
+        }
+        try {
+            return acquireOrReleaseLocal(0L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(time);
+        if (!local.tryAcquire(time, unit)) {
+            return false;
+        }
+        return acquireOrReleaseLocal(Math.max(0L, deadline - System.nanoTime()));
+    }
+
+    // 删除自己的节点，唤醒监听它的下一个客户端
+    @Override
+    public void unlock() {
+        String node = ownedNode;
+        if (node == null) {
+            throw new IllegalMonitorStateException("lock " + path + " is not held");
+        }
+        ownedNode = null;
+        try {
+            // guaranteed：删除失败时 Curator 在后台重试，直到删除或会话结束
+            client.delete().guaranteed().forPath(node);
+        } catch (KeeperException.NoNodeException ignored) {
+            // 会话过期时节点已经被删除
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "释放锁失败", e);
+        } finally {
+            local.release();
+        }
+    }
+
+    @Override
+    public Condition newCondition() {
+        throw new UnsupportedOperationException();
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    // 已经拿到实例内的许可，去 ZooKeeper 上加锁；失败时归还许可
+    private boolean acquireOrReleaseLocal(long timeoutNanos) throws InterruptedException {
+        boolean acquired = false;
+        try {
+            acquired = acquire(timeoutNanos);
+            return acquired;
+        } finally {
+            if (!acquired) {
+                local.release();
+            }
+        }
+    }
+
+    /**
+     * 创建自己的顺序节点，排在最前面时持有锁，否则只监听前一个节点，它被删除后重新检查。
+     * @param timeoutNanos 最长等待时间，小于 0 表示一直等待，0 表示只检查一次
+     */
+    private boolean acquire(long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        String node = null;
+        try {
+            node = client.create().creatingParentContainersIfNeeded().withProtection()
+                    .withMode(CreateMode.EPHEMERAL_SEQUENTIAL).forPath(path + "/" + NODE_PREFIX);
+            String name = node.substring(node.lastIndexOf('/') + 1);
+            for (;;) {
+                List<String> children = client.getChildren().forPath(path);
+                children.sort((a, b) -> Long.compare(sequenceOf(a), sequenceOf(b)));
+                int index = children.indexOf(name);
+                if (index < 0) {
+                    // 会话过期导致节点被删除，重新排队
+                    node = client.create().creatingParentContainersIfNeeded().withProtection()
+                            .withMode(CreateMode.EPHEMERAL_SEQUENTIAL).forPath(path + "/" + NODE_PREFIX);
+                    name = node.substring(node.lastIndexOf('/') + 1);
+                    continue;
+                }
+                if (index == 0) {
+                    ownedNode = node;
+                    return true;
+                }
+                if (timeoutNanos == 0L) {
+                    break;
+                }
+                // 只监听前一个节点：释放锁时只有紧随其后的一个客户端被唤醒
+                CountDownLatch deleted = new CountDownLatch(1);
+                Stat stat = client.checkExists().usingWatcher((Watcher) event -> deleted.countDown())
+                        .forPath(path + "/" + children.get(index - 1));
+                if (stat == null) {
+                    continue; // 前一个节点已经不在了，重新检查
+                }
+                if (timeoutNanos < 0L) {
+                    deleted.await();
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0L || !deleted.await(remaining, TimeUnit.NANOSECONDS)) {
+                        break;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            deleteQuietly(node);
+            throw e;
+        } catch (Exception e) {
+            deleteQuietly(node);
+            throw new IllegalStateException("failed to acquire lock " + path, e);
+        }
+        deleteQuietly(node);
+        return false;
+    }
+
+    private void deleteQuietly(String node) {
+        if (node == null) {
+            return;
+        }
+        try {
+            client.delete().guaranteed().forPath(node);
+        } catch (KeeperException.NoNodeException ignored) {
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "删除等待节点失败", e);
+        }
+    }
+
+    // 顺序节点名称末尾的 10 位序号；withProtection 会在名称前加上 GUID，不能直接按名称排序
+    static long sequenceOf(String name) {
+        return Long.parseLong(name.substring(name.length() - 10));
+    }
+}
@@ -0,0 +1,39 @@
+package org.hangerlin.common.zookeeper;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内共享的 ZooKeeper 会话：同一个连接串只创建并启动一个 CuratorFramework，
+ * 所有 ZooKeeperLock 和 ZooKeeperUnlockBroker 共用它的连接和心跳，锁再多也只有一个会话。
+ */
+public final class ZooKeeperSession {
+    private static final ConcurrentHashMap<String, CuratorFramework> SESSIONS = new ConcurrentHashMap<>();
+
+    private ZooKeeperSession() {
+    }
+
+    // 连接串对应的共享会话，第一次使用时创建并启动
+    public static CuratorFramework shared(String connectString) {
+        return SESSIONS.computeIfAbsent(connectString, ZooKeeperSession::start);
+    }
+
+    // 关闭所有共享会话，会话中创建的临时节点随之删除
+    public static void closeAll() {
+        for (String connectString : SESSIONS.keySet()) {
+            CuratorFramework client = SESSIONS.remove(connectString);
+            if (client != null) {
+                client.close();
+            }
+        }
+    }
+
+    private static CuratorFramework start(String connectString) {
+        CuratorFramework client = CuratorFrameworkFactory.newClient(connectString, new ExponentialBackoffRetry(100, 3));
+        client.start();
+        return client;
+    }
+}
@@ -0,0 +1,101 @@
+package org.hangerlin.common.zookeeper;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.CuratorCache;
+import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
+import org.hangerlin.common.watcher.UnlockBroker;
+import org.hangerlin.common.watcher.UnlockListener;
+import org.hangerlin.common.watcher.UnlockListeners;
+
+/**
+ * 基于 ZooKeeper 的 UnlockBroker，key 对应 basePath 下的同名节点，和 ZooKeeperLock 的锁路径一致。
+ * 解锁事件有两个来源：ZooKeeperLock 释放（或持有者会话过期）时删除的锁节点，以及 publish 对 key 节点数据的修改。
+ * 等待者加锁失败、超时或被中断时删除的节点不是解锁，只有删除时同一把锁下没有序号更小的节点（即持有者）才分发。
+ * 整个 basePath 只注册一个持久递归监听（CuratorCache），收到事件后在本地分发给订阅了该 key 的监听器。
+ */
+public class ZooKeeperUnlockBroker implements UnlockBroker, AutoCloseable {
+    private final CuratorFramework client;
+    private final String basePath;
+    private final CuratorCache cache;
+    private final UnlockListeners listeners = new UnlockListeners();
+
+    /**
+     * @param basePath 锁的根路径，ZooKeeperLock 的路径为 basePath/key
+     */
+    public ZooKeeperUnlockBroker(CuratorFramework client, String basePath) {
+        this.client = client;
+        this.basePath = basePath;
+        this.cache = CuratorCache.build(client, basePath);
+        cache.listenable().addListener(CuratorCacheListener.builder()
+                .forDeletes(this::onDeleted)
+                .forChanges((before, after) -> onChanged(after))
+                .build());
+        cache.start();
+    }
+
+    // 修改 key 节点的数据，所有订阅者收到该 key 的解锁事件
+    @Override
+    public void publish(String key) {
+        try {
+            client.create().orSetData().creatingParentContainersIfNeeded().forPath(basePath + "/" + key);
+        } catch (Exception e) {
+            throw new IllegalStateException("failed to publish unlock of " + key, e);
+        }
+    }
+
+    @Override
+    public void subscribe(String key, UnlockListener listener) {
+        listeners.add(key, listener);
+    }
+
+    @Override
+    public void unsubscribe(String key, UnlockListener listener) {
+        listeners.remove(key, listener);
+    }
+
+    // basePath/key/锁节点 被删除：锁被释放或持有者会话过期
+    private void onDeleted(ChildData data) {
+        String key = keyOf(data.getPath(), true);
+        if (key != null && wasHolder(data.getPath())) {
+            listeners.dispatch(key);
+        }
+    }
+
+    // 缓存中（被删除的节点已经不在其中）同一把锁下没有序号更小的兄弟节点，被删除的节点就是持有者
+    private boolean wasHolder(String path) {
+        int slash = path.lastIndexOf('/');
+        String parent = path.substring(0, slash + 1);
+        long sequence = ZooKeeperLock.sequenceOf(path.substring(slash + 1));
+        return cache.stream()
+                .map(ChildData::getPath)
+                .filter(sibling -> sibling.startsWith(parent) && sibling.indexOf('/', parent.length()) < 0)
+                .noneMatch(sibling -> ZooKeeperLock.sequenceOf(sibling.substring(parent.length())) < sequence);
+    }
+
+    // basePath/key 的数据被修改：publish
+    private void onChanged(ChildData data) {
+        String key = keyOf(data.getPath(), false);
+        if (key != null) {
+            listeners.dispatch(key);
+        }
+    }
+
+    // 从节点路径中取出 key；lockNode 表示路径是 key 下的锁节点，否则是 key 节点本身
+    private String keyOf(String path, boolean lockNode) {
+        if (!path.startsWith(basePath + "/")) {
+            return null;
+        }
+        String relative = path.substring(basePath.length() + 1);
+        int slash = relative.indexOf('/');
+        if (lockNode) {
+            return slash > 0 && relative.indexOf('/', slash + 1) < 0 ? relative.substring(0, slash) : null;
+        }
+        return slash < 0 ? relative : null;
+    }
+
+    @Override
+    public void close() {
+        cache.close();
+    }
+}
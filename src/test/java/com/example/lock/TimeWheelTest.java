@@ -4,7 +4,10 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -65,4 +68,168 @@ class TimeWheelTest {
         Thread.sleep(1000); // 等待一段时间
         assertFalse(executed.get()); // 任务不应被执行
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCascadingKeepsAccuracyWithinOneTick() throws InterruptedException {
+        TimeWheel wheel = new TimeWheel(4, 10); // 每层只覆盖 4 个槽位，1 秒的任务要经过 3 层降级
+        try {
+            long[] delays = {15, 45, 130, 470, 1000};
+            ConcurrentHashMap<Long, Long> lateness = new ConcurrentHashMap<>();
+            CountDownLatch latch = new CountDownLatch(delays.length);
+            long start = System.nanoTime();
+            for (long delay : delays) {
+                wheel.addTask(() -> {
+                    lateness.put(delay, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) - delay);
+                    latch.countDown();
+                }, delay);
+            }
+            assertTrue(latch.await(3, TimeUnit.SECONDS));
+            for (long delay : delays) {
+                long late = lateness.get(delay);
+                assertTrue(late >= 0, "Task with delay " + delay + " fired " + (-late) + "ms early");
+                assertTrue(late <= 10 + 40, "Task with delay " + delay + " fired " + late + "ms late"); // 一个槽位 + 调度抖动
+            }
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    void testSingleTickerThreadForAllLevels() throws InterruptedException {
+        int before = Thread.activeCount();
+        TimeWheel wheel = new TimeWheel(4, 10);
+        try {
+            for (int i = 1; i <= 8; i++) {
+                wheel.addTask(() -> { }, 10L << (2 * i)); // 每个任务落在更高的一层
+            }
+            Thread.sleep(50);
+            assertTrue(Thread.activeCount() - before <= 1, "All levels should share one ticker thread");
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    void testCancelRemovesTaskImmediately() throws InterruptedException {
+        AtomicBoolean executed = new AtomicBoolean(false);
+        TimerTaskEntry[] handles = new TimerTaskEntry[10_000];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = timeWheel.addTask(() -> executed.set(true), 200 + i % 5000);
+        }
+        assertEquals(handles.length, timeWheel.size());
+
+        for (TimerTaskEntry handle : handles) {
+            assertTrue(handle.cancel());
+            assertNull(handle.getList(), "Cancelled entry should be unlinked from its slot");
+        }
+        assertEquals(0, timeWheel.size());
+        assertFalse(handles[0].cancel());
+        assertFalse(handles[0].reschedule(100));
+
+        Thread.sleep(400);
+        assertFalse(executed.get());
+    }
+
+    @Test
+    void testRescheduleMovesDeadline() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        TimerTaskEntry handle = timeWheel.addTask(latch::countDown, 200);
+
+        Thread.sleep(100);
+        assertTrue(handle.reschedule(400)); // 续期：从现在起 400ms 后到期
+        assertEquals(1, timeWheel.size());
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 500);
+        assertTrue(handle.isExpired());
+        assertEquals(0, timeWheel.size());
+        assertFalse(handle.reschedule(100));
+    }
+
+    @Test
+    void testSlowTaskDoesNotDelayOtherTasksWithExecutor() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        TimeWheel wheel = new TimeWheel(60, 10, executor, 100);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch fast = new CountDownLatch(1);
+            wheel.addTask(() -> {
+                try {
+                    release.await(); // 一直阻塞的慢任务
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, 20);
+            wheel.addTask(fast::countDown, 50);
+
+            assertTrue(fast.await(500, TimeUnit.MILLISECONDS), "Slow task must not block the ticker");
+            release.countDown();
+
+            TimeWheelMetrics metrics = wheel.getMetrics();
+            assertEquals(2, metrics.getTasksFired());
+            assertTrue(metrics.getTicks() >= 1);
+            assertTrue(metrics.getMaxTickLagMs() < 100);
+        } finally {
+            wheel.stop();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testSubTickTasksAreDispatchedToExecutor() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        TimeWheel wheel = new TimeWheel(60, 10, executor, 100);
+        try {
+            Thread caller = Thread.currentThread();
+            ConcurrentHashMap<String, Thread> ranOn = new ConcurrentHashMap<>();
+            CountDownLatch done = new CountDownLatch(2);
+            wheel.addTask(() -> {
+                ranOn.put("add", Thread.currentThread());
+                done.countDown();
+            }, 0);
+            TimerTaskEntry entry = wheel.addTask(() -> {
+                ranOn.put("reschedule", Thread.currentThread());
+                done.countDown();
+            }, 10_000);
+            assertTrue(entry.reschedule(0));
+
+            assertTrue(done.await(1, TimeUnit.SECONDS));
+            assertNotSame(caller, ranOn.get("add"));
+            assertNotSame(caller, ranOn.get("reschedule"));
+        } finally {
+            wheel.stop();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testBackpressureBoundsPendingTasks() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        TimeWheel wheel = new TimeWheel(60, 10, executor, 2);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(5);
+            for (int i = 0; i < 5; i++) {
+                wheel.addTask(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                }, 20);
+            }
+            Thread.sleep(200);
+            // 执行器中最多积压 2 个任务，推进线程在等待
+            assertEquals(5, done.getCount());
+            assertTrue(wheel.getMetrics().getBackpressureWaits() >= 1);
+
+            release.countDown();
+            assertTrue(done.await(1, TimeUnit.SECONDS));
+        } finally {
+            wheel.stop();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -1,7 +1,15 @@
 package org.hangerlin.common;
 
+import org.hangerlin.common.watcher.HangerWatcher;
 import org.junit.Before;
 import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
@@ -30,8 +38,25 @@ public class DistributedLockTest {
     @Test
     public void testLockRenewal() throws InterruptedException, DistributedLock.LockException {
         when(mockClient.setNxPx("testKey", "testValue", 30)).thenReturn("RESULT_OK");
+        when(mockClient.renew("testKey", "testValue", 30)).thenReturn(true);
         lock.acquireLock();
-        verify(mockClient, timeout(10000).atLeastOnce()).expire("testKey", 30);
+        verify(mockClient, timeout(10000).atLeastOnce()).renew("testKey", "testValue", 30);
+    }
+
+    @Test
+    public void testAcquiringHeldLockKeepsSingleLease() {
+        RenewalEngine engine = new RenewalEngine(10, 512, 1);
+        try {
+            when(mockClient.setNxPx("testKey", "testValue", 30)).thenReturn("RESULT_OK");
+            DistributedLock held = new DistributedLock("testKey", "testValue", 30, mockClient, engine);
+            assertTrue(held.acquireLock());
+            assertTrue(held.acquireLock()); // 已经持有，只刷新过期时间
+            assertEquals(1, engine.activeLeases());
+            held.close();
+            assertEquals(0, engine.activeLeases());
+        } finally {
+            engine.shutdown();
+        }
     }
 
     @Test
@@ -41,4 +66,89 @@ public class DistributedLockTest {
         lock.close();
         assertFalse("Lock should be released", lock.isRunning);
     }
+
+    @Test
+    public void testAcquireAsyncCompletesAfterRelease() throws Exception {
+        InMemoryLockClient client = new InMemoryLockClient();
+        DistributedLock holder = new DistributedLock("asyncKey", "holder", 30, client);
+        DistributedLock waiter = new DistributedLock("asyncKey", "waiter", 30, client);
+        assertTrue(holder.acquireLock());
+
+        CompletableFuture<Void> future = waiter.acquireAsync(5, TimeUnit.SECONDS);
+        Thread.sleep(50);
+        assertFalse("Waiter must not get the lock while it is held", future.isDone());
+
+        holder.close();
+        future.get(5, TimeUnit.SECONDS);
+        assertEquals("waiter", client.owner("asyncKey"));
+        waiter.close();
+    }
+
+    @Test
+    public void testAcquireAsyncCancelledOnTimeout() throws Exception {
+        InMemoryLockClient client = new InMemoryLockClient();
+        DistributedLock holder = new DistributedLock("timeoutKey", "holder", 30, client);
+        DistributedLock waiter = new DistributedLock("timeoutKey", "waiter", 30, client);
+        assertTrue(holder.acquireLock());
+
+        CompletableFuture<Void> future = waiter.acquireAsync(100, TimeUnit.MILLISECONDS);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Acquisition should time out");
+        } catch (CancellationException expected) {
+            assertTrue(future.isCancelled());
+        }
+        assertFalse(waiter.acquireLock(50, TimeUnit.MILLISECONDS));
+        assertEquals("holder", client.owner("timeoutKey"));
+        holder.close();
+    }
+
+    @Test
+    public void testCompletedAcquireAsyncRemovesItsTimeout() throws Exception {
+        RenewalEngine engine = new RenewalEngine(10, 512, 1);
+        try {
+            InMemoryLockClient client = new InMemoryLockClient();
+            DistributedLock holder = new DistributedLock("cancelKey", "holder", 30, client, engine);
+            assertTrue(holder.acquireLock());
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                DistributedLock waiter = new DistributedLock("cancelKey", "waiter-" + i, 30, client, engine);
+                futures.add(waiter.acquireAsync(60, TimeUnit.SECONDS));
+            }
+            assertTrue(engine.pendingTasks() > 100); // 每个等待者一个超时任务
+
+            // 取消之后超时任务立即从时间轮中摘除，不用等到 60 秒后到期；剩下的重试到期后不再放回
+            for (CompletableFuture<Void> future : futures) {
+                future.cancel(false);
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (engine.pendingTasks() > 1 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(engine.pendingTasks() <= 1); // 只剩持有者的租约（续期期间暂时不在时间轮中）
+            holder.close();
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testAcquireAsyncWakesOnUnlockNotification() throws Exception {
+        InMemoryLockClient client = new InMemoryLockClient();
+        RenewalEngine engine = RenewalEngine.shared();
+        HangerWatcher watcher = new HangerWatcher();
+        DistributedLock holder = new DistributedLock("notifyKey", "holder", 30, client, engine, watcher);
+        DistributedLock waiter = new DistributedLock("notifyKey", "waiter", 30, client, engine, watcher);
+        assertTrue(holder.acquireLock());
+
+        CompletableFuture<Void> future = waiter.acquireAsync(5, TimeUnit.SECONDS);
+        Thread.sleep(100); // 兜底轮询间隔为 500~1000ms
+        assertEquals(1, watcher.watchedKeys());
+
+        holder.close();
+        // 由解锁通知直接触发重试，不需要等到下一次退避
+        future.get(80, TimeUnit.MILLISECONDS);
+        assertEquals("waiter", client.owner("notifyKey"));
+        waiter.close();
+    }
 }
@@ -0,0 +1,38 @@
+package org.hangerlin.common;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的 LockClient，用 ConcurrentHashMap 代替 Redis，供测试和基准测试使用。不处理过期。
+ */
+class InMemoryLockClient extends DistributedLock.LockClient {
+    private final ConcurrentMap<String, String> owners = new ConcurrentHashMap<>();
+    private final AtomicLong acquireCalls = new AtomicLong(); // 抢锁调用次数，相当于 Redis 往返次数
+
+    @Override
+    public String setNxPx(String key, String value, long ttl) {
+        acquireCalls.incrementAndGet();
+        String owner = owners.putIfAbsent(key, value);
+        return owner == null || owner.equals(value) ? RESULT_OK : RESULT_FAIL;
+    }
+
+    @Override
+    public boolean renew(String key, String value, long ttl) {
+        return value.equals(owners.get(key));
+    }
+
+    @Override
+    public boolean release(String key, String value) {
+        return owners.remove(key, value);
+    }
+
+    long acquireCalls() {
+        return acquireCalls.get();
+    }
+
+    String owner(String key) {
+        return owners.get(key);
+    }
+}
@@ -0,0 +1,48 @@
+package org.hangerlin.common;
+
+import org.hangerlin.common.metrics.LockMetrics;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MultiKeyLockTest {
+
+    @Test
+    public void testShardsAreLockedInOrderAndRolledBackOnConflict() {
+        List<List<String>> calls = new ArrayList<>();
+        // 按首字母分成两个分片：a-m 为 1，n-z 为 0
+        InMemoryLockClient client = new InMemoryLockClient() {
+            @Override
+            public int shardOf(String key) {
+                return key.charAt(0) <= 'm' ? 1 : 0;
+            }
+
+            @Override
+            public boolean setNxPxMulti(List<String> keys, String value, long ttl) {
+                calls.add(keys);
+                return super.setNxPxMulti(keys, value, ttl);
+            }
+        };
+        MultiKeyLock first = new MultiKeyLock(List.of("zeta", "alpha", "omega", "beta", "alpha"), "tx-1", 30,
+                client, RenewalEngine.shared(), LockMetrics.NOOP);
+        assertTrue(first.acquireLock());
+        // 分片按编号、分片内的 key 按字典序，每个分片一次调用
+        assertEquals(List.of(List.of("omega", "zeta"), List.of("alpha", "beta")), calls);
+
+        // 第二个分片冲突时，已经锁住的第一个分片被释放
+        MultiKeyLock second = new MultiKeyLock(List.of("beta", "yankee"), "tx-2", 30,
+                client, RenewalEngine.shared(), LockMetrics.NOOP);
+        assertFalse(second.acquireLock());
+        assertNull(client.owner("yankee"));
+
+        first.close();
+        assertNull(client.owner("alpha"));
+        assertNull(client.owner("zeta"));
+        assertTrue(second.acquireLock());
+        assertEquals("tx-2", client.owner("yankee"));
+        second.close();
+    }
+}
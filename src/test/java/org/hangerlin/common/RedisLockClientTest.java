@@ -0,0 +1,226 @@
+package org.hangerlin.common;
+
+import org.hangerlin.common.metrics.LockMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RedisLockClientTest {
+    private RespStandIn redis;
+    private LettuceConnectionFactory connectionFactory;
+    private RedisLockClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        redis = new RespStandIn();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", redis.port()));
+        connectionFactory.setPipeliningFlushPolicy(LettuceConnection.PipeliningFlushPolicy.flushOnClose());
+        connectionFactory.afterPropertiesSet();
+        client = new RedisLockClient(connectionFactory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connectionFactory.destroy();
+        redis.close();
+    }
+
+    @Test
+    public void testSingleKeyOperations() {
+        assertEquals(DistributedLock.LockClient.RESULT_OK, client.setNxPx("lock", "owner-1", 30));
+        assertEquals(DistributedLock.LockClient.RESULT_FAIL, client.setNxPx("lock", "owner-2", 30));
+
+        client.expire("lock", 60);
+        assertTrue(redis.pttl("lock") > 30_000);
+
+        assertFalse(client.release("lock", "owner-2"));
+        assertTrue(client.release("lock", "owner-1"));
+        assertNull(redis.get("lock"));
+    }
+
+    @Test
+    public void testEachOperationIsOneScriptCall() {
+        loadScripts();
+        redis.resetCounters();
+
+        assertEquals(DistributedLock.LockClient.RESULT_OK, client.setNxPx("lock", "owner-1", 30));
+        assertTrue(client.renew("lock", "owner-1", 30));
+        assertTrue(client.release("lock", "owner-1"));
+
+        // 脚本只加载一次，之后都是 EVALSHA，不再有 GET + PEXPIRE / GET + DEL 的多次往返
+        assertEquals(3, redis.count("EVALSHA"));
+        assertEquals(0, redis.count("SCRIPT"));
+        assertEquals(0, redis.count("GET"));
+        assertEquals(3, redis.roundTrips());
+    }
+
+    @Test
+    public void testReentrantAcquireAndOwnerCheckedRenew() {
+        assertEquals(DistributedLock.LockClient.RESULT_OK, client.setNxPx("lock", "owner-1", 1));
+        // 同一个 value 再次抢锁成功并刷新过期时间
+        assertEquals(DistributedLock.LockClient.RESULT_OK, client.setNxPx("lock", "owner-1", 30));
+        assertTrue(redis.pttl("lock") > 1_000);
+
+        assertFalse(client.renew("lock", "owner-2", 60));
+        assertTrue(redis.pttl("lock") <= 30_000);
+        assertTrue(client.renew("lock", "owner-1", 60));
+        assertTrue(redis.pttl("lock") > 30_000);
+    }
+
+    @Test
+    public void testReloadsScriptAfterNoScript() {
+        loadScripts();
+        assertEquals(DistributedLock.LockClient.RESULT_OK, client.setNxPx("lock", "owner-1", 30));
+        redis.flushScripts();
+        redis.resetCounters();
+
+        assertTrue(client.release("lock", "owner-1"));
+        assertEquals(2, redis.count("EVALSHA"));
+        assertEquals(1, redis.count("SCRIPT"));
+
+        Map<String, String> entries = entries(10);
+        client.setNxPxAll(entries, 30);
+        redis.flushScripts();
+        Map<String, Boolean> renewed = client.renewAll(entries, 30);
+        assertEquals(10, renewed.size());
+        assertTrue(renewed.values().stream().allMatch(Boolean::booleanValue));
+    }
+
+    @Test
+    public void testBatchAcquireIsPipelined() {
+        redis.set("key-3", "someone-else");
+        Map<String, String> entries = entries(100);
+
+        redis.resetCounters();
+        Map<String, String> results = client.setNxPxAll(entries, 30);
+
+        assertEquals(100, results.size());
+        assertEquals(DistributedLock.LockClient.RESULT_FAIL, results.get("key-3"));
+        assertEquals(DistributedLock.LockClient.RESULT_OK, results.get("key-4"));
+        assertEquals("value-4", redis.get("key-4"));
+        assertEquals(100, redis.count("EVALSHA"));
+        assertTrue("Batch acquire should not pay one round trip per key", redis.roundTrips() < 10);
+    }
+
+    @Test
+    public void testBatchRenewIsPipelined() {
+        Map<String, String> entries = entries(100);
+        client.setNxPxAll(entries, 1);
+        redis.set("key-0", "someone-else");
+
+        redis.resetCounters();
+        Map<String, Boolean> renewed = client.renewAll(entries, 60);
+
+        assertEquals(100, redis.count("EVALSHA"));
+        assertTrue("Batch renew should not pay one round trip per key", redis.roundTrips() < 10);
+        assertFalse(renewed.get("key-0"));
+        for (int i = 1; i < 100; i++) {
+            assertTrue(renewed.get("key-" + i));
+            assertTrue(redis.pttl("key-" + i) > 30_000);
+        }
+    }
+
+    @Test
+    public void testBatchReleaseOnlyDeletesOwnedKeys() {
+        Map<String, String> entries = entries(10);
+        client.setNxPxAll(entries, 30);
+        redis.set("key-0", "someone-else");
+
+        Map<String, Boolean> results = client.releaseAll(entries);
+
+        assertFalse(results.get("key-0"));
+        assertEquals("someone-else", redis.get("key-0"));
+        for (int i = 1; i < 10; i++) {
+            assertTrue(results.get("key-" + i));
+            assertNull(redis.get("key-" + i));
+        }
+    }
+
+    @Test
+    public void testRenewalEngineBatchesRenewalsThroughClient() throws InterruptedException {
+        RenewalEngine engine = new RenewalEngine(50, 64, 1);
+        try {
+            List<DistributedLock> locks = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                DistributedLock lock = new DistributedLock("renew-" + i, "value", 1, client, engine);
+                assertTrue(lock.acquireLock());
+                locks.add(lock);
+            }
+            redis.resetCounters();
+            Thread.sleep(500);
+
+            // 同一个 tick 内到期的续期合并成管道批量发送
+            assertTrue(redis.count("EVALSHA") >= 50);
+            assertTrue(redis.roundTrips() < redis.count("EVALSHA"));
+
+            for (DistributedLock lock : locks) {
+                lock.close();
+            }
+            assertNull(redis.get("renew-0"));
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testMultiKeyLockIsOneAtomicScriptCall() throws InterruptedException {
+        List<String> accounts = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            accounts.add("account-" + i);
+        }
+        RenewalEngine engine = new RenewalEngine(50, 64, 1);
+        try {
+            MultiKeyLock transfer = new MultiKeyLock(accounts, "tx-1", 1, client, engine, LockMetrics.NOOP);
+            redis.resetCounters();
+            assertTrue(transfer.acquireLock());
+            // 20 个 key 只需要一次脚本调用
+            assertEquals(1, redis.count("EVALSHA"));
+            assertEquals(0, redis.count("GET"));
+            assertEquals("tx-1", redis.get("account-19"));
+
+            // 与已锁住的 key 有交集时一个都不锁
+            MultiKeyLock other = new MultiKeyLock(List.of("account-19", "account-20"), "tx-2", 1, client, engine, LockMetrics.NOOP);
+            assertFalse(other.acquireLock());
+            assertNull(redis.get("account-20"));
+
+            // 所有 key 作为一个整体续期：ttl 1 秒，等待 1.2 秒后仍然持有
+            Thread.sleep(1200);
+            assertTrue(transfer.isLocked());
+            assertEquals("tx-1", redis.get("account-0"));
+
+            // 有一个 key 被别人拿走后，下一次续期释放整把锁
+            redis.set("account-7", "tx-3");
+            Thread.sleep(500);
+            assertFalse(transfer.isLocked());
+            assertNull(redis.get("account-0"));
+            assertEquals("tx-3", redis.get("account-7"));
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    // 三个脚本各执行一次，让客户端缓存好 SHA
+    private void loadScripts() {
+        client.setNxPx("warm-up", "owner", 30);
+        client.renew("warm-up", "owner", 30);
+        client.release("warm-up", "owner");
+    }
+
+    private static Map<String, String> entries(int size) {
+        Map<String, String> entries = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            entries.put("key-" + i, "value-" + i);
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,153 @@
+package org.hangerlin.common;
+
+import org.hangerlin.common.bucket.PermitStore;
+import org.hangerlin.common.bucket.RedisPermitStore;
+import org.hangerlin.common.bucket.RedisRateLimiter;
+import org.hangerlin.common.lock.RedisFairLock;
+import org.hangerlin.common.readwritelock.RedisReadWriteLock;
+import org.hangerlin.common.watcher.LocalUnlockBroker;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * 在真实的 Redis 上执行所有 Lua 脚本，检查 RespStandIn（LuaJ）覆盖不到的 Lua 5.1 和 Redis 脚本环境差异。
+ * 地址取系统属性 redis.host / redis.port（或环境变量 REDIS_HOST / REDIS_PORT），默认 127.0.0.1:6379，连不上时跳过。
+ */
+public class RedisScriptsLiveTest {
+    private static String host;
+    private static int port;
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate template;
+    private final String prefix = "live-test:" + UUID.randomUUID() + ":"; // 不同测试运行之间互不影响
+
+    @BeforeClass
+    public static void findRedis() {
+        host = System.getProperty("redis.host", System.getenv().getOrDefault("REDIS_HOST", "127.0.0.1"));
+        port = Integer.parseInt(System.getProperty("redis.port", System.getenv().getOrDefault("REDIS_PORT", "6379")));
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), 200);
+        } catch (IOException e) {
+            Assume.assumeNoException("No Redis at " + host + ":" + port, e);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(host, port));
+        connectionFactory.afterPropertiesSet();
+        template = new StringRedisTemplate(connectionFactory);
+    }
+
+    @After
+    public void tearDown() {
+        template.delete(template.keys(prefix + "*"));
+        template.delete(template.keys("{" + prefix + "*")); // 带哈希标签的 key
+        connectionFactory.destroy();
+    }
+
+    @Test
+    public void testEveryScriptLoads() throws IllegalAccessException {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            for (Map.Entry<String, String> script : RedisScriptsTest.scripts().entrySet()) {
+                assertNotNull(script.getKey(), connection.scriptingCommands()
+                        .scriptLoad(script.getValue().getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+    }
+
+    @Test
+    public void testLockClientScripts() {
+        RedisLockClient client = new RedisLockClient(template);
+        String key = prefix + "lock";
+        assertEquals(DistributedLock.LockClient.RESULT_OK, client.setNxPx(key, "owner-1", 30));
+        assertEquals(DistributedLock.LockClient.RESULT_FAIL, client.setNxPx(key, "owner-2", 30));
+        assertTrue(client.renew(key, "owner-1", 30));
+        assertFalse(client.release(key, "owner-2"));
+        assertTrue(client.release(key, "owner-1"));
+
+        List<String> keys = List.of(prefix + "a", prefix + "b");
+        assertTrue(client.setNxPxMulti(keys, "tx-1", 30));
+        assertFalse(client.setNxPxMulti(keys, "tx-2", 30));
+        assertTrue(client.renewMulti(keys, "tx-1", 30));
+        client.releaseMulti(keys, "tx-1");
+        assertNull(template.opsForValue().get(prefix + "a"));
+    }
+
+    @Test
+    public void testFairLockScripts() throws InterruptedException {
+        LocalUnlockBroker broker = new LocalUnlockBroker();
+        RedisFairLock owner = new RedisFairLock(prefix + "fair", template, broker, 30);
+        RedisFairLock waiter = new RedisFairLock(prefix + "fair", template, broker, 30);
+        owner.lock();
+        Thread thread = new Thread(() -> {
+            waiter.lock();
+            waiter.unlock();
+        });
+        thread.start();
+        Thread.sleep(100);
+        owner.unlock();
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+        assertFalse(template.hasKey(prefix + "fair"));
+    }
+
+    @Test
+    public void testReadWriteLockScripts() {
+        RedisReadWriteLock lock = new RedisReadWriteLock(template, 30);
+        try {
+            String key = prefix + "config";
+            lock.acquireReadLock(key);
+            lock.acquireReadLock(key);
+            lock.releaseReadLock(key);
+            lock.releaseReadLock(key);
+            lock.acquireWriteLock(key);
+            lock.releaseWriteLock(key);
+            assertFalse(template.hasKey(key));
+        } finally {
+            lock.close();
+        }
+    }
+
+    @Test
+    public void testRateLimiterScript() {
+        RedisRateLimiter limiter = new RedisRateLimiter(prefix + "rate", template, 1, 2);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testPermitStoreScripts() {
+        RedisPermitStore store = new RedisPermitStore(prefix + "pool", template, 4);
+        PermitStore.Grant first = store.lease("node-a", 2, 30_000);
+        assertEquals(2, first.permits);
+        assertTrue(first.newHolding);
+        PermitStore.Grant second = store.lease("node-a", 1, 30_000);
+        assertEquals(1, second.permits);
+        assertFalse(second.newHolding);
+        assertEquals(1, store.lease("node-b", 3, 30_000).permits);
+        assertEquals(0, store.available());
+        assertTrue(store.renew("node-a", 30_000));
+        assertEquals(3, store.release("node-a", 3, 30_000));
+        assertFalse(store.renew("node-a", 30_000));
+        assertEquals(3, store.available());
+    }
+}
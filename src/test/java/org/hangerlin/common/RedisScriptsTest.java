@@ -0,0 +1,53 @@
+package org.hangerlin.common;
+
+import org.hangerlin.common.bucket.RedisPermitStore;
+import org.hangerlin.common.bucket.RedisRateLimiter;
+import org.hangerlin.common.lock.RedisFairLock;
+import org.hangerlin.common.readwritelock.RedisReadWriteLock;
+import org.junit.Test;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.lib.jse.JsePlatform;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class RedisScriptsTest {
+    // 所有使用 Lua 脚本的类，新增脚本的类需要加到这里
+    private static final List<Class<?>> SCRIPT_OWNERS = List.of(RedisLockClient.class, RedisFairLock.class,
+            RedisReadWriteLock.class, RedisRateLimiter.class, RedisPermitStore.class);
+
+    // 类名.常量名 -> 脚本源码，包含上面每个类中所有以 _SCRIPT 结尾的静态字符串常量
+    static Map<String, String> scripts() throws IllegalAccessException {
+        Map<String, String> scripts = new TreeMap<>();
+        for (Class<?> owner : SCRIPT_OWNERS) {
+            for (Field field : owner.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class
+                        && field.getName().endsWith("_SCRIPT")) {
+                    field.setAccessible(true);
+                    scripts.put(owner.getSimpleName() + "." + field.getName(), (String) field.get(null));
+                }
+            }
+        }
+        return scripts;
+    }
+
+    @Test
+    public void testEveryScriptCompiles() throws IllegalAccessException {
+        Map<String, String> scripts = scripts();
+        assertTrue(scripts.size() >= SCRIPT_OWNERS.size());
+        Globals lua = JsePlatform.standardGlobals();
+        for (Map.Entry<String, String> script : scripts.entrySet()) {
+            try {
+                lua.load(script.getValue(), script.getKey());
+            } catch (LuaError e) {
+                fail(script.getKey() + " does not compile: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.hangerlin.common;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class RenewalEngineTest {
+    private static final int LEASES = 100_000;
+
+    private RenewalEngine engine;
+    private CountingClient client;
+
+    @Before
+    public void setUp() {
+        engine = new RenewalEngine(50, 512, 2);
+        client = new CountingClient();
+    }
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Test
+    public void testHoldManyLeasesWithBoundedThreads() throws InterruptedException {
+        int threadsBefore = Thread.activeCount();
+
+        List<DistributedLock> locks = new ArrayList<>(LEASES);
+        for (int i = 0; i < LEASES; i++) {
+            DistributedLock lock = new DistributedLock("key-" + i, "value", 1, client, engine);
+            assertTrue(lock.acquireLock());
+            locks.add(lock);
+        }
+        assertEquals(LEASES, engine.activeLeases());
+
+        // 每个租约至少续期两次（注册后的第一次 + 一个周期后的第二次）
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (client.expires.get() < 2L * LEASES && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue("All leases should be renewed", client.expires.get() >= 2L * LEASES);
+        // 续期线程数与持有的锁数量无关：一个 tick 线程加上固定的工作线程
+        assertTrue("Renewal must not start a thread per lock", Thread.activeCount() - threadsBefore <= 3);
+
+        for (DistributedLock lock : locks) {
+            lock.close();
+        }
+        assertEquals(0, engine.activeLeases());
+
+        // 注销之后不再发生续期
+        Thread.sleep(200);
+        long renewed = client.expires.get();
+        Thread.sleep(1000);
+        assertEquals(renewed, client.expires.get());
+    }
+
+    @Test
+    public void testRenewalFailureDeregistersLease() throws InterruptedException {
+        DistributedLock.LockClient failing = new DistributedLock.LockClient() {
+            @Override
+            public void expire(String key, long ttl) {
+                throw new IllegalStateException("connection lost");
+            }
+        };
+        DistributedLock lock = new DistributedLock("failing", "value", 1, failing, engine);
+        assertTrue(lock.acquireLock());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (lock.isRunning && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertFalse(lock.isRunning);
+        assertEquals(0, engine.activeLeases());
+    }
+
+    private static class CountingClient extends DistributedLock.LockClient {
+        final AtomicLong expires = new AtomicLong();
+
+        @Override
+        public void expire(String key, long ttl) {
+            expires.incrementAndGet();
+        }
+    }
+}
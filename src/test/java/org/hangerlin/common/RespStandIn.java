@@ -0,0 +1,892 @@
+package org.hangerlin.common;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.OneArgFunction;
+import org.luaj.vm2.lib.ThreeArgFunction;
+import org.luaj.vm2.lib.TwoArgFunction;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.luaj.vm2.lib.jse.JsePlatform;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 测试用的进程内 RESP 服务端，只实现锁客户端和它们的 Lua 脚本用到的少量命令。
+ * 所有命令在同一把锁下串行执行，和 Redis 单线程执行命令的语义一致。
+ * EVAL / EVALSHA 用 LuaJ 执行脚本原文，脚本里的 redis.call 和回复类型转换按 Redis 的规则处理。
+ * LuaJ 实现的是 Lua 5.2，和 Redis 内置的 Lua 5.1 有少量差异；需要和真实 Redis 对照时见 RedisScriptsLiveTest。
+ * 支持 SUBSCRIBE / UNSUBSCRIBE / PUBLISH，订阅中的连接只接受这两个订阅命令。
+ */
+public class RespStandIn implements Closeable {
+    private final ServerSocket server;
+    private final Map<String, Entry> data = new HashMap<>();
+    private final Map<String, String> scripts = new HashMap<>(); // SHA -> 脚本源码
+    private final Map<String, LuaValue> compiled = new HashMap<>(); // 脚本源码 -> 编译好的函数
+    private final Globals lua = createLua();
+    private final Map<String, Set<Connection>> channels = new HashMap<>(); // 频道 -> 订阅它的连接
+    private final Map<String, AtomicInteger> commandCounts = new ConcurrentHashMap<>();
+    private final AtomicInteger roundTrips = new AtomicInteger();
+    private volatile boolean closed;
+
+    public RespStandIn() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "resp-stand-in");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    // 某个命令被执行的次数
+    public int count(String command) {
+        AtomicInteger counter = commandCounts.get(command.toUpperCase(Locale.ROOT));
+        return counter == null ? 0 : counter.get();
+    }
+
+    // 服务端读空输入缓冲区、需要等待客户端下一次写入的次数，近似为网络往返次数
+    public int roundTrips() {
+        return roundTrips.get();
+    }
+
+    public void resetCounters() {
+        commandCounts.clear();
+        roundTrips.set(0);
+    }
+
+    public synchronized String get(String key) {
+        Entry entry = live(key);
+        return entry == null ? null : entry.string();
+    }
+
+    public synchronized long pttl(String key) {
+        Entry entry = live(key);
+        if (entry == null) {
+            return -2;
+        }
+        return entry.expireAt < 0 ? -1 : entry.expireAt - System.currentTimeMillis();
+    }
+
+    public synchronized void set(String key, String value) {
+        data.put(key, new Entry(value, -1));
+    }
+
+    public synchronized void setPx(String key, String value, long millis) {
+        data.put(key, new Entry(value, System.currentTimeMillis() + millis));
+    }
+
+    public synchronized long pexpire(String key, long millis) {
+        Entry entry = live(key);
+        if (entry == null) {
+            return 0;
+        }
+        entry.expireAt = System.currentTimeMillis() + millis;
+        return 1;
+    }
+
+    public synchronized long del(String key) {
+        if (live(key) == null) {
+            return 0;
+        }
+        data.remove(key);
+        return 1;
+    }
+
+    // 哈希类型的 key，返回可直接修改的字段表，不存在时创建（不过期）；字段表为空时 key 在下一次访问时删除
+    public synchronized Map<String, String> hash(String key) {
+        return writeHash(key);
+    }
+
+    // 列表类型的 key，返回可直接修改的列表，不存在时创建（不过期）；列表为空时 key 在下一次访问时删除
+    public synchronized List<String> list(String key) {
+        return writeList(key);
+    }
+
+    // 有序集合类型的 key，返回可直接修改的成员 -> 分数表，不存在时创建（不过期）；为空时 key 在下一次访问时删除
+    public synchronized Map<String, Double> zset(String key) {
+        return writeZset(key);
+    }
+
+    // 当前订阅某个频道的连接数
+    public synchronized int subscribers(String channel) {
+        Set<Connection> subscribed = channels.get(channel);
+        return subscribed == null ? 0 : subscribed.size();
+    }
+
+    // 模拟 SCRIPT FLUSH / 服务端重启后脚本缓存丢失
+    public synchronized void flushScripts() {
+        scripts.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                Thread worker = new Thread(() -> serve(socket), "resp-stand-in-conn");
+                worker.setDaemon(true);
+                worker.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        Connection connection = null;
+        try (socket) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            connection = new Connection(new BufferedOutputStream(socket.getOutputStream()));
+            while (!closed) {
+                List<String> command = readCommand(in);
+                if (command == null) {
+                    return;
+                }
+                Object reply = execute(connection, command);
+                // 订阅中的连接还会被 PUBLISH 的线程写入，同一个连接的写入在连接上串行
+                synchronized (connection) {
+                    if (reply != NO_REPLY) {
+                        writeReply(connection.out, reply);
+                    }
+                    if (in.available() == 0) {
+                        roundTrips.incrementAndGet();
+                        connection.out.flush();
+                    }
+                }
+            }
+        } catch (IOException ignored) {
+            // 客户端断开
+        } finally {
+            if (connection != null) {
+                synchronized (this) {
+                    unsubscribeAll(connection);
+                }
+            }
+        }
+    }
+
+    private Object execute(Connection connection, List<String> command) throws IOException {
+        String name = command.get(0).toUpperCase(Locale.ROOT);
+        commandCounts.computeIfAbsent(name, k -> new AtomicInteger()).incrementAndGet();
+        List<String> args = command.subList(1, command.size());
+        synchronized (this) {
+            switch (name) {
+                case "SUBSCRIBE":
+                    return subscribe(connection, args);
+                case "UNSUBSCRIBE":
+                    return unsubscribe(connection, args.isEmpty() ? new ArrayList<>(connection.channels) : args);
+                case "PUBLISH":
+                    return publish(args.get(0), args.get(1));
+                default:
+                    if (!connection.channels.isEmpty()) {
+                        return new Error("ERR only (P)SUBSCRIBE / (P)UNSUBSCRIBE / PING / QUIT allowed in this context");
+                    }
+                    return dispatch(name, args);
+            }
+        }
+    }
+
+    // 确认回复在锁内写出，之后 PUBLISH 的消息不会排到确认之前
+    private Object subscribe(Connection connection, List<String> names) throws IOException {
+        synchronized (connection) {
+            for (String channel : names) {
+                if (connection.channels.add(channel)) {
+                    channels.computeIfAbsent(channel, k -> new LinkedHashSet<>()).add(connection);
+                }
+                writeReply(connection.out, List.of("subscribe", channel, (long) connection.channels.size()));
+            }
+        }
+        return NO_REPLY;
+    }
+
+    private Object unsubscribe(Connection connection, List<String> names) throws IOException {
+        synchronized (connection) {
+            if (names.isEmpty()) {
+                writeReply(connection.out, Arrays.asList("unsubscribe", null, 0L));
+            }
+            for (String channel : names) {
+                if (connection.channels.remove(channel)) {
+                    removeSubscriber(channel, connection);
+                }
+                writeReply(connection.out, List.of("unsubscribe", channel, (long) connection.channels.size()));
+            }
+        }
+        return NO_REPLY;
+    }
+
+    // 返回收到消息的连接数；写入失败的连接（已断开）由它自己的线程清理
+    private Object publish(String channel, String message) {
+        Set<Connection> subscribed = channels.get(channel);
+        if (subscribed == null) {
+            return 0L;
+        }
+        long receivers = 0;
+        for (Connection connection : subscribed) {
+            synchronized (connection) {
+                try {
+                    writeReply(connection.out, List.of("message", channel, message));
+                    connection.out.flush();
+                    receivers++;
+                } catch (IOException ignored) {
+                    // 连接已断开
+                }
+            }
+        }
+        return receivers;
+    }
+
+    private void unsubscribeAll(Connection connection) {
+        for (String channel : connection.channels) {
+            removeSubscriber(channel, connection);
+        }
+        connection.channels.clear();
+    }
+
+    private void removeSubscriber(String channel, Connection connection) {
+        Set<Connection> subscribed = channels.get(channel);
+        if (subscribed != null && subscribed.remove(connection) && subscribed.isEmpty()) {
+            channels.remove(channel);
+        }
+    }
+
+    // 脚本中 redis.call 执行的命令也走这里，但不计入 count，和客户端直接发送的命令区分开
+    private Object dispatch(String name, List<String> args) {
+        try {
+            switch (name) {
+                case "PING":
+                    return new Status("PONG");
+                case "SELECT":
+                case "CLIENT":
+                    return new Status("OK");
+                case "GET": {
+                    Entry entry = live(args.get(0));
+                    return entry == null ? null : entry.string();
+                }
+                case "SET":
+                    return set(args);
+                case "DEL":
+                case "EXISTS": {
+                    long found = 0;
+                    for (String key : args) {
+                        if (live(key) != null) {
+                            if (name.equals("DEL")) {
+                                data.remove(key);
+                            }
+                            found++;
+                        }
+                    }
+                    return found;
+                }
+                case "PEXPIRE":
+                    return pexpire(args.get(0), Long.parseLong(args.get(1)));
+                case "PTTL":
+                    return pttl(args.get(0));
+                case "TIME": {
+                    long micros = System.currentTimeMillis() * 1000 + System.nanoTime() / 1000 % 1000;
+                    return List.of(String.valueOf(micros / 1_000_000), String.valueOf(micros % 1_000_000));
+                }
+                case "SCRIPT":
+                    return script(args);
+                case "EVALSHA": {
+                    String source = scripts.get(args.get(0));
+                    if (source == null) {
+                        return new Error("NOSCRIPT No matching script. Please use EVAL.");
+                    }
+                    return eval(source, args);
+                }
+                case "EVAL":
+                    scripts.put(sha1(args.get(0)), args.get(0)); // 和 Redis 一样，EVAL 过的脚本之后可以用 EVALSHA 调用
+                    return eval(args.get(0), args);
+                case "HGET": {
+                    Map<String, String> hash = readHash(args.get(0));
+                    return hash == null ? null : hash.get(args.get(1));
+                }
+                case "HSET": {
+                    Map<String, String> hash = writeHash(args.get(0));
+                    long added = 0;
+                    for (int i = 1; i + 1 < args.size(); i += 2) {
+                        if (hash.put(args.get(i), args.get(i + 1)) == null) {
+                            added++;
+                        }
+                    }
+                    return added;
+                }
+                case "HDEL": {
+                    Map<String, String> hash = readHash(args.get(0));
+                    long removed = 0;
+                    for (String field : args.subList(1, args.size())) {
+                        if (hash != null && hash.remove(field) != null) {
+                            removed++;
+                        }
+                    }
+                    return removed;
+                }
+                case "HEXISTS": {
+                    Map<String, String> hash = readHash(args.get(0));
+                    return hash != null && hash.containsKey(args.get(1)) ? 1L : 0L;
+                }
+                case "HINCRBY": {
+                    Map<String, String> hash = writeHash(args.get(0));
+                    long value = Long.parseLong(hash.getOrDefault(args.get(1), "0")) + Long.parseLong(args.get(2));
+                    hash.put(args.get(1), String.valueOf(value));
+                    return value;
+                }
+                case "HGETALL":
+                case "HKEYS":
+                case "HVALS": {
+                    Map<String, String> hash = readHash(args.get(0));
+                    List<String> reply = new ArrayList<>();
+                    if (hash != null) {
+                        for (Map.Entry<String, String> field : hash.entrySet()) {
+                            if (!name.equals("HVALS")) {
+                                reply.add(field.getKey());
+                            }
+                            if (!name.equals("HKEYS")) {
+                                reply.add(field.getValue());
+                            }
+                        }
+                    }
+                    return reply;
+                }
+                case "RPUSH": {
+                    List<String> list = writeList(args.get(0));
+                    list.addAll(args.subList(1, args.size()));
+                    return (long) list.size();
+                }
+                case "LPOP": {
+                    List<String> list = readList(args.get(0));
+                    return list == null ? null : list.remove(0);
+                }
+                case "LINDEX": {
+                    List<String> list = readList(args.get(0));
+                    if (list == null) {
+                        return null;
+                    }
+                    int index = Integer.parseInt(args.get(1));
+                    index = index < 0 ? list.size() + index : index;
+                    return index >= 0 && index < list.size() ? list.get(index) : null;
+                }
+                case "LREM":
+                    return lrem(args.get(0), Integer.parseInt(args.get(1)), args.get(2));
+                case "ZADD": {
+                    Map<String, Double> zset = writeZset(args.get(0));
+                    long added = 0;
+                    for (int i = 1; i + 1 < args.size(); i += 2) {
+                        if (zset.put(args.get(i + 1), Double.parseDouble(args.get(i))) == null) {
+                            added++;
+                        }
+                    }
+                    return added;
+                }
+                case "ZSCORE": {
+                    Map<String, Double> zset = readZset(args.get(0));
+                    Double score = zset == null ? null : zset.get(args.get(1));
+                    return score == null ? null : formatScore(score);
+                }
+                case "ZREM": {
+                    Map<String, Double> zset = readZset(args.get(0));
+                    long removed = 0;
+                    for (String member : args.subList(1, args.size())) {
+                        if (zset != null && zset.remove(member) != null) {
+                            removed++;
+                        }
+                    }
+                    return removed;
+                }
+                default:
+                    return new Error("ERR unknown command '" + name + "'");
+            }
+        } catch (WrongType e) {
+            return new Error("WRONGTYPE Operation against a key holding the wrong kind of value");
+        } catch (NumberFormatException e) {
+            return new Error("ERR value is not an integer or out of range");
+        }
+    }
+
+    private Object set(List<String> args) {
+        String key = args.get(0);
+        boolean nx = false;
+        long expireAt = -1;
+        for (int i = 2; i < args.size(); i++) {
+            String option = args.get(i).toUpperCase(Locale.ROOT);
+            if (option.equals("NX")) {
+                nx = true;
+            } else if (option.equals("PX")) {
+                expireAt = System.currentTimeMillis() + Long.parseLong(args.get(++i));
+            } else if (option.equals("EX")) {
+                expireAt = System.currentTimeMillis() + Long.parseLong(args.get(++i)) * 1000;
+            }
+        }
+        if (nx && live(key) != null) {
+            return null;
+        }
+        data.put(key, new Entry(args.get(1), expireAt));
+        return new Status("OK");
+    }
+
+    private long lrem(String key, int count, String value) {
+        List<String> list = readList(key);
+        if (list == null) {
+            return 0;
+        }
+        long removed = 0;
+        int limit = count == 0 ? Integer.MAX_VALUE : Math.abs(count);
+        if (count >= 0) {
+            for (Iterator<String> it = list.iterator(); it.hasNext() && removed < limit; ) {
+                if (it.next().equals(value)) {
+                    it.remove();
+                    removed++;
+                }
+            }
+        } else {
+            for (ListIterator<String> it = list.listIterator(list.size()); it.hasPrevious() && removed < limit; ) {
+                if (it.previous().equals(value)) {
+                    it.remove();
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    private Object script(List<String> args) {
+        String subcommand = args.get(0).toUpperCase(Locale.ROOT);
+        if (subcommand.equals("LOAD")) {
+            String sha = sha1(args.get(1));
+            scripts.put(sha, args.get(1));
+            return sha;
+        }
+        if (subcommand.equals("FLUSH")) {
+            scripts.clear();
+            compiled.clear();
+            return new Status("OK");
+        }
+        return new Error("ERR unknown subcommand '" + args.get(0) + "'");
+    }
+
+    // args: 脚本或 SHA、key 个数、keys...、argv...；在服务端锁内用 LuaJ 执行脚本原文
+    private Object eval(String source, List<String> args) {
+        int numKeys = Integer.parseInt(args.get(1));
+        LuaValue chunk = compiled.get(source);
+        try {
+            if (chunk == null) {
+                chunk = lua.load(source, "@user_script");
+                compiled.put(source, chunk);
+            }
+        } catch (LuaError e) {
+            return new Error("ERR Error compiling script: " + e.getMessage());
+        }
+        lua.rawset("KEYS", toLuaArray(args.subList(2, 2 + numKeys)));
+        lua.rawset("ARGV", toLuaArray(args.subList(2 + numKeys, args.size())));
+        try {
+            return fromLua(chunk.call());
+        } catch (LuaError e) {
+            return new Error("ERR Error running script: " + e.getMessage());
+        }
+    }
+
+    // 和 Redis 一样的脚本环境：KEYS、ARGV、redis.call / pcall，禁止读写未定义的全局变量
+    private Globals createLua() {
+        Globals globals = JsePlatform.standardGlobals();
+        LuaTable redis = new LuaTable();
+        redis.set("call", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                return redisCall(args, true);
+            }
+        });
+        redis.set("pcall", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                return redisCall(args, false);
+            }
+        });
+        redis.set("replicate_commands", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                return LuaValue.TRUE;
+            }
+        });
+        redis.set("error_reply", new OneArgFunction() {
+            @Override
+            public LuaValue call(LuaValue message) {
+                return LuaValue.tableOf(new LuaValue[]{LuaValue.valueOf("err"), message});
+            }
+        });
+        redis.set("status_reply", new OneArgFunction() {
+            @Override
+            public LuaValue call(LuaValue message) {
+                return LuaValue.tableOf(new LuaValue[]{LuaValue.valueOf("ok"), message});
+            }
+        });
+        globals.rawset("redis", redis);
+        LuaTable string = (LuaTable) globals.get("string");
+        string.set("format", new Int64Format(string.get("format")));
+        LuaTable guard = new LuaTable();
+        guard.set(LuaValue.INDEX, new TwoArgFunction() {
+            @Override
+            public LuaValue call(LuaValue table, LuaValue name) {
+                throw new LuaError("Script attempted to access nonexistent global variable '" + name.tojstring() + "'");
+            }
+        });
+        guard.set(LuaValue.NEWINDEX, new ThreeArgFunction() {
+            @Override
+            public LuaValue call(LuaValue table, LuaValue name, LuaValue value) {
+                throw new LuaError("Script attempted to create global variable '" + name.tojstring() + "'");
+            }
+        });
+        globals.setmetatable(guard);
+        return globals;
+    }
+
+    // LuaJ 的 string.format 把 %d 的参数截断为 32 位整数，Redis 的 Lua 5.1 按 64 位格式化；把 %d 换成预先格式化好的 %s
+    private static class Int64Format extends VarArgFunction {
+        private final LuaValue format;
+
+        Int64Format(LuaValue format) {
+            this.format = format;
+        }
+
+        @Override
+        public Varargs invoke(Varargs args) {
+            String pattern = args.checkjstring(1);
+            StringBuilder rewritten = new StringBuilder();
+            LuaValue[] values = new LuaValue[args.narg() - 1];
+            int arg = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                rewritten.append(c);
+                if (c != '%' || i + 1 == pattern.length()) {
+                    continue;
+                }
+                char next = pattern.charAt(i + 1);
+                if (next == '%') {
+                    rewritten.append(pattern.charAt(++i));
+                } else if ((next == 'd' || next == 'i') && arg < values.length) {
+                    values[arg] = LuaValue.valueOf(Long.toString((long) args.checkdouble(arg + 2)));
+                    rewritten.append('s');
+                    arg++;
+                    i++;
+                } else if (arg < values.length) {
+                    values[arg] = args.arg(arg + 2);
+                    arg++;
+                }
+            }
+            for (; arg < values.length; arg++) {
+                values[arg] = args.arg(arg + 2);
+            }
+            return format.invoke(LuaValue.valueOf(rewritten.toString()), LuaValue.varargsOf(values));
+        }
+    }
+
+    // redis.call / redis.pcall：参数只能是字符串或数字，命令出错时 call 抛出错误，pcall 返回 {err = ...}
+    private LuaValue redisCall(Varargs args, boolean raise) {
+        if (args.narg() == 0) {
+            throw new LuaError("Please specify at least one argument for redis.call()");
+        }
+        List<String> command = new ArrayList<>(args.narg());
+        for (int i = 1; i <= args.narg(); i++) {
+            LuaValue arg = args.arg(i);
+            if (arg.type() != LuaValue.TSTRING && arg.type() != LuaValue.TNUMBER) {
+                throw new LuaError("Lua redis() command arguments must be strings or integers");
+            }
+            command.add(arg.tojstring());
+        }
+        Object reply = dispatch(command.get(0).toUpperCase(Locale.ROOT), command.subList(1, command.size()));
+        if (reply instanceof Error && raise) {
+            throw new LuaError(((Error) reply).text);
+        }
+        return toLua(reply);
+    }
+
+    // Redis 回复转换为 Lua 值：空回复为 false，整数为 number，数组为 table，状态和错误为 {ok = ...} / {err = ...}
+    private static LuaValue toLua(Object reply) {
+        if (reply == null) {
+            return LuaValue.FALSE;
+        }
+        if (reply instanceof Long) {
+            return LuaValue.valueOf((Long) reply);
+        }
+        if (reply instanceof Status) {
+            return LuaValue.tableOf(new LuaValue[]{LuaValue.valueOf("ok"), LuaValue.valueOf(((Status) reply).text)});
+        }
+        if (reply instanceof Error) {
+            return LuaValue.tableOf(new LuaValue[]{LuaValue.valueOf("err"), LuaValue.valueOf(((Error) reply).text)});
+        }
+        if (reply instanceof List) {
+            LuaTable table = new LuaTable();
+            int i = 1;
+            for (Object item : (List<?>) reply) {
+                table.set(i++, toLua(item));
+            }
+            return table;
+        }
+        return LuaValue.valueOf(reply.toString());
+    }
+
+    private static LuaTable toLuaArray(List<String> values) {
+        LuaTable table = new LuaTable();
+        for (int i = 0; i < values.size(); i++) {
+            table.set(i + 1, LuaValue.valueOf(values.get(i)));
+        }
+        return table;
+    }
+
+    // 脚本返回值转换为 Redis 回复：number 截断为整数，false / nil 为空回复，table 取到第一个 nil 为止
+    private static Object fromLua(LuaValue value) {
+        switch (value.type()) {
+            case LuaValue.TNUMBER:
+                return (long) value.todouble();
+            case LuaValue.TSTRING:
+                return value.tojstring();
+            case LuaValue.TBOOLEAN:
+                return value.toboolean() ? 1L : null;
+            case LuaValue.TTABLE: {
+                LuaValue err = value.rawget("err");
+                if (err.type() == LuaValue.TSTRING) {
+                    return new Error(err.tojstring());
+                }
+                LuaValue ok = value.rawget("ok");
+                if (ok.type() == LuaValue.TSTRING) {
+                    return new Status(ok.tojstring());
+                }
+                List<Object> items = new ArrayList<>();
+                for (int i = 1; !value.rawget(i).isnil(); i++) {
+                    items.add(fromLua(value.rawget(i)));
+                }
+                return items;
+            }
+            default:
+                return null;
+        }
+    }
+
+    // 和 Redis 一样，整数分数不带小数部分
+    private static String formatScore(double score) {
+        return score == Math.rint(score) && Math.abs(score) < 1e17 ? String.valueOf((long) score) : String.valueOf(score);
+    }
+
+    private static String sha1(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Entry live(String key) {
+        Entry entry = data.get(key);
+        if (entry != null && (entry.expireAt >= 0 && entry.expireAt <= System.currentTimeMillis() || entry.isEmpty())) {
+            data.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private Map<String, String> readHash(String key) {
+        Entry entry = live(key);
+        return entry == null ? null : entry.typed(entry.hash);
+    }
+
+    private Map<String, String> writeHash(String key) {
+        Map<String, String> hash = readHash(key);
+        if (hash == null) {
+            Entry entry = new Entry(null, -1);
+            hash = entry.hash = new LinkedHashMap<>();
+            data.put(key, entry);
+        }
+        return hash;
+    }
+
+    private List<String> readList(String key) {
+        Entry entry = live(key);
+        return entry == null ? null : entry.typed(entry.list);
+    }
+
+    private List<String> writeList(String key) {
+        List<String> list = readList(key);
+        if (list == null) {
+            Entry entry = new Entry(null, -1);
+            list = entry.list = new ArrayList<>();
+            data.put(key, entry);
+        }
+        return list;
+    }
+
+    private Map<String, Double> readZset(String key) {
+        Entry entry = live(key);
+        return entry == null ? null : entry.typed(entry.zset);
+    }
+
+    private Map<String, Double> writeZset(String key) {
+        Map<String, Double> zset = readZset(key);
+        if (zset == null) {
+            Entry entry = new Entry(null, -1);
+            zset = entry.zset = new HashMap<>();
+            data.put(key, entry);
+        }
+        return zset;
+    }
+
+    private static List<String> readCommand(InputStream in) throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            return null;
+        }
+        if (type != '*') {
+            throw new IOException("Only RESP arrays are supported");
+        }
+        int length = Integer.parseInt(readLine(in));
+        List<String> command = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            if (in.read() != '$') {
+                throw new IOException("Expected bulk string");
+            }
+            int size = Integer.parseInt(readLine(in));
+            byte[] bytes = in.readNBytes(size);
+            in.read();
+            in.read();
+            command.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return command;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) {
+                throw new IOException("Unexpected end of stream");
+            }
+            line.append((char) c);
+        }
+        in.read();
+        return line.toString();
+    }
+
+    private static void writeReply(OutputStream out, Object reply) throws IOException {
+        if (reply == null) {
+            out.write("$-1\r\n".getBytes(StandardCharsets.UTF_8));
+        } else if (reply instanceof Status) {
+            out.write(("+" + ((Status) reply).text + "\r\n").getBytes(StandardCharsets.UTF_8));
+        } else if (reply instanceof Error) {
+            out.write(("-" + ((Error) reply).text + "\r\n").getBytes(StandardCharsets.UTF_8));
+        } else if (reply instanceof Long) {
+            out.write((":" + reply + "\r\n").getBytes(StandardCharsets.UTF_8));
+        } else if (reply instanceof List) {
+            List<?> items = (List<?>) reply;
+            out.write(("*" + items.size() + "\r\n").getBytes(StandardCharsets.UTF_8));
+            for (Object item : items) {
+                writeReply(out, item);
+            }
+        } else {
+            byte[] bytes = reply.toString().getBytes(StandardCharsets.UTF_8);
+            out.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.UTF_8));
+            out.write(bytes);
+            out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static final Object NO_REPLY = new Object(); // 回复已经在命令执行时写出
+
+    // 一个客户端连接；channels 在 synchronized(RespStandIn.this) 下访问，out 的写入在 synchronized(this) 下
+    private static class Connection {
+        final OutputStream out;
+        final Set<String> channels = new LinkedHashSet<>();
+
+        Connection(OutputStream out) {
+            this.out = out;
+        }
+    }
+
+    private static class Entry {
+        final String value;
+        Map<String, String> hash; // 哈希类型的字段表，其他类型为 null
+        List<String> list; // 列表类型的元素，其他类型为 null
+        Map<String, Double> zset; // 有序集合类型的成员 -> 分数，其他类型为 null
+        long expireAt; // 过期的绝对时间（毫秒），-1 表示不过期
+
+        Entry(String value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        String string() {
+            return typed(value);
+        }
+
+        // 按某种类型访问，key 实际是其他类型时和 Redis 一样报 WRONGTYPE
+        <T> T typed(T field) {
+            if (field == null) {
+                throw new WrongType();
+            }
+            return field;
+        }
+
+        boolean isEmpty() {
+            return hash != null && hash.isEmpty() || list != null && list.isEmpty() || zset != null && zset.isEmpty();
+        }
+    }
+
+    private static class WrongType extends RuntimeException {
+        WrongType() {
+            super(null, null, false, false);
+        }
+    }
+
+    // 简单字符串回复，例如 +OK
+    static class Status {
+        final String text;
+
+        Status(String text) {
+            this.text = text;
+        }
+    }
+
+    // 错误回复，例如 -ERR ...
+    static class Error {
+        final String text;
+
+        Error(String text) {
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.hangerlin.common;
+
+import org.apache.zookeeper.server.NIOServerCnxnFactory;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * 测试用的进程内 ZooKeeper 单机服务端，数据放在临时目录中，close 时删除。
+ */
+public class ZooKeeperStandIn implements Closeable {
+    private final File dataDir;
+    private final ZooKeeperServer server;
+    private final ServerCnxnFactory connections;
+
+    public ZooKeeperStandIn() throws IOException, InterruptedException {
+        dataDir = Files.createTempDirectory("zookeeper-stand-in").toFile();
+        server = new ZooKeeperServer(dataDir, dataDir, 200);
+        connections = new NIOServerCnxnFactory();
+        connections.configure(new InetSocketAddress("127.0.0.1", 0), 100);
+        connections.startup(server);
+    }
+
+    public String connectString() {
+        return "127.0.0.1:" + connections.getLocalPort();
+    }
+
+    // 在某个路径上注册了监听的会话数
+    public int watchCount(String path) {
+        Set<Long> sessions = server.getZKDatabase().getDataTree().getWatchesByPath().toMap().get(path);
+        return sessions == null ? 0 : sessions.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        connections.shutdown();
+        server.shutdown();
+        try (Stream<Path> files = Files.walk(dataDir.toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.hangerlin.common.bucket;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class HangerBucketTest {
+
+    @Test
+    public void testBatchAndTimedAcquire() throws InterruptedException {
+        HangerBucket bucket = new HangerBucket(4);
+        List<HangerToken> batch = bucket.acquireTokens(3);
+        assertEquals(3, batch.size());
+        HangerToken last = bucket.tryAcquireToken(20, TimeUnit.MILLISECONDS);
+        assertNotNull(last);
+        assertNull(bucket.tryAcquireToken(20, TimeUnit.MILLISECONDS));
+
+        // 需要两个令牌的等待者，归还一个时不会被满足，批量归还后拿到
+        AtomicReference<List<HangerToken>> waited = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                waited.set(bucket.acquireTokens(2));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        waitUntilParked(waiter);
+        bucket.releaseToken(last);
+        Thread.sleep(20);
+        assertNull(waited.get());
+        bucket.releaseTokens(batch);
+        waiter.join(1000);
+        assertEquals(2, waited.get().size());
+        assertEquals(2, bucket.availableTokens());
+    }
+
+    @Test
+    public void testThreadCacheIsReusedAndReclaimedByWaiters() throws InterruptedException {
+        HangerBucket bucket = new HangerBucket(1);
+        HangerToken token = bucket.acquireToken();
+        bucket.releaseToken(token);
+        // 没有等待者时令牌留在当前线程的缓存槽位里，下次直接拿回；缓存中的令牌也计入可用数
+        assertEquals(1, bucket.availableTokens());
+        assertSame(token, bucket.acquireToken());
+        bucket.releaseToken(token);
+
+        // 其他线程等待时从缓存中收回令牌
+        AtomicReference<HangerToken> other = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                other.set(bucket.tryAcquireToken(1, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        thread.join();
+        assertSame(token, other.get());
+    }
+
+    @Test
+    public void testReleaseIntoFullBucketIsDropped() throws InterruptedException {
+        HangerBucket bucket = new HangerBucket(1);
+        HangerToken token = bucket.acquireToken();
+        bucket.releaseToken(token);
+        assertEquals(1, bucket.availableTokens());
+
+        // 桶已满（令牌在缓存中）时多归还的令牌被丢弃，不会进入缓存
+        bucket.releaseToken(new HangerToken("extra", new byte[0]));
+        assertEquals(1, bucket.availableTokens());
+        assertSame(token, bucket.acquireToken());
+        assertNull(bucket.tryAcquireToken(20, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testTokensCachedByFinishedThreadsStayAvailable() throws InterruptedException {
+        HangerBucket bucket = new HangerBucket(4);
+        for (int i = 0; i < 64; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    bucket.releaseToken(bucket.acquireToken());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+            thread.join();
+        }
+        // 槽位数固定，不随线程数增长；退出线程留下的令牌仍然可见、可以不等待地取走
+        assertTrue(bucket.cacheStripes() <= 4);
+        assertEquals(4, bucket.availableTokens());
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(bucket.tryAcquireToken(0, TimeUnit.MILLISECONDS));
+        }
+        assertEquals(0, bucket.availableTokens());
+    }
+
+    @Test
+    public void testConcurrentWorkersNeverExceedCapacity() throws InterruptedException {
+        int capacity = 3;
+        HangerBucket bucket = new HangerBucket(capacity);
+        AtomicInteger inUse = new AtomicInteger();
+        AtomicInteger maxInUse = new AtomicInteger();
+        Set<HangerToken> seen = ConcurrentHashMap.newKeySet();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int id = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20_000; i++) {
+                        if (id % 2 == 0) {
+                            HangerToken token = bucket.acquireToken();
+                            seen.add(token);
+                            maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+                            inUse.decrementAndGet();
+                            bucket.releaseToken(token);
+                        } else {
+                            List<HangerToken> tokens = bucket.acquireTokens(2);
+                            maxInUse.accumulateAndGet(inUse.addAndGet(2), Math::max);
+                            inUse.addAndGet(-2);
+                            bucket.releaseTokens(tokens);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join(30_000);
+            assertFalse(worker.isAlive());
+        }
+        assertTrue(maxInUse.get() <= capacity);
+        assertEquals(capacity, seen.size());
+        // 所有令牌都还在（队列或缓存中），一次能全部取出
+        assertEquals(capacity, bucket.acquireTokens(capacity).size());
+    }
+
+    private static void waitUntilParked(Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.hangerlin.common.bucket;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class HangerRateLimiterTest {
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void testBurstThenLazyRefillAtConfiguredRate() {
+        HangerRateLimiter limiter = new HangerRateLimiter(10, 5, clock::get); // 每 100 毫秒一个令牌
+        assertEquals(5, limiter.availablePermits());
+        assertTrue(limiter.tryAcquire(3));
+        assertTrue(limiter.tryAcquire(2));
+        assertFalse(limiter.tryAcquire());
+
+        advance(250);
+        assertEquals(2, limiter.availablePermits());
+        // 不足时不会部分扣减
+        assertFalse(limiter.tryAcquire(3));
+        assertTrue(limiter.tryAcquire(2));
+        assertFalse(limiter.tryAcquire());
+
+        // 空闲再久也只能攒满 burst 个
+        advance(10_000);
+        assertEquals(5, limiter.availablePermits());
+        assertTrue(limiter.tryAcquire(5));
+        assertFalse(limiter.tryAcquire());
+    }
+
+    private void advance(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
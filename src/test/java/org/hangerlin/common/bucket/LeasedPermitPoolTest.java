@@ -0,0 +1,151 @@
+package org.hangerlin.common.bucket;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LeasedPermitPoolTest {
+
+    @Test
+    public void testPrefetchesInBatchesAndReturnsSurplus() {
+        LocalPermitStore store = new LocalPermitStore(10);
+        AtomicInteger remoteCalls = new AtomicInteger();
+        PermitStore counting = new PermitStore() {
+            @Override
+            public Grant lease(String node, int permits, long leaseMillis) {
+                remoteCalls.incrementAndGet();
+                return store.lease(node, permits, leaseMillis);
+            }
+
+            @Override
+            public int release(String node, int permits, long leaseMillis) {
+                remoteCalls.incrementAndGet();
+                return store.release(node, permits, leaseMillis);
+            }
+
+            @Override
+            public boolean renew(String node, long leaseMillis) {
+                return store.renew(node, leaseMillis);
+            }
+
+            @Override
+            public int available() {
+                return store.available();
+            }
+        };
+        try (LeasedPermitPool pool = new LeasedPermitPool(counting, "node-a", 2, 60_000)) {
+            List<HangerToken> tokens = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                HangerToken token = pool.tryAcquireToken();
+                assertEquals("node-a", token.getNodeName());
+                tokens.add(token);
+            }
+            // 5 个令牌只租了 3 批
+            assertEquals(3, remoteCalls.get());
+            assertEquals(4, store.available());
+
+            // 本地许可超过两批时只保留一批，多出来的一次还回去
+            for (HangerToken token : tokens) {
+                pool.releaseToken(token);
+            }
+            assertEquals(4, remoteCalls.get());
+            assertEquals(3, pool.localPermits());
+            assertEquals(7, store.available());
+        }
+        // 关闭时本地许可全部归还
+        assertEquals(10, store.available());
+    }
+
+    @Test
+    public void testPermitsOfSilentNodeAreReclaimedAndItsTokensDropped() throws InterruptedException {
+        LocalPermitStore store = new LocalPermitStore(4);
+        AtomicBoolean partitioned = new AtomicBoolean();
+        PermitStore viewOfA = renewPartitioned(store, partitioned);
+        try (LeasedPermitPool a = new LeasedPermitPool(viewOfA, "node-a", 4, 150);
+             LeasedPermitPool b = new LeasedPermitPool(store, "node-b", 2, 150)) {
+            HangerToken held = a.tryAcquireToken();
+            assertNotNull(held);
+            assertNull(b.tryAcquireToken());
+
+            partitioned.set(true);
+            Thread.sleep(250);
+            // node-a 的租约过期，许可被收回给 node-b
+            HangerToken first = b.tryAcquireToken();
+            HangerToken second = b.tryAcquireToken();
+            assertNotNull(first);
+            assertNotNull(second);
+            assertEquals("node-b", first.getNodeName());
+
+            // node-a 恢复后发现租约已经丢失，旧令牌的归还被丢弃，不会超发
+            partitioned.set(false);
+            Thread.sleep(120);
+            assertEquals(0, a.localPermits());
+            a.releaseToken(held);
+            assertEquals(0, a.localPermits());
+            assertEquals(2, store.available());
+            b.releaseToken(first);
+            b.releaseToken(second);
+        }
+        assertEquals(4, store.available());
+    }
+
+    @Test
+    public void testRefillBeforeRenewAfterReclaimDropsTokensOfLostLease() throws InterruptedException {
+        LocalPermitStore store = new LocalPermitStore(2);
+        AtomicBoolean partitioned = new AtomicBoolean();
+        try (LeasedPermitPool a = new LeasedPermitPool(renewPartitioned(store, partitioned), "node-a", 1, 150)) {
+            HangerToken held = a.tryAcquireToken();
+            assertNotNull(held);
+            assertEquals(1, store.available());
+
+            partitioned.set(true);
+            Thread.sleep(250);
+            // 续租线程还没发现租约丢失，补充许可先一步租到了新的持有
+            HangerToken fresh = a.tryAcquireToken();
+            assertNotNull(fresh);
+            assertEquals(1, store.available());
+
+            // 旧令牌属于已经被收回的租约，归还时丢弃，本地许可不会超过实际租到的数量
+            a.releaseToken(held);
+            assertEquals(0, a.localPermits());
+            a.releaseToken(fresh);
+            assertEquals(1, a.localPermits());
+            assertEquals(1, store.available());
+            partitioned.set(false);
+        }
+        assertEquals(2, store.available());
+    }
+
+    // node 被网络隔离时续租请求到不了 PermitStore，租用和归还不受影响
+    private static PermitStore renewPartitioned(PermitStore store, AtomicBoolean partitioned) {
+        return new PermitStore() {
+            @Override
+            public Grant lease(String node, int permits, long leaseMillis) {
+                return store.lease(node, permits, leaseMillis);
+            }
+
+            @Override
+            public int release(String node, int permits, long leaseMillis) {
+                return store.release(node, permits, leaseMillis);
+            }
+
+            @Override
+            public boolean renew(String node, long leaseMillis) {
+                if (partitioned.get()) {
+                    throw new IllegalStateException("partitioned");
+                }
+                return store.renew(node, leaseMillis);
+            }
+
+            @Override
+            public int available() {
+                return store.available();
+            }
+        };
+    }
+}
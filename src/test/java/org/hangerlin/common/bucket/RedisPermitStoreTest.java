@@ -0,0 +1,80 @@
+package org.hangerlin.common.bucket;
+
+import org.hangerlin.common.RespStandIn;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RedisPermitStoreTest {
+    private RespStandIn redis;
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate template;
+
+    @Before
+    public void setUp() throws Exception {
+        redis = new RespStandIn();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", redis.port()));
+        connectionFactory.afterPropertiesSet();
+        template = new StringRedisTemplate(connectionFactory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connectionFactory.destroy();
+        redis.close();
+    }
+
+    @Test
+    public void testNodesShareThePoolWithOneRoundTripPerBatch() {
+        RedisPermitStore store = new RedisPermitStore("pool:api", template, 6);
+        try (LeasedPermitPool a = new LeasedPermitPool(store, "node-a", 2, 60_000);
+             LeasedPermitPool b = new LeasedPermitPool(new RedisPermitStore("pool:api", template, 6), "node-b", 2, 60_000)) {
+            redis.resetCounters();
+            List<HangerToken> tokens = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                tokens.add(a.tryAcquireToken());
+            }
+            assertEquals(2, redis.count("EVALSHA")); // 每批一次脚本调用
+            HangerToken first = b.tryAcquireToken();
+            HangerToken second = b.tryAcquireToken();
+            assertNotNull(first);
+            assertNotNull(second);
+            assertNull(b.tryAcquireToken());
+            assertEquals("4", redis.hash("{pool:api}:held").get("node-a"));
+            assertEquals(0, store.available());
+
+            for (HangerToken token : tokens) {
+                a.releaseToken(token);
+            }
+            // 归还的许可留在本地，不超过两批时不访问 Redis
+            assertEquals(4, a.localPermits());
+            assertEquals(0, store.available());
+            b.releaseToken(first);
+            b.releaseToken(second);
+        }
+        assertEquals(6, store.available());
+        assertTrue(redis.hash("{pool:api}:expiry").isEmpty());
+    }
+
+    @Test
+    public void testLeaseReportsHoldingCreatedAfterReclaim() throws InterruptedException {
+        RedisPermitStore store = new RedisPermitStore("pool:api", template, 4);
+        assertTrue(store.lease("node-a", 2, 100).newHolding);
+        assertFalse(store.lease("node-a", 1, 100).newHolding);
+
+        // 租约过期被收回后再租用，是新建的持有
+        Thread.sleep(150);
+        PermitStore.Grant grant = store.lease("node-a", 1, 60_000);
+        assertEquals(1, grant.permits);
+        assertTrue(grant.newHolding);
+        assertEquals("1", redis.hash("{pool:api}:held").get("node-a"));
+    }
+}
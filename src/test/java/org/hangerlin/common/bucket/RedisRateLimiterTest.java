@@ -0,0 +1,51 @@
+package org.hangerlin.common.bucket;
+
+import org.hangerlin.common.RespStandIn;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import static org.junit.Assert.*;
+
+public class RedisRateLimiterTest {
+    private RespStandIn redis;
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate template;
+
+    @Before
+    public void setUp() throws Exception {
+        redis = new RespStandIn();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", redis.port()));
+        connectionFactory.afterPropertiesSet();
+        template = new StringRedisTemplate(connectionFactory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connectionFactory.destroy();
+        redis.close();
+    }
+
+    @Test
+    public void testNodesShareOneLimitWithOneRoundTripPerRequest() throws InterruptedException {
+        // 两个节点共享每秒 20 个、突发 4 个的限额
+        RedisRateLimiter nodeA = new RedisRateLimiter("api:orders", template, 20, 4);
+        RedisRateLimiter nodeB = new RedisRateLimiter("api:orders", template, 20, 4);
+        assertTrue(nodeA.tryAcquire(2));
+        redis.resetCounters();
+        assertTrue(nodeB.tryAcquire());
+        assertTrue(nodeA.tryAcquire());
+        assertFalse(nodeB.tryAcquire());
+        assertFalse(nodeA.tryAcquire());
+        assertEquals(4, redis.roundTrips());
+
+        Thread.sleep(120); // 补充两个令牌
+        assertTrue(nodeB.tryAcquire(2));
+        assertFalse(nodeA.tryAcquire());
+        // key 在桶装满时过期
+        assertTrue(redis.pttl("api:orders") > 0);
+    }
+}
@@ -0,0 +1,141 @@
+package org.hangerlin.common.lock;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class FairLockTest {
+    private final FairLock lock = new FairLock();
+
+    @Test
+    public void testLockIsHandedOffInArrivalOrder() throws InterruptedException {
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        lock.lock();
+        for (int i = 0; i < 5; i++) {
+            int id = i;
+            Thread thread = new Thread(() -> {
+                lock.lock();
+                try {
+                    order.add(id);
+                } finally {
+                    lock.unlock();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+            // 等上一个线程在队列中挂起后再启动下一个，保证入队顺序
+            waitUntilParked(thread);
+        }
+        // 锁被持有期间新来的 tryLock 不能插队
+        assertFalse(runAndGet(lock::tryLock));
+        lock.unlock();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(List.of(0, 1, 2, 3, 4), order);
+    }
+
+    @Test
+    public void testTimedAndInterruptibleAcquireLeaveQueueCleanly() throws InterruptedException {
+        lock.lock();
+        lock.lock(); // 重入
+        assertFalse(runAndGet(() -> {
+            try {
+                return lock.tryLock(50, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return true;
+            }
+        }));
+
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread waiter = new Thread(() -> {
+            try {
+                lock.lockInterruptibly();
+                lock.unlock();
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        });
+        waiter.start();
+        waitUntilParked(waiter);
+        waiter.interrupt();
+        waiter.join();
+        assertTrue(interrupted.get());
+
+        // 取消的节点被跳过，释放后其他线程可以立即拿到锁
+        lock.unlock();
+        assertFalse("Still held once after one unlock", runAndGet(lock::tryLock));
+        lock.unlock();
+        assertTrue(runAndGet(() -> {
+            boolean acquired = lock.tryLock();
+            if (acquired) {
+                lock.unlock();
+            }
+            return acquired;
+        }));
+    }
+
+    @Test
+    public void testConditionReleasesAndRestoresReentrantHolds() throws InterruptedException {
+        Condition ready = lock.newCondition();
+        CountDownLatch awaiting = new CountDownLatch(1);
+        AtomicBoolean signalled = new AtomicBoolean();
+        Thread waiter = new Thread(() -> {
+            lock.lock();
+            lock.lock();
+            try {
+                awaiting.countDown();
+                signalled.set(ready.await(5, TimeUnit.SECONDS));
+                lock.unlock();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        });
+        waiter.start();
+        assertTrue(awaiting.await(1, TimeUnit.SECONDS));
+
+        // await 完全释放了两层重入，这里可以拿到锁
+        lock.lock();
+        try {
+            ready.signal();
+        } finally {
+            lock.unlock();
+        }
+        waiter.join(1000);
+        assertTrue(signalled.get());
+        assertFalse(waiter.isAlive());
+
+        lock.lock();
+        try {
+            assertFalse(ready.await(20, TimeUnit.MILLISECONDS));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean runAndGet(BooleanSupplier action) throws InterruptedException {
+        AtomicBoolean result = new AtomicBoolean();
+        Thread thread = new Thread(() -> result.set(action.getAsBoolean()));
+        thread.start();
+        thread.join();
+        return result.get();
+    }
+
+    private static void waitUntilParked(Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+    }
+}
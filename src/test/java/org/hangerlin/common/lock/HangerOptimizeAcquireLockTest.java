@@ -0,0 +1,80 @@
+package org.hangerlin.common.lock;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class HangerOptimizeAcquireLockTest {
+
+    @Test
+    public void testParkedWaiterIsWokenOnRelease() throws InterruptedException {
+        HangerOptimizeAcquireLock lock = new HangerOptimizeAcquireLock(5, 30, TimeUnit.SECONDS);
+        assertTrue(lock.tryLock());
+
+        AtomicLong acquiredAt = new AtomicLong();
+        Thread waiter = new Thread(() -> {
+            if (lock.tryLock()) {
+                acquiredAt.set(System.nanoTime());
+                lock.unlock();
+            }
+        });
+        waiter.start();
+        while (waiter.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+        long releasedAt = System.nanoTime();
+        lock.unlock();
+        waiter.join();
+
+        // 以前固定休眠 100ms，现在释放时直接唤醒等待者
+        assertTrue(acquiredAt.get() > 0);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(acquiredAt.get() - releasedAt) < 50);
+    }
+
+    @Test
+    public void testLeaseExpiryReleasesLockOnSharedScheduler() throws InterruptedException {
+        HangerOptimizeAcquireLock lock = new HangerOptimizeAcquireLock(1, 300, TimeUnit.MILLISECONDS,
+                HangerOptimizeAcquireLock.AcquireStrategy.BACKOFF, 0);
+        CountDownLatch leased = new CountDownLatch(1);
+        CountDownLatch stolen = new CountDownLatch(1);
+        AtomicBoolean secondOwner = new AtomicBoolean();
+        Thread first = new Thread(() -> {
+            lock.tryLock();
+            leased.countDown();
+            try {
+                stolen.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            lock.unlock(); // 租期已过，不能释放其他线程拿到的锁
+        });
+        first.start();
+        leased.await();
+
+        // 租期到期后由共享调度线程释放
+        Thread.sleep(400);
+        Thread second = new Thread(() -> secondOwner.set(lock.tryLock()));
+        second.start();
+        second.join();
+        assertTrue(secondOwner.get());
+
+        stolen.countDown();
+        first.join();
+        assertFalse("The stale owner's unlock must not release the new lease",
+                runAndGet(lock::tryLock));
+    }
+
+    private static boolean runAndGet(BooleanSupplier action) throws InterruptedException {
+        AtomicBoolean result = new AtomicBoolean();
+        Thread thread = new Thread(() -> result.set(action.getAsBoolean()));
+        thread.start();
+        thread.join();
+        return result.get();
+    }
+}
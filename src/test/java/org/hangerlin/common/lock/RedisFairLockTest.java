@@ -0,0 +1,176 @@
+package org.hangerlin.common.lock;
+
+import org.hangerlin.common.RespStandIn;
+import org.hangerlin.common.watcher.LocalUnlockBroker;
+import org.hangerlin.common.watcher.UnlockListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.*;
+
+public class RedisFairLockTest {
+    private RespStandIn redis;
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate template;
+    private final List<String> published = Collections.synchronizedList(new ArrayList<>());
+    // 代替 Redis pub/sub，所有节点共用；记录发布过的 key
+    private final LocalUnlockBroker broker = new LocalUnlockBroker() {
+        @Override
+        public void publish(String key) {
+            published.add(key);
+            super.publish(key);
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        redis = new RespStandIn();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", redis.port()));
+        connectionFactory.afterPropertiesSet();
+        template = new StringRedisTemplate(connectionFactory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connectionFactory.destroy();
+        redis.close();
+    }
+
+    @Test
+    public void testWaitersOnDifferentNodesAcquireInArrivalOrder() throws InterruptedException {
+        List<RedisFairLock> nodes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            nodes.add(new RedisFairLock("hot", template, broker, 30));
+        }
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        nodes.get(0).lock();
+        for (int i = 0; i < 4; i++) {
+            RedisFairLock node = nodes.get(i);
+            int id = i;
+            Thread thread = new Thread(() -> {
+                node.lock();
+                try {
+                    order.add(id);
+                } finally {
+                    node.unlock();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+            waitUntilParked(thread);
+        }
+        // 有人排队时 tryLock 不插队
+        assertFalse(nodes.get(1).tryLock());
+        redis.resetCounters();
+        nodes.get(0).unlock();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        assertEquals(List.of(0, 1, 2, 3), order);
+        // 每个等待者只被定向唤醒一次：一次抢锁加一次释放，没有轮询和失败的重试
+        assertEquals(1 + 4 * 2, redis.count("EVALSHA"));
+        assertNull(redis.get("hot"));
+        // 通知用带前缀的等待者标识，不会被当成锁 key；等待者离开后 broker 上不再有订阅
+        assertEquals(4, published.size());
+        assertTrue(published.stream().allMatch(key -> key.startsWith(RedisFairLock.WAITER_PREFIX)));
+        assertEquals(0, broker.subscribedKeys());
+    }
+
+    @Test
+    public void testRenewalFailureMarksLockLost() throws InterruptedException {
+        RedisFairLock lock = new RedisFairLock("hot", template, broker, 1);
+        lock.lock();
+        lock.lock();
+        assertTrue(lock.isHeldByCurrentThread());
+
+        // 锁过期后被其他节点拿走，下一次续期发现不再是持有者
+        redis.set("hot", "other-node:1");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (lock.isHeldByCurrentThread()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        try {
+            lock.unlock();
+            fail("unlock of a lost lock should fail");
+        } catch (IllegalMonitorStateException expected) {
+            // 重入的持有一起丢弃
+        }
+        assertEquals("other-node:1", redis.get("hot"));
+
+        // 锁释放后可以重新拿到
+        redis.del("hot");
+        assertTrue(lock.tryLock());
+        assertTrue(lock.isHeldByCurrentThread());
+        lock.unlock();
+        assertFalse(lock.isHeldByCurrentThread());
+        assertNull(redis.get("hot"));
+    }
+
+    @Test
+    public void testStaleWaiterAtHeadIsEvictedLazily() {
+        // 宕机节点留下的等待者，超时时间已过
+        redis.list("hot:queue").add("crashed:1");
+        redis.zset("hot:timeout").put("crashed:1", (double) (System.currentTimeMillis() - 1));
+
+        RedisFairLock lock = new RedisFairLock("hot", template, broker, 30);
+        assertTrue(lock.tryLock());
+        assertEquals(0, redis.list("hot:queue").size());
+        lock.unlock();
+    }
+
+    @Test
+    public void testTimedOutWaiterLeavesQueue() throws InterruptedException {
+        RedisFairLock owner = new RedisFairLock("hot", template, broker, 30);
+        RedisFairLock waiter = new RedisFairLock("hot", template, broker, 30);
+        owner.lock();
+        assertFalse(waiter.tryLock(100, TimeUnit.MILLISECONDS));
+        assertEquals(0, redis.list("hot:queue").size());
+        owner.unlock();
+        assertTrue(waiter.tryLock());
+        waiter.unlock();
+    }
+
+    @Test
+    public void testWaiterLeavesQueueWhenSubscribeFails() {
+        LocalUnlockBroker failing = new LocalUnlockBroker() {
+            @Override
+            public void subscribe(String key, UnlockListener listener) {
+                throw new IllegalStateException("broker down");
+            }
+        };
+        RedisFairLock owner = new RedisFairLock("hot", template, broker, 30);
+        RedisFairLock waiter = new RedisFairLock("hot", template, failing, 30);
+        owner.lock();
+        try {
+            waiter.lock();
+            fail("subscribe failure must propagate");
+        } catch (IllegalStateException expected) {
+            // 已经入队的等待者被移出队列，不会挡住后面的等待者
+            assertEquals(0, redis.list("hot:queue").size());
+            assertEquals(0, redis.zset("hot:timeout").size());
+        }
+        owner.unlock();
+        assertTrue(owner.tryLock());
+        owner.unlock();
+    }
+
+    // 等到线程停在锁自己的 park 上（等待 Redis 回复时也是 TIMED_WAITING，不能只看线程状态）
+    private static void waitUntilParked(Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.TIMED_WAITING
+                || !(LockSupport.getBlocker(thread) instanceof RedisFairLock)) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.hangerlin.common.metrics;
+
+import org.hangerlin.common.lock.FairLock;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class InMemoryLockMetricsTest {
+
+    @Test
+    public void testHistogramPercentilesStayWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000, histogram.getMax());
+        assertEquals(5000.5, histogram.getMean(), 0.001);
+        // 每个 2 的幂区间分成 8 个桶，相对误差不超过 12.5%
+        assertEquals(5000, histogram.getPercentile(50), 5000 * 0.125);
+        assertEquals(9900, histogram.getPercentile(99), 9900 * 0.125);
+        assertEquals(10_000, histogram.getPercentile(100));
+        for (long value : new long[]{0, 7, 8, 9, 1000, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(value <= LatencyHistogram.upperBound(index));
+            assertTrue(index == 0 || value > LatencyHistogram.upperBound(index - 1));
+        }
+    }
+
+    @Test
+    public void testRecordingDoesNotAllocate() {
+        InMemoryLockMetrics metrics = new InMemoryLockMetrics();
+        FairLock lock = new FairLock(metrics);
+        Runnable cycle = () -> {
+            for (int i = 0; i < 100_000; i++) {
+                lock.lock();
+                lock.unlock();
+                metrics.onRenewal(i);
+            }
+        };
+        cycle.run(); // 预热
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        cycle.run();
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        // 每次加锁只有 FairLock 自己的队列节点（约 24 字节），指标本身不分配
+        assertTrue("allocated " + allocated + " bytes", allocated < 100_000 * 40L);
+        assertEquals(200_000, metrics.getAcquires());
+        // 没有竞争时持有时间按 HOLD_TIME_SAMPLE 采样
+        assertEquals(200_000 / FairLock.HOLD_TIME_SAMPLE, metrics.getHoldTime().getCount());
+        assertEquals(200_000, metrics.getRenewals());
+    }
+
+    @Test
+    public void testFairLockReportsContentionAndQueueDepth() throws InterruptedException {
+        InMemoryLockMetrics metrics = new InMemoryLockMetrics();
+        FairLock lock = new FairLock(metrics);
+        lock.lock();
+        Thread first = new Thread(lock::lock);
+        first.start();
+        while (first.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        Thread second = new Thread(() -> {
+            try {
+                lock.tryLock(30, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        second.start();
+        second.join();
+        Thread.sleep(20);
+        lock.unlock();
+        first.join();
+
+        assertEquals(2, metrics.getAcquires());
+        assertEquals(1, metrics.getAcquireFailures());
+        assertEquals(2, metrics.getContended());
+        assertEquals(2, metrics.getMaxQueueDepth());
+        assertEquals(1, metrics.getHoldTime().getCount());
+        // 第一个等待者至少等了第二个等待者超时的 30 毫秒
+        assertTrue(metrics.getAcquireLatency().getMax() >= TimeUnit.MILLISECONDS.toNanos(30));
+    }
+}
@@ -0,0 +1,141 @@
+package org.hangerlin.common.multiLock;
+
+import org.hangerlin.common.lock.FairLock;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.Assert.*;
+
+public class HangerDistributedLockTest {
+
+    @Test
+    public void testQuorumReturnsAtSlowestNeededNodeAndReleasesStragglers() throws Exception {
+        List<NodeLock> nodes = nodes(10, 10, 10, 300, 300);
+        HangerDistributedLock lock = new HangerDistributedLock(new ArrayList<>(nodes), 2, 3);
+
+        long start = System.nanoTime();
+        long validity = lock.tryLockQuorum(1000, 500, TimeUnit.MILLISECONDS);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // 依次加锁需要 630 毫秒，并行时只取决于第三快的节点
+        assertTrue("elapsed " + elapsed, elapsed < 250);
+        assertTrue(validity > 0 && validity <= 1000 - elapsed - 12);
+        assertEquals(3, held(nodes));
+
+        // 两个慢节点在返回之后才拿到锁，在后台释放
+        Thread.sleep(400);
+        assertEquals(3, held(nodes));
+        lock.unlock();
+        assertEquals(0, held(nodes));
+    }
+
+    @Test
+    public void testFailsFastOnceTooManyNodesRefuse() throws Exception {
+        List<NodeLock> nodes = nodes(300, 300, 0, 0, 0);
+        for (int i = 2; i < 5; i++) {
+            nodes.get(i).permit.acquire(); // 被其他客户端持有
+        }
+        HangerDistributedLock lock = new HangerDistributedLock(new ArrayList<>(nodes), 2, 3);
+
+        long start = System.nanoTime();
+        assertEquals(0, lock.tryLockQuorum(1000, 500, TimeUnit.MILLISECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 200);
+        Thread.sleep(400);
+        // 放弃之后才拿到的两把锁也被释放
+        assertEquals(3, held(nodes));
+
+        // 加锁耗时超过租期时，拿到的锁没有剩余有效时间，同样失败并释放
+        List<NodeLock> slow = nodes(60, 60, 60);
+        HangerDistributedLock shortLease = new HangerDistributedLock(new ArrayList<>(slow), 1, 2);
+        assertEquals(0, shortLease.tryLockQuorum(50, 200, TimeUnit.MILLISECONDS));
+        Thread.sleep(100);
+        assertEquals(0, held(slow));
+    }
+
+    @Test
+    public void testThreadOwnedLocksAreReleasedOnTheirAcquiringThreads() throws Exception {
+        List<FairLock> fairLocks = List.of(new FairLock(), new FairLock(), new FairLock());
+        HangerDistributedLock lock = new HangerDistributedLock(new ArrayList<>(fairLocks), 1, 2);
+
+        assertTrue(lock.tryLockQuorum(1000, 500, TimeUnit.MILLISECONDS) > 0);
+        // 子锁由加锁线程持有，调用方线程拿不到；多余的第三把可能已经被释放
+        int held = 0;
+        for (FairLock fairLock : fairLocks) {
+            if (fairLock.tryLock()) {
+                fairLock.unlock();
+            } else {
+                held++;
+            }
+        }
+        assertTrue(held >= 2);
+
+        // unlock 在调用方线程上执行，子锁回到各自的加锁线程上释放，unlock 返回时已经释放完
+        lock.unlock();
+        for (FairLock fairLock : fairLocks) {
+            assertTrue(fairLock.tryLock());
+            fairLock.unlock();
+        }
+    }
+
+    private static List<NodeLock> nodes(long... latencies) {
+        List<NodeLock> nodes = new ArrayList<>();
+        for (long latency : latencies) {
+            nodes.add(new NodeLock(latency));
+        }
+        return nodes;
+    }
+
+    private static int held(List<NodeLock> nodes) {
+        int held = 0;
+        for (NodeLock node : nodes) {
+            held += 1 - node.permit.availablePermits();
+        }
+        return held;
+    }
+
+    // 模拟一个节点上的锁：不绑定线程，加锁有固定的网络延迟
+    private static class NodeLock implements Lock {
+        final Semaphore permit = new Semaphore(1);
+        final long latencyMillis;
+
+        NodeLock(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            Thread.sleep(latencyMillis);
+            return permit.tryAcquire();
+        }
+
+        @Override
+        public boolean tryLock() {
+            return permit.tryAcquire();
+        }
+
+        @Override
+        public void unlock() {
+            permit.release();
+        }
+
+        @Override
+        public void lock() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void lockInterruptibly() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.hangerlin.common.readwritelock;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class HangerReadWriteLockTest {
+    private final HangerReadWriteLock lock = new HangerReadWriteLock();
+
+    @Test
+    public void testWriterOnOneKeyDoesNotBlockOtherKeys() throws InterruptedException {
+        lock.acquireWriteLock("a");
+        try {
+            CountDownLatch acquired = new CountDownLatch(2);
+            Thread writer = new Thread(() -> {
+                lock.acquireWriteLock("b");
+                acquired.countDown();
+                lock.releaseWriteLock("b");
+            });
+            Thread reader = new Thread(() -> {
+                lock.acquireReadLock("c");
+                acquired.countDown();
+                lock.releaseReadLock("c");
+            });
+            writer.start();
+            reader.start();
+            assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        } finally {
+            lock.releaseWriteLock("a");
+        }
+    }
+
+    @Test
+    public void testReaderWaitsForWriterOnSameKey() throws InterruptedException {
+        lock.acquireWriteLock("key");
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            lock.acquireReadLock("key");
+            acquired.countDown();
+            lock.releaseReadLock("key");
+        });
+        reader.start();
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+
+        lock.releaseWriteLock("key");
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testReentrantReadsOnSeveralKeysAndUpgrade() throws InterruptedException {
+        for (String key : new String[]{"a", "b", "c"}) {
+            lock.acquireReadLock(key);
+            lock.acquireReadLock(key);
+        }
+        lock.releaseReadLock("a");
+        lock.releaseReadLock("b");
+
+        // 每个 key 上还剩一层读锁，其他线程的写锁必须等待
+        CountDownLatch written = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            lock.acquireWriteLock("a");
+            written.countDown();
+            lock.releaseWriteLock("a");
+        });
+        writer.start();
+        assertFalse(written.await(100, TimeUnit.MILLISECONDS));
+        lock.releaseReadLock("a");
+        assertTrue(written.await(1, TimeUnit.SECONDS));
+
+        // 升级会释放该 key 上全部重入的读锁
+        lock.upgradeReadToWriteLock("c");
+        assertEquals(0, lock.tryOptimisticRead("c"));
+        lock.acquireWriteLock("c");
+        lock.releaseWriteLock("c");
+        lock.releaseWriteLock("c");
+        assertNotEquals(0, lock.tryOptimisticRead("c"));
+        lock.releaseReadLock("b");
+    }
+
+    @Test
+    public void testOptimisticReadIsInvalidatedByWrite() throws InterruptedException {
+        long stamp = lock.tryOptimisticRead("config");
+        assertNotEquals(0, stamp);
+
+        // 读锁和其他 key 上的写锁都不影响乐观读
+        lock.acquireReadLock("config");
+        assertTrue(lock.validate("config", stamp));
+        lock.releaseReadLock("config");
+        runInOtherThread(() -> {
+            lock.acquireWriteLock("other");
+            lock.releaseWriteLock("other");
+        });
+        stamp = lock.tryOptimisticRead("config");
+        assertTrue(lock.validate("config", stamp));
+
+        runInOtherThread(() -> {
+            lock.acquireWriteLock("config");
+            assertEquals("No optimistic stamp while the key is write-locked", 0, lock.tryOptimisticRead("config"));
+            lock.releaseWriteLock("config");
+        });
+        assertFalse(lock.validate("config", stamp));
+        assertTrue(lock.validate("config", lock.tryOptimisticRead("config")));
+    }
+
+    @Test
+    public void testOptimisticReadDoesNotTrackKeys() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            assertTrue(lock.validate("key-" + i, lock.tryOptimisticRead("key-" + i)));
+        }
+        assertEquals(0, lock.trackedKeys());
+
+        // 读锁释放后 key 的状态被移除，之前取得的版本号仍然有效
+        long stamp = lock.tryOptimisticRead("config");
+        lock.acquireReadLock("config");
+        lock.releaseReadLock("config");
+        assertEquals(0, lock.trackedKeys());
+        assertTrue(lock.validate("config", stamp));
+
+        // 写锁释放后状态同样被移除，但之前的版本号失效
+        runInOtherThread(() -> {
+            lock.acquireWriteLock("config");
+            lock.releaseWriteLock("config");
+        });
+        assertEquals(0, lock.trackedKeys());
+        assertFalse(lock.validate("config", stamp));
+        assertTrue(lock.validate("config", lock.tryOptimisticRead("config")));
+        assertEquals(0, lock.trackedKeys());
+    }
+
+    @Test
+    public void testWritesOnUnrelatedKeysKeepStampsValid() throws InterruptedException {
+        long stamp = lock.tryOptimisticRead("a");
+        HangerReadWriteLock other = new HangerReadWriteLock();
+        runInOtherThread(() -> {
+            // 同一实例上的其他 key（不同分段）以及另一个实例上的同名 key
+            lock.acquireWriteLock("b");
+            lock.releaseWriteLock("b");
+            other.acquireWriteLock("a");
+            other.releaseWriteLock("a");
+        });
+        assertTrue(lock.validate("a", stamp));
+
+        runInOtherThread(() -> {
+            lock.acquireWriteLock("a");
+            lock.releaseWriteLock("a");
+        });
+        assertFalse(lock.validate("a", stamp));
+    }
+
+    private static void runInOtherThread(Runnable action) throws InterruptedException {
+        Thread thread = new Thread(action);
+        thread.start();
+        thread.join();
+    }
+}
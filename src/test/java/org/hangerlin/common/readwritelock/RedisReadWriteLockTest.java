@@ -0,0 +1,146 @@
+package org.hangerlin.common.readwritelock;
+
+import org.hangerlin.common.RespStandIn;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RedisReadWriteLockTest {
+    private RespStandIn redis;
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate template;
+    private final List<RedisReadWriteLock> nodes = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        redis = new RespStandIn();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", redis.port()));
+        connectionFactory.afterPropertiesSet();
+        template = new StringRedisTemplate(connectionFactory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        nodes.forEach(RedisReadWriteLock::close);
+        connectionFactory.destroy();
+        redis.close();
+    }
+
+    @Test
+    public void testReadersOnTwoNodesShareTheLockAndBlockWriter() throws InterruptedException {
+        RedisReadWriteLock nodeA = node(30);
+        RedisReadWriteLock nodeB = node(30);
+        nodeA.acquireReadLock("config");
+        nodeB.acquireReadLock("config");
+        nodeB.acquireReadLock("config");
+
+        CountDownLatch written = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            nodeA.acquireWriteLock("config");
+            written.countDown();
+            nodeA.releaseWriteLock("config");
+        });
+        writer.start();
+        assertFalse(written.await(200, TimeUnit.MILLISECONDS));
+
+        nodeA.releaseReadLock("config");
+        nodeB.releaseReadLock("config");
+        assertFalse("One reentrant read hold is still left on node B", written.await(200, TimeUnit.MILLISECONDS));
+        nodeB.releaseReadLock("config");
+        assertTrue(written.await(1, TimeUnit.SECONDS));
+        writer.join();
+        assertNull("The hash is removed once nobody holds the lock", redis.get("config"));
+        assertEquals(-2, redis.pttl("config"));
+    }
+
+    @Test
+    public void testEachOperationIsOneScriptCall() throws InterruptedException {
+        RedisReadWriteLock lock = node(30);
+        lock.acquireReadLock("warm-up");
+        lock.upgradeReadToWriteLock("warm-up");
+        lock.releaseWriteLock("warm-up");
+        lock.acquireReadLock("warm-up");
+        lock.releaseReadLock("warm-up");
+        redis.resetCounters();
+
+        lock.acquireReadLock("key");
+        lock.acquireReadLock("key");
+        lock.upgradeReadToWriteLock("key");
+        lock.acquireWriteLock("key");
+        lock.releaseWriteLock("key");
+        lock.releaseWriteLock("key");
+
+        // 升级是释放读锁和抢写锁两次调用，其余操作各一次
+        assertEquals(7, redis.count("EVALSHA"));
+        assertEquals(0, redis.count("EVAL"));
+        assertEquals(7, redis.roundTrips());
+    }
+
+    @Test
+    public void testOneRenewalCallCoversAllHoldsOnANode() throws InterruptedException {
+        RedisReadWriteLock lock = node(1);
+        for (int i = 0; i < 20; i++) {
+            lock.acquireReadLock("key-" + i);
+        }
+        redis.resetCounters();
+        Thread.sleep(1500);
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue(redis.pttl("key-" + i) > 0);
+        }
+        // 每三分之一 ttl 一次脚本调用，而不是每个 key 一次
+        assertTrue(redis.count("EVALSHA") + redis.count("EVAL") <= 6);
+    }
+
+    @Test
+    public void testRenewalIsGroupedByClusterSlot() {
+        List<String> keys = List.of("{user:1}:profile", "{user:1}:orders", "{user:2}:profile", "config");
+        // 单机时所有 key 一次调用；集群时每个哈希槽一次调用，避免 CROSSSLOT
+        assertEquals(1, RedisReadWriteLock.bySlot(keys, false).size());
+        Collection<List<String>> slots = RedisReadWriteLock.bySlot(keys, true);
+        assertEquals(3, slots.size());
+        for (List<String> slot : slots) {
+            assertEquals(1, slot.stream().map(ClusterSlotHashUtil::calculateSlot).distinct().count());
+        }
+        assertTrue(slots.contains(List.of("{user:1}:profile", "{user:1}:orders")));
+    }
+
+    @Test
+    public void testWriterEvictsHoldsOfCrashedNode() throws InterruptedException {
+        RedisReadWriteLock alive = node(1);
+        RedisReadWriteLock crashed = node(1);
+        crashed.acquireReadLock("config");
+        crashed.close(); // 停止续期，模拟节点宕机
+        alive.acquireReadLock("config"); // 存活节点的续期让哈希一直存在
+        Thread.sleep(1500);
+        alive.releaseReadLock("config");
+
+        CountDownLatch written = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            alive.acquireWriteLock("config");
+            written.countDown();
+            alive.releaseWriteLock("config");
+        });
+        writer.start();
+        assertTrue(written.await(1, TimeUnit.SECONDS));
+        writer.join();
+    }
+
+    private RedisReadWriteLock node(long ttl) {
+        RedisReadWriteLock lock = new RedisReadWriteLock(template, ttl);
+        nodes.add(lock);
+        return lock;
+    }
+}
@@ -0,0 +1,172 @@
+package org.hangerlin.common.watchdog;
+
+import org.hangerlin.common.metrics.InMemoryLockMetrics;
+import org.hangerlin.common.metrics.LockMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class WatchDogLockTest {
+    private static final int LOCKS = 1_000_000;
+    private static final int HELD_AT_ONCE = 10_000;
+
+    private WatchDogService watchDog;
+
+    @Before
+    public void setUp() {
+        watchDog = new WatchDogService(10, 512);
+    }
+
+    @After
+    public void tearDown() {
+        watchDog.shutdown();
+    }
+
+    @Test
+    public void testWatchDogRenewsUntilUnlock() throws InterruptedException {
+        InMemoryLockMetrics metrics = new InMemoryLockMetrics();
+        WatchDogLock lock = new WatchDogLock(150, watchDog, metrics);
+        lock.lock();
+        Thread.sleep(400);
+        // 持有时间超过租约时间，看门狗续期后仍未过期
+        assertTrue(lock.expirationTime() > System.currentTimeMillis());
+        assertTrue(metrics.getRenewals() >= 2);
+        assertEquals(0, metrics.getRenewalFailures());
+
+        lock.unlock();
+        assertEquals(0, watchDog.activeLeases());
+        long renewals = metrics.getRenewals();
+        Thread.sleep(150);
+        assertEquals(renewals, metrics.getRenewals());
+    }
+
+    @Test
+    public void testUnlockHandsLockToParkedWaiter() throws InterruptedException {
+        WatchDogLock lock = new WatchDogLock(30000, watchDog, LockMetrics.NOOP);
+        lock.lock();
+        AtomicLong acquiredAt = new AtomicLong();
+        CountDownLatch release = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            lock.lock();
+            acquiredAt.set(System.nanoTime());
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        });
+        waiter.start();
+        waitUntilParked(waiter);
+        long unlockedAt = System.nanoTime();
+        lock.unlock();
+        while (acquiredAt.get() == 0) {
+            Thread.onSpinWait();
+        }
+        assertTrue(acquiredAt.get() - unlockedAt < TimeUnit.MILLISECONDS.toNanos(50));
+        // 锁已经交给等待者，这里拿不到
+        assertFalse(lock.tryLock());
+        release.countDown();
+        waiter.join();
+        assertTrue(lock.tryLock());
+        lock.unlock();
+    }
+
+    @Test
+    public void testTimedAndInterruptibleAcquireGiveUp() throws InterruptedException {
+        WatchDogLock lock = new WatchDogLock(30000, watchDog, LockMetrics.NOOP);
+        lock.lock();
+        lock.lock(); // 重入
+        AtomicBoolean timedOut = new AtomicBoolean();
+        Thread timed = new Thread(() -> {
+            try {
+                timedOut.set(!lock.tryLock(50, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        timed.start();
+        timed.join();
+        assertTrue(timedOut.get());
+
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread waiter = new Thread(() -> {
+            try {
+                lock.lockInterruptibly();
+                lock.unlock();
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        });
+        waiter.start();
+        waitUntilParked(waiter);
+        waiter.interrupt();
+        waiter.join();
+        assertTrue(interrupted.get());
+
+        lock.unlock();
+        lock.unlock();
+        assertEquals(0, watchDog.activeLeases());
+        // 放弃等待的线程都已离开队列，锁真正空闲
+        Thread other = new Thread(() -> {
+            if (lock.tryLock()) {
+                lock.unlock();
+                timedOut.set(false);
+            }
+        });
+        other.start();
+        other.join();
+        assertFalse(timedOut.get());
+    }
+
+    @Test
+    public void testSoakMillionLocksKeepsThreadsAndMemoryFlat() throws InterruptedException {
+        int threadsBefore = Thread.activeCount();
+        long heapBefore = usedHeapAfterGc();
+
+        // 同时持有一万把锁，看门狗在这期间持续续期，每释放一把再创建一把新的
+        ArrayDeque<WatchDogLock> held = new ArrayDeque<>(HELD_AT_ONCE);
+        for (int i = 0; i < LOCKS; i++) {
+            WatchDogLock lock = new WatchDogLock(30, watchDog, LockMetrics.NOOP);
+            lock.lock();
+            held.add(lock);
+            if (held.size() == HELD_AT_ONCE) {
+                held.poll().unlock();
+            }
+            assertTrue(watchDog.activeLeases() <= HELD_AT_ONCE);
+        }
+        while (!held.isEmpty()) {
+            held.poll().unlock();
+        }
+
+        assertEquals(0, watchDog.activeLeases());
+        // 锁对象不创建线程，注销后时间轮不再引用已释放的锁
+        assertTrue("WatchDogLock must not start a thread per lock", Thread.activeCount() - threadsBefore <= 1);
+        long retained = usedHeapAfterGc() - heapBefore;
+        assertTrue("retained " + retained + " bytes", retained < 16L * 1024 * 1024);
+    }
+
+    private static void waitUntilParked(Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,82 @@
+package org.hangerlin.common.watcher;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HangerWatcherTest {
+
+    @Test
+    public void testUnlockOnlyWakesWaitersOfThatKey() throws InterruptedException {
+        HangerWatcher watcher = new HangerWatcher();
+        AtomicInteger wokenA = new AtomicInteger();
+        AtomicInteger wokenB = new AtomicInteger();
+        watcher.awaitUnlock("a", () -> wokenA.incrementAndGet() > 0);
+        watcher.awaitUnlock("b", () -> wokenB.incrementAndGet() > 0);
+        assertEquals(2, watcher.watchedKeys());
+
+        watcher.unlock("a");
+
+        assertEquals(1, wokenA.get());
+        assertEquals(0, wokenB.get());
+        assertEquals(1, watcher.watchedKeys());
+    }
+
+    @Test
+    public void testUnlockOnlyWakesHeadWaiter() {
+        HangerWatcher watcher = new HangerWatcher();
+        AtomicInteger woken = new AtomicInteger();
+        for (int i = 0; i < 100; i++) {
+            watcher.awaitUnlock("key", () -> woken.incrementAndGet() > 0);
+        }
+
+        watcher.unlock("key");
+        assertEquals(1, woken.get());
+
+        // 被唤醒的等待者抢到了锁，key 重新被锁定，下一次解锁再唤醒一个
+        watcher.lock("key");
+        watcher.unlock("key");
+        assertEquals(2, woken.get());
+    }
+
+    @Test
+    public void testDeadWaiterPassesWakeupOn() {
+        HangerWatcher watcher = new HangerWatcher();
+        AtomicInteger woken = new AtomicInteger();
+        watcher.awaitUnlock("key", () -> false); // 已经放弃抢锁
+        watcher.awaitUnlock("key", () -> woken.incrementAndGet() > 0);
+
+        watcher.unlock("key");
+
+        assertEquals(1, woken.get());
+        assertEquals(0, watcher.watchedKeys());
+    }
+
+    @Test
+    public void testBlockingWaitWakesAndTimesOut() throws InterruptedException {
+        HangerWatcher watcher = new HangerWatcher();
+        assertFalse(watcher.waitForUnlock("key", 50, TimeUnit.MILLISECONDS));
+        assertEquals(0, watcher.watchedKeys());
+
+        CountDownLatch woken = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                if (watcher.waitForUnlock("key", 5, TimeUnit.SECONDS)) {
+                    woken.countDown();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        while (watcher.watchedKeys() == 0) {
+            Thread.sleep(1);
+        }
+        watcher.unlock("key");
+        assertTrue(woken.await(1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,108 @@
+package org.hangerlin.common.watcher;
+
+import org.hangerlin.common.RespStandIn;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RedisUnlockBrokerTest {
+    private RespStandIn redis;
+    private LettuceConnectionFactory connectionFactory;
+    private RedisUnlockBroker nodeA;
+    private RedisUnlockBroker nodeB;
+
+    @Before
+    public void setUp() throws Exception {
+        redis = new RespStandIn();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", redis.port()));
+        connectionFactory.afterPropertiesSet();
+        nodeA = new RedisUnlockBroker(connectionFactory);
+        nodeB = new RedisUnlockBroker(connectionFactory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        nodeA.close();
+        nodeB.close();
+        connectionFactory.destroy();
+        redis.close();
+    }
+
+    @Test
+    public void testNodeOnlyReceivesUnlocksOfSubscribedKeys() throws InterruptedException {
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        UnlockListener listener = received::add;
+        nodeB.subscribe("a", listener);
+        assertEquals(1, redis.subscribers(RedisUnlockBroker.DEFAULT_CHANNEL_PREFIX + "a"));
+        assertEquals(0, redis.subscribers(RedisUnlockBroker.DEFAULT_CHANNEL_PREFIX + "b"));
+
+        // 其他 key 的解锁不会发到这个节点
+        nodeA.publish("b");
+        nodeA.publish("a");
+        assertEquals("a", received.poll(5, TimeUnit.SECONDS));
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+
+        nodeB.unsubscribe("a", listener);
+        awaitSubscribers("a", 0);
+        nodeA.publish("a");
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testChannelStaysSubscribedUntilLastListenerLeaves() throws InterruptedException {
+        BlockingQueue<String> first = new LinkedBlockingQueue<>();
+        BlockingQueue<String> second = new LinkedBlockingQueue<>();
+        UnlockListener firstListener = first::add;
+        UnlockListener secondListener = second::add;
+        nodeB.subscribe("a", firstListener);
+        nodeB.subscribe("a", secondListener);
+        assertEquals(1, redis.subscribers(RedisUnlockBroker.DEFAULT_CHANNEL_PREFIX + "a"));
+
+        nodeB.unsubscribe("a", firstListener);
+        nodeA.publish("a");
+        assertEquals("a", second.poll(5, TimeUnit.SECONDS));
+        assertTrue(first.isEmpty());
+
+        nodeB.unsubscribe("a", secondListener);
+        awaitSubscribers("a", 0);
+    }
+
+    @Test
+    public void testWatcherSubscribesOnlyWhileWaiting() throws InterruptedException {
+        HangerWatcher owner = new HangerWatcher(nodeA);
+        HangerWatcher waiter = new HangerWatcher(nodeB);
+        assertEquals(0, redis.subscribers(RedisUnlockBroker.DEFAULT_CHANNEL_PREFIX + "a"));
+
+        CountDownLatch woken = new CountDownLatch(1);
+        waiter.awaitUnlock("a", () -> {
+            woken.countDown();
+            return true;
+        });
+        assertEquals(1, redis.subscribers(RedisUnlockBroker.DEFAULT_CHANNEL_PREFIX + "a"));
+
+        owner.unlock("b");
+        owner.unlock("a");
+        assertTrue(woken.await(5, TimeUnit.SECONDS));
+
+        // 等待者离开后本节点不再订阅这个 key
+        awaitSubscribers("a", 0);
+        assertEquals(0, waiter.watchedKeys());
+    }
+
+    private void awaitSubscribers(String key, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (redis.subscribers(RedisUnlockBroker.DEFAULT_CHANNEL_PREFIX + key) != expected) {
+            assertTrue("subscribers of " + key + " never reached " + expected, System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
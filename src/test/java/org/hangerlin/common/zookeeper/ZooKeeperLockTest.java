@@ -0,0 +1,189 @@
+package org.hangerlin.common.zookeeper;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.hangerlin.common.ZooKeeperStandIn;
+import org.hangerlin.common.multiLock.HangerDistributedLock;
+import org.hangerlin.common.watcher.HangerWatcher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class ZooKeeperLockTest {
+    private ZooKeeperStandIn zookeeper;
+    private final List<CuratorFramework> clients = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        zookeeper = new ZooKeeperStandIn();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (CuratorFramework client : clients) {
+            client.close();
+        }
+        ZooKeeperSession.closeAll();
+        zookeeper.close();
+    }
+
+    @Test
+    public void testReleaseWakesOnlyTheSuccessor() throws Exception {
+        ZooKeeperLock holder = new ZooKeeperLock(zookeeper.connectString(), "/locks/orders");
+        holder.lock();
+
+        // 每个等待者使用自己的会话，便于在服务端区分监听来自哪个客户端
+        AtomicInteger acquired = new AtomicInteger();
+        List<ZooKeeperLock> waiters = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            ZooKeeperLock waiter = new ZooKeeperLock(newClient(), "/locks/orders");
+            waiters.add(waiter);
+            Thread thread = new Thread(() -> {
+                waiter.lock();
+                acquired.incrementAndGet();
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+        CuratorFramework session = ZooKeeperSession.shared(zookeeper.connectString());
+        waitUntil(() -> childrenOf(session, "/locks/orders").size() == 5);
+        Thread.sleep(100);
+        // 每个等待者只监听前一个节点：前 4 个节点各被一个会话监听，最后一个节点没有人监听
+        int watched = 0;
+        for (String child : childrenOf(session, "/locks/orders")) {
+            int count = zookeeper.watchCount("/locks/orders/" + child);
+            assertTrue(count <= 1);
+            watched += count;
+        }
+        assertEquals(4, watched);
+
+        holder.unlock();
+        waitUntil(() -> acquired.get() == 1);
+        Thread.sleep(200);
+        assertEquals(1, acquired.get());
+
+        // 依次释放，每次只唤醒一个
+        for (int released = 1; released < 4; released++) {
+            unlockCurrentOwner(waiters);
+            int expected = released + 1;
+            waitUntil(() -> acquired.get() == expected);
+        }
+        assertEquals(4, acquired.get());
+        assertFalse(holder.tryLock());
+    }
+
+    @Test
+    public void testWorksAsMultiLockElementAndWatcherEventSource() throws Exception {
+        String connectString = zookeeper.connectString();
+        assertSame(ZooKeeperSession.shared(connectString), ZooKeeperSession.shared(connectString));
+
+        // 三个路径模拟三个独立的锁服务，在加锁线程池上加锁、在当前线程释放
+        List<Lock> replicas = new ArrayList<>();
+        for (String name : new String[]{"a", "b", "c"}) {
+            replicas.add(new ZooKeeperLock(connectString, "/replicas/" + name));
+        }
+        ZooKeeperLock taken = new ZooKeeperLock(newClient(), "/replicas/c");
+        assertTrue(taken.tryLock());
+        HangerDistributedLock quorum = new HangerDistributedLock(replicas, 1, 2);
+        assertTrue(quorum.tryLockQuorum(10_000, 1_000, TimeUnit.MILLISECONDS) > 0);
+        assertFalse(new ZooKeeperLock(newClient(), "/replicas/a").tryLock());
+        quorum.unlock();
+        assertTrue(new ZooKeeperLock(newClient(), "/replicas/a").tryLock(1, TimeUnit.SECONDS));
+
+        // ZooKeeperLock 释放时删除的节点作为 HangerWatcher 的解锁事件
+        try (ZooKeeperUnlockBroker broker = new ZooKeeperUnlockBroker(ZooKeeperSession.shared(connectString), "/locks")) {
+            HangerWatcher watcher = new HangerWatcher(broker);
+            ZooKeeperLock lock = new ZooKeeperLock(connectString, "/locks/inventory");
+            lock.lock();
+            AtomicBoolean woken = new AtomicBoolean();
+            Thread waiter = new Thread(() -> {
+                try {
+                    woken.set(watcher.waitForUnlock("inventory", 5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            waiter.start();
+            Thread.sleep(200);
+            lock.unlock();
+            waiter.join(5000);
+            assertTrue(woken.get());
+        }
+    }
+
+    @Test
+    public void testFailedTryLockDoesNotWakeWaiters() throws Exception {
+        String connectString = zookeeper.connectString();
+        try (ZooKeeperUnlockBroker broker = new ZooKeeperUnlockBroker(ZooKeeperSession.shared(connectString), "/locks")) {
+            HangerWatcher watcher = new HangerWatcher(broker);
+            ZooKeeperLock holder = new ZooKeeperLock(connectString, "/locks/inventory");
+            holder.lock();
+            AtomicBoolean woken = new AtomicBoolean();
+            Thread waiter = new Thread(() -> {
+                try {
+                    woken.set(watcher.waitForUnlock("inventory", 10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            waiter.start();
+            Thread.sleep(200);
+
+            // 失败的 tryLock 和超时的 tryLock 都会创建再删除自己的节点，但锁没有被释放
+            assertFalse(new ZooKeeperLock(newClient(), "/locks/inventory").tryLock());
+            assertFalse(new ZooKeeperLock(newClient(), "/locks/inventory").tryLock(50, TimeUnit.MILLISECONDS));
+            Thread.sleep(300);
+            assertTrue(waiter.isAlive());
+
+            holder.unlock();
+            waiter.join(5000);
+            assertTrue(woken.get());
+        }
+    }
+
+    // 释放当前持有锁的那个实例，没有持有锁的实例 unlock 时抛出 IllegalMonitorStateException
+    private static void unlockCurrentOwner(List<ZooKeeperLock> locks) {
+        for (ZooKeeperLock lock : locks) {
+            try {
+                lock.unlock();
+                return;
+            } catch (IllegalMonitorStateException ignored) {
+            }
+        }
+        fail("no lock is held");
+    }
+
+    private CuratorFramework newClient() {
+        CuratorFramework client = CuratorFrameworkFactory.newClient(zookeeper.connectString(), new ExponentialBackoffRetry(100, 3));
+        client.start();
+        clients.add(client);
+        return client;
+    }
+
+    private static List<String> childrenOf(CuratorFramework client, String path) {
+        try {
+            return client.getChildren().forPath(path);
+        } catch (Exception e) {
+            return List.of();
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue("condition not met in time", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}